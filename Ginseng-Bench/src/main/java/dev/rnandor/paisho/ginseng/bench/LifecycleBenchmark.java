@@ -0,0 +1,89 @@
+package dev.rnandor.paisho.ginseng.bench;
+
+import dev.rnandor.paisho.ginseng.GinsengCodec;
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import dev.rnandor.paisho.io.GameArchive;
+import dev.rnandor.paisho.io.GameManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Setting up a game and persisting it: construction, forking, the save/load round trip of {@link GameManager} and
+ * random reads of a {@link GameArchive}.
+ * The forked and saved games are positions of the midgame corpus, see {@link MidgameCorpus}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+public class LifecycleBenchmark {
+
+    private final GameManager<GinsengTile, GinsengGame> manager = new GameManager<>(new GinsengCodec());
+    private GinsengGame game;
+    private Path saveFile;
+    private Path loadFile;
+    private Path archiveFile;
+    private GameArchive<GinsengTile, GinsengGame> archive;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        game = MidgameCorpus.create(1, false, false).getFirst();
+        saveFile = Files.createTempFile("bench-save", ".ginseng");
+        loadFile = Files.createTempFile("bench-load", ".ginseng");
+        manager.saveGame(game, loadFile.toString());
+
+        archiveFile = Files.createTempFile("bench-archive", ".archive");
+        try(var writer = GameArchive.create(archiveFile, manager)) {
+            for(var position : MidgameCorpus.create(64, false, false))
+                writer.add(position);
+        }
+        archive = GameArchive.open(archiveFile, manager);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(saveFile);
+        Files.deleteIfExists(loadFile);
+        archive.close();
+        Files.deleteIfExists(archiveFile);
+    }
+
+    /**
+     * A new game, creating the starting layout with the factories of the tile registry.
+     */
+    @Benchmark
+    public GinsengGame construct() {
+        return new GinsengGame(false, false);
+    }
+
+    @Benchmark
+    public GinsengGame fork() {
+        return game.fork();
+    }
+
+    @Benchmark
+    public void saveGame() throws IOException {
+        manager.saveGame(game, saveFile.toString());
+    }
+
+    @Benchmark
+    public GinsengGame loadGame() throws IOException {
+        return manager.loadGame(loadFile.toString());
+    }
+
+    /**
+     * A game of the archive, compare with {@link #loadGame()} for the cost of opening a file per game.
+     */
+    @Benchmark
+    public GinsengGame archiveGet() {
+        return archive.get(next++ & 63);
+    }
+}
@@ -0,0 +1,119 @@
+package dev.rnandor.paisho.ginseng.bench;
+
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.PaiShoGame.GameStatus;
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Builds the midgame positions the benchmarks run against.
+ * Every position is reached by a seeded playout from the starting position, so the corpus is the same in every run.
+ * The playouts prefer captures, swaps and abilities over quiet turns, which keeps the positions crowded and varied
+ * like a real game, instead of the shuffling a uniformly random playout produces.
+ */
+final class MidgameCorpus {
+
+    /**
+     * The seed of the first playout, the following ones count up from it.
+     */
+    static final long SEED = 0x5eed_9153_6a11L;
+
+    private static final int MIN_PLIES = 16;
+    private static final int MAX_PLIES = 48;
+
+    private MidgameCorpus() {}
+
+    /**
+     * Builds the corpus. Every position is running, with the side to move having at least one legal turn.
+     *
+     * @param size The number of positions.
+     * @param bisonGrantsFlight The bison flight variant of the games.
+     * @param alternativeGinsengProtection The ginseng protection variant of the games.
+     * @return The positions.
+     */
+    static List<GinsengGame> create(int size, boolean bisonGrantsFlight, boolean alternativeGinsengProtection) {
+        var games = new ArrayList<GinsengGame>(size);
+        var turns = new MoveBuffer();
+
+        for(long seed = SEED; games.size() < size; seed++) {
+            var game = new GinsengGame(bisonGrantsFlight, alternativeGinsengProtection);
+            if(playout(game, new SplittableRandom(seed), turns))
+                games.add(game);
+        }
+        return games;
+    }
+
+    /**
+     * Collects the tiles on the table in every position of the corpus.
+     *
+     * @param games The positions.
+     * @param code The registry code of the tiles to collect, or null for every tile.
+     * @return The tiles.
+     */
+    static List<GinsengTile> tiles(List<GinsengGame> games, String code) {
+        var tiles = new ArrayList<GinsengTile>();
+        for(var game : games) {
+            for(var tile : game.getTiles()) {
+                if(tile.isCaptured())
+                    continue;
+
+                if(code == null || code.equals(game.getRegistry().getCode(tile.getClass()).orElse(null)))
+                    tiles.add(tile);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Helper method.
+     * Plays a biased random game for a random number of turns.
+     *
+     * @param game The game to play.
+     * @param random The source of the choices.
+     * @param turns The buffer for the legal turns.
+     * @return true if the game reached a usable midgame position, false otherwise.
+     */
+    private static boolean playout(GinsengGame game, SplittableRandom random, MoveBuffer turns) {
+        int plies = random.nextInt(MIN_PLIES, MAX_PLIES + 1);
+        for(int ply = 0; ply < plies; ply++) {
+            turns.clear();
+            if(game.generateLegalTurns(turns) == 0)
+                return false;
+
+            game.makeTurn(pick(turns, random));
+            game.commitTurns();
+            if(game.getStatus() != GameStatus.RUNNING)
+                return false;
+        }
+
+        turns.clear();
+        return game.generateLegalTurns(turns) > 0;
+    }
+
+    /**
+     * Helper method.
+     * Picks a turn, half of the time among the interesting ones if there are any.
+     *
+     * @param turns The legal turns.
+     * @param random The source of the choice.
+     * @return The encoded turn.
+     */
+    private static int pick(MoveBuffer turns, SplittableRandom random) {
+        if(random.nextBoolean()) {
+            int interesting = 0;
+            for(int i = 0; i < turns.size(); i++) {
+                int turn = turns.get(i);
+                if(Move.isCapture(turn) || Move.swapKind(turn) >= 0 || Move.abilityTarget(turn) >= 0)
+                    turns.swap(interesting++, i);
+            }
+            if(interesting > 0)
+                return turns.get(random.nextInt(interesting));
+        }
+        return turns.get(random.nextInt(turns.size()));
+    }
+}
@@ -0,0 +1,55 @@
+package dev.rnandor.paisho.ginseng.bench;
+
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import dev.rnandor.paisho.ginseng.engine.Budget;
+import dev.rnandor.paisho.ginseng.engine.MonteCarloEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Monte Carlo engine playing a fixed number of playouts in every position of the midgame corpus, see
+ * {@link MidgameCorpus}. Comparing the worker counts shows how the playouts per second scale with the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MonteCarloBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    private int workers;
+
+    @Param("4096")
+    private long playouts;
+
+    @Param("16")
+    private int corpusSize;
+
+    private List<GinsengGame> games;
+    private ForkJoinPool pool;
+    private MonteCarloEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        games = MidgameCorpus.create(corpusSize, false, false);
+        pool = new ForkJoinPool(workers);
+        engine = new MonteCarloEngine(pool, workers, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) {
+        for(var game : games)
+            bh.consume(engine.search(game, Budget.ofNodes(playouts)));
+    }
+}
@@ -0,0 +1,65 @@
+package dev.rnandor.paisho.ginseng.bench;
+
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Move generation of every tile type over the midgame corpus, see {@link MidgameCorpus}.
+ * One operation is a sweep over every tile of the type in every position, so scores are comparable between runs,
+ * not between types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+public class MoveGenerationBenchmark {
+
+    @Param({"bm", "drg", "gs", "koi", "lt", "oc", "sb", "wh", "wl"})
+    private String tile;
+
+    @Param("64")
+    private int corpusSize;
+
+    private GinsengTile[] tiles;
+    private final int[] squares = new int[BoardGeometry.SQUARES];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tiles = MidgameCorpus.tiles(MidgameCorpus.create(corpusSize, false, false), tile).toArray(new GinsengTile[0]);
+    }
+
+    /**
+     * The list API the UI uses, allocating a list of positions per call.
+     */
+    @Benchmark
+    public void validMovesList(Blackhole bh) {
+        for(var t : tiles)
+            bh.consume(t.getValidMoves());
+    }
+
+    /**
+     * The allocation free API the turn generator uses.
+     */
+    @Benchmark
+    public int validMovesSquares() {
+        int n = 0;
+        for(var t : tiles)
+            n += t.getValidMoves(squares);
+        return n;
+    }
+
+    /**
+     * The early exit check of draw detection.
+     */
+    @Benchmark
+    public void hasValidMoves(Blackhole bh) {
+        for(var t : tiles)
+            bh.consume(t.hasValidMoves());
+    }
+}
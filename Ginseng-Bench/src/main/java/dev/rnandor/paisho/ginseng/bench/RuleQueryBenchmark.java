@@ -0,0 +1,82 @@
+package dev.rnandor.paisho.ginseng.bench;
+
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rule queries asked for every tile over and over again, over the midgame corpus, see {@link MidgameCorpus}.
+ * One operation is a sweep over every tile, or every position, of the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+public class RuleQueryBenchmark {
+
+    /**
+     * Proximity protection if true, line of sight protection otherwise.
+     */
+    @Param({"false", "true"})
+    private boolean alternativeGinsengProtection;
+
+    @Param("64")
+    private int corpusSize;
+
+    private List<GinsengGame> games;
+    private GinsengTile[] tiles;
+    private final MoveBuffer turns = new MoveBuffer();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        games = MidgameCorpus.create(corpusSize, false, alternativeGinsengProtection);
+        tiles = MidgameCorpus.tiles(games, null).toArray(new GinsengTile[0]);
+    }
+
+    @Benchmark
+    public void ginsengProtected(Blackhole bh) {
+        for(var t : tiles)
+            bh.consume(t.isGinsengProtected());
+    }
+
+    @Benchmark
+    public void koiTrapped(Blackhole bh) {
+        for(var t : tiles)
+            bh.consume(t.isKoiTrapped());
+    }
+
+    @Benchmark
+    public void bisonBoosted(Blackhole bh) {
+        for(var t : tiles)
+            bh.consume(t.isBisonBoosted());
+    }
+
+    /**
+     * Draw detection of every position. None of them is a draw, so this is the cost paid after every turn.
+     */
+    @Benchmark
+    public void checkForDraw(Blackhole bh) {
+        for(var game : games)
+            bh.consume(game.checkForDraw());
+    }
+
+    /**
+     * Every complete turn of the side to move, including the abilities and temple swaps, once per position.
+     */
+    @Benchmark
+    public int legalTurns() {
+        int n = 0;
+        for(var game : games) {
+            turns.clear();
+            n += game.generateLegalTurns(turns);
+        }
+        return n;
+    }
+}
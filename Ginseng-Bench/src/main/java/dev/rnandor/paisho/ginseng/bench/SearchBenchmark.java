@@ -0,0 +1,47 @@
+package dev.rnandor.paisho.ginseng.bench;
+
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import dev.rnandor.paisho.ginseng.engine.AlphaBetaEngine;
+import dev.rnandor.paisho.ginseng.engine.Budget;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The alpha-beta engine searching the midgame corpus to a fixed depth, see {@link MidgameCorpus}.
+ * One operation is a search of every position, each with an empty transposition table, so the time is what a bot
+ * joining a game mid-way needs per turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class SearchBenchmark {
+
+    @Param({"2", "3", "4"})
+    private int depth;
+
+    @Param("16")
+    private int corpusSize;
+
+    private List<GinsengGame> games;
+    private AlphaBetaEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        games = MidgameCorpus.create(corpusSize, false, false);
+        engine = new AlphaBetaEngine(18);
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) {
+        for(var game : games) {
+            engine.reset();
+            bh.consume(engine.search(game, Budget.ofDepth(depth)));
+        }
+    }
+}
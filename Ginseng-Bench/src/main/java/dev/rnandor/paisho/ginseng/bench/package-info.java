@@ -0,0 +1,13 @@
+/**
+ * JMH benchmarks of the Ginseng rules engine, its persistence and the search engine built on it.
+ * <p>
+ * Build the self-contained jar and run every benchmark, with the allocation rates of the GC profiler:
+ * <pre>
+ * mvn -pl Ginseng-Bench -am package
+ * java -jar Ginseng-Bench/target/benchmarks.jar -prof gc
+ * </pre>
+ * A single benchmark or parameter can be selected the usual JMH way, for example
+ * {@code java -jar Ginseng-Bench/target/benchmarks.jar MoveGeneration -p tile=wl -prof gc}.
+ * The positions are generated from fixed seeds, so runs on the same build are directly comparable.
+ */
+package dev.rnandor.paisho.ginseng.bench;
@@ -0,0 +1,480 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+
+/**
+ * Plays Ginseng with a negamax alpha-beta search, deepened one turn at a time until the budget runs out, so there's
+ * always a best turn of the last completed depth to answer with.
+ * <p>
+ * The search walks a fork of the position with make/unmake, and keeps a {@link TranspositionTable} between searches.
+ * Turns are tried in the order most likely to cut the search short: the best turn stored for the position, turns
+ * moving the White Lotus across the board, captures of the most valuable tiles, then quiet turns that cut off
+ * siblings before (killers) or anywhere (history). Only the first turn gets a full window, the others are searched
+ * with a null window first, late quiet turns one turn shallower too, and again only if they turn out better.
+ * <p>
+ * Leaves are extended by a quiescence search over captures and winning turns, so a position isn't judged in the
+ * middle of an exchange. Positions repeating within the search are scored as draws.
+ */
+@Slf4j
+public final class AlphaBetaEngine implements Engine {
+
+    private static final int INFINITY = 32_000;
+    private static final int MAX_PLY = Budget.MAX_DEPTH * 2;
+    private static final int MAX_QUIESCENCE = 8;
+    private static final int CHECK_INTERVAL = 1024;
+    private static final int LATE_TURNS = 4;
+
+    private static final int ORDER_TABLE = 1 << 30;
+    private static final int ORDER_WIN = 1 << 29;
+    private static final int ORDER_CAPTURE = 1 << 28;
+    private static final int ORDER_KILLER = 1 << 27;
+
+    private final TranspositionTable table;
+    private final MoveBuffer[] buffers = new MoveBuffer[MAX_PLY];
+    private final int[][] order = new int[MAX_PLY][];
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[] history = new int[BoardGeometry.SQUARES * BoardGeometry.SQUARES];
+    // keys of the positions on the path from the root, for repetitions
+    private final long[] path = new long[MAX_PLY];
+    private final int[] squares = new int[BoardGeometry.SQUARES];
+
+    private Evaluator evaluator;
+    private GinsengGame game;
+    private boolean rootHost;
+    private long nodes;
+    private long maxNodes;
+    private boolean timed;
+    private long start;
+    private long limit;
+    private int completed;
+    private boolean stopped;
+
+    /**
+     * Constructs an AlphaBetaEngine with a transposition table of 2^20 entries, 16 MB.
+     */
+    public AlphaBetaEngine() {
+        this(20);
+    }
+
+    /**
+     * Constructs an AlphaBetaEngine.
+     *
+     * @param tableBits The transposition table holds 2^tableBits entries, 16 bytes each.
+     * @throws IllegalArgumentException if the size is not in the range [1, 30].
+     */
+    public AlphaBetaEngine(int tableBits) {
+        table = new TranspositionTable(tableBits);
+        for(int i = 0; i < MAX_PLY; i++) {
+            buffers[i] = new MoveBuffer();
+            order[i] = new int[64];
+        }
+    }
+
+    @Override
+    public SearchResult search(GinsengGame position, Budget budget) {
+        if(!position.isGameRunning())
+            throw new IllegalArgumentException("The game is over.");
+
+        game = position.fork();
+        if(evaluator == null)
+            evaluator = new Evaluator(game.getRegistry());
+        rootHost = game.isHostTurn();
+
+        table.newSearch();
+        for(var k : killers)
+            Arrays.fill(k, Move.NONE);
+        for(int i = 0; i < history.length; i++)
+            history[i] >>= 2;
+
+        start = System.nanoTime();
+        timed = budget.isTimed();
+        limit = budget.getNanos();
+        nodes = 0;
+        maxNodes = budget.nodes();
+        completed = 0;
+        stopped = false;
+
+        int score = 0;
+        int[] line = new int[0];
+        for(int depth = 1; depth <= budget.depth(); depth++) {
+            int s = negamax(depth, 0, -INFINITY, INFINITY);
+            if(stopped)
+                break;
+
+            completed = depth;
+            score = s;
+            line = Arrays.copyOf(pv[0], pvLength[0]);
+            log.debug("depth {} score {} nodes {}", depth, score, nodes);
+
+            // a forced end doesn't change deeper, and another iteration takes longer than all before it
+            if(Math.abs(score) >= SearchResult.DECISIVE || (timed && System.nanoTime() - start > limit / 2))
+                break;
+        }
+
+        line = extend(line);
+        game = null;
+        return new SearchResult(line.length > 0 ? line[0] : Move.NONE, score, completed, nodes, System.nanoTime() - start, line);
+    }
+
+    @Override
+    public void reset() {
+        table.clear();
+        Arrays.fill(history, 0);
+    }
+
+    /**
+     * Helper method.
+     * Completes a principal variation cut short by a transposition, with the best turns stored for the positions
+     * following it, up to the completed depth.
+     *
+     * @param line The principal variation of the search.
+     * @return The extended principal variation.
+     */
+    private int[] extend(int[] line) {
+        if(line.length == 0 || line.length >= completed)
+            return line;
+
+        var extended = Arrays.copyOf(line, completed);
+        var legal = buffers[0];
+        int length = 0;
+        for(; length < completed; length++) {
+            int turn = length < line.length ? line[length] : Move.NONE;
+            if(turn == Move.NONE) {
+                if(!game.isGameRunning())
+                    break;
+
+                turn = TranspositionTable.move(table.probe(game.getKey()));
+                legal.clear();
+                game.generateLegalTurns(legal);
+                if(turn == Move.NONE || !legal.contains(turn))
+                    break;
+            }
+
+            extended[length] = turn;
+            game.makeTurn(turn);
+        }
+
+        for(int i = 0; i < length; i++)
+            game.unmakeTurn();
+        return Arrays.copyOf(extended, length);
+    }
+
+    /**
+     * Helper method.
+     * Searches the position to the given depth.
+     *
+     * @param depth The remaining depth, in turns.
+     * @param ply The distance from the root.
+     * @param alpha The score the side to move is already guaranteed.
+     * @param beta The score the opponent is already guaranteed, as seen by the side to move.
+     * @return The score of the position for the side to move, or 0 if the search was stopped.
+     */
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if(depth <= 0)
+            return quiesce(ply, alpha, beta, 0);
+
+        pvLength[ply] = ply;
+        if(count())
+            return 0;
+
+        long key = game.getKey();
+        if(ply > 0 && isRepetition(key, ply))
+            return 0;
+        path[ply] = key;
+        if(ply >= MAX_PLY - 1)
+            return evaluator.evaluate(game);
+
+        long entry = table.probe(key);
+        int tableMove = TranspositionTable.move(entry);
+        if(entry != 0 && ply > 0 && TranspositionTable.depth(entry) >= depth) {
+            int score = fromTable(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if(bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && score >= beta)
+                    || (bound == TranspositionTable.UPPER && score <= alpha))
+                return score;
+        }
+
+        var turns = buffers[ply];
+        turns.clear();
+        int n = game.generateLegalTurns(turns);
+        if(n == 0)
+            return 0;
+        rank(turns, ply, tableMove);
+
+        int alphaBefore = alpha;
+        int best = -INFINITY;
+        int bestMove = Move.NONE;
+        for(int i = 0; i < n; i++) {
+            int turn = pick(turns, ply, i);
+            pvLength[ply + 1] = ply + 1;
+
+            game.makeTurn(turn);
+            int score;
+            if(game.isGameOver()) {
+                score = outcome(ply);
+            } else if(i == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // late quiet turns rarely turn out best, they're searched shallower unless they do
+                int reduction = depth >= 3 && i >= LATE_TURNS && order[ply][i] < ORDER_KILLER ? 1 : 0;
+                score = -negamax(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha);
+                if(score > alpha && reduction > 0)
+                    score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if(score > alpha && score < beta)
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            }
+            game.unmakeTurn();
+
+            if(stopped)
+                return 0;
+            if(score <= best)
+                continue;
+
+            best = score;
+            bestMove = turn;
+            if(score <= alpha)
+                continue;
+
+            alpha = score;
+            updatePv(ply, turn);
+            if(alpha >= beta) {
+                if(!Move.isCapture(turn)) {
+                    if(killers[ply][0] != turn) {
+                        killers[ply][1] = killers[ply][0];
+                        killers[ply][0] = turn;
+                    }
+                    int h = Move.from(turn) * BoardGeometry.SQUARES + Move.to(turn);
+                    history[h] = Math.min(history[h] + depth*depth, ORDER_KILLER - 1);
+                }
+                break;
+            }
+        }
+
+        int bound = best <= alphaBefore ? TranspositionTable.UPPER : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, bestMove, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    /**
+     * Helper method.
+     * Searches the captures and winning turns of the position, until it's quiet.
+     *
+     * @param ply The distance from the root.
+     * @param alpha The score the side to move is already guaranteed.
+     * @param beta The score the opponent is already guaranteed, as seen by the side to move.
+     * @param depth The number of quiescence turns played before this position.
+     * @return The score of the position for the side to move, or 0 if the search was stopped.
+     */
+    private int quiesce(int ply, int alpha, int beta, int depth) {
+        pvLength[ply] = ply;
+        if(count())
+            return 0;
+
+        // the side to move can always decline to capture
+        int standPat = evaluator.evaluate(game);
+        if(standPat >= beta || depth >= MAX_QUIESCENCE || ply >= MAX_PLY - 1)
+            return standPat;
+        if(standPat > alpha)
+            alpha = standPat;
+
+        var turns = buffers[ply];
+        turns.clear();
+        int n = generateTactical(turns);
+        rank(turns, ply, Move.NONE);
+
+        for(int i = 0; i < n; i++) {
+            int turn = pick(turns, ply, i);
+            pvLength[ply + 1] = ply + 1;
+
+            game.makeTurn(turn);
+            int score = game.isGameOver() ? outcome(ply) : -quiesce(ply + 1, -beta, -alpha, depth + 1);
+            game.unmakeTurn();
+
+            if(stopped)
+                return 0;
+            if(score > alpha) {
+                alpha = score;
+                updatePv(ply, turn);
+                if(alpha >= beta)
+                    break;
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Helper method.
+     * Generates the captures and the winning turns of the side to move, without the abilities and swaps that could
+     * follow them. Much cheaper than {@link GinsengGame#generateLegalTurns(MoveBuffer)}, which plays every turn with a
+     * follow-up to find them.
+     *
+     * @param turns The buffer to append to.
+     * @return The number of appended turns.
+     */
+    private int generateTactical(MoveBuffer turns) {
+        var t = game.getTable();
+        boolean host = game.isHostTurn();
+        var own = t.getOccupancy(host);
+
+        for(int from = own.nextSetBit(0); from >= 0; from = own.nextSetBit(from + 1)) {
+            var tile = (GinsengTile) t.tileAt(from);
+            boolean lotus = t.kindOf(tile) == evaluator.getLotusKind();
+            int count = tile.getValidMoves(squares);
+
+            for(int i = 0; i < count; i++) {
+                int to = squares[i];
+                if(t.isOccupied(to) || (lotus && Evaluator.isWinningSquare(host, to)))
+                    turns.add(Move.of(from, to, t.isOccupied(to)));
+            }
+        }
+        return turns.size();
+    }
+
+    /**
+     * Helper method.
+     * Counts a visited position and checks the budget, the budget is only checked once the first depth completed.
+     *
+     * @return true if the search has to stop.
+     */
+    private boolean count() {
+        nodes++;
+        if(completed > 0 && (nodes >= maxNodes || (timed && (nodes & (CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - start >= limit)))
+            stopped = true;
+        return stopped;
+    }
+
+    /**
+     * Helper method.
+     * Checks whether the position was already reached on the path from the root.
+     */
+    private boolean isRepetition(long key, int ply) {
+        for(int i = ply - 2; i >= 0; i -= 2) {
+            if(path[i] == key)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper method.
+     * Scores the end of the game, after a turn of the side to move at the given ply.
+     *
+     * @return The score for the side that made the last turn, earlier wins score higher.
+     */
+    private int outcome(int ply) {
+        var status = game.getStatus();
+        if(status == PaiShoGame.GameStatus.DRAW)
+            return 0;
+
+        boolean host = rootHost != ((ply & 1) == 1);
+        boolean won = (status == PaiShoGame.GameStatus.HOST_WIN) == host;
+        return won ? SearchResult.WIN - (ply + 1) : -(SearchResult.WIN - (ply + 1));
+    }
+
+    /**
+     * Helper method.
+     * Scores the turns for the order they're tried in, see {@link #pick(MoveBuffer, int, int)}.
+     *
+     * @param turns The turns.
+     * @param ply The distance from the root, selects the scores.
+     * @param tableMove The best turn stored for the position.
+     */
+    private void rank(MoveBuffer turns, int ply, int tableMove) {
+        if(order[ply].length < turns.size())
+            order[ply] = new int[Math.max(turns.size(), order[ply].length * 2)];
+
+        var t = game.getTable();
+        var scores = order[ply];
+        for(int i = 0; i < turns.size(); i++) {
+            int turn = turns.get(i);
+            int from = Move.from(turn);
+            int to = Move.to(turn);
+            var tile = t.tileAt(from);
+
+            if(turn == tableMove) {
+                scores[i] = ORDER_TABLE;
+            } else if(t.kindOf(tile) == evaluator.getLotusKind() && Evaluator.isWinningSquare(tile.isHost(), to)) {
+                scores[i] = ORDER_WIN;
+            } else if(Move.isCapture(turn)) {
+                // most valuable victim first, least valuable attacker among those
+                scores[i] = ORDER_CAPTURE + evaluator.getValue(t.kindOf(t.tileAt(to))) * 16 - evaluator.getValue(t.kindOf(tile)) / 16;
+            } else if(turn == killers[ply][0]) {
+                scores[i] = ORDER_KILLER + 1;
+            } else if(turn == killers[ply][1]) {
+                scores[i] = ORDER_KILLER;
+            } else {
+                scores[i] = history[from * BoardGeometry.SQUARES + to];
+            }
+        }
+    }
+
+    /**
+     * Helper method.
+     * Moves the best ranked of the remaining turns to the given index, sorting lazily as most nodes are cut off after
+     * the first few turns.
+     *
+     * @return The turn at the index.
+     */
+    private int pick(MoveBuffer turns, int ply, int i) {
+        var scores = order[ply];
+        int best = i;
+        for(int j = i + 1; j < turns.size(); j++) {
+            if(scores[j] > scores[best])
+                best = j;
+        }
+
+        if(best != i) {
+            turns.swap(i, best);
+            int s = scores[i];
+            scores[i] = scores[best];
+            scores[best] = s;
+        }
+        return turns.get(i);
+    }
+
+    /**
+     * Helper method.
+     * Makes the turn followed by the principal variation of the next ply the principal variation of this one.
+     */
+    private void updatePv(int ply, int turn) {
+        pv[ply][ply] = turn;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, length - ply - 1);
+        pvLength[ply] = Math.max(length, ply + 1);
+    }
+
+    /**
+     * Helper method.
+     * Makes a win relative to the position before storing it, as the position can be reached at another ply.
+     */
+    private static int toTable(int score, int ply) {
+        if(score >= SearchResult.DECISIVE)
+            return score + ply;
+        if(score <= -SearchResult.DECISIVE)
+            return score - ply;
+        return score;
+    }
+
+    /**
+     * Helper method.
+     * Makes a stored win relative to the root again, see {@link #toTable(int, int)}.
+     */
+    private static int fromTable(int score, int ply) {
+        if(score >= SearchResult.DECISIVE)
+            return score - ply;
+        if(score <= -SearchResult.DECISIVE)
+            return score + ply;
+        return score;
+    }
+}
@@ -0,0 +1,77 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+/**
+ * The limits of a search. The search stops at whichever limit it reaches first, with the best turn found so far.
+ *
+ * @param depth The maximum depth, in turns.
+ * @param nodes The maximum number of positions to visit.
+ * @param millis The maximum time to think, in milliseconds.
+ */
+public record Budget(int depth, long nodes, long millis) {
+
+    /**
+     * The deepest search an engine supports.
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * Constructs a Budget.
+     *
+     * @throws IllegalArgumentException if a limit is not positive or the depth is more than {@link #MAX_DEPTH}.
+     */
+    public Budget {
+        if(depth < 1 || depth > MAX_DEPTH)
+            throw new IllegalArgumentException("Depth must be in the range [1, " + MAX_DEPTH + "], got " + depth);
+        if(nodes < 1 || millis < 1)
+            throw new IllegalArgumentException("Node and time limits must be positive.");
+    }
+
+    /**
+     * Gets a budget limited only by depth.
+     *
+     * @param depth The maximum depth, in turns.
+     * @return The budget.
+     */
+    public static Budget ofDepth(int depth) {
+        return new Budget(depth, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets a budget limited only by the number of visited positions, so the result is the same on any machine.
+     *
+     * @param nodes The maximum number of positions.
+     * @return The budget.
+     */
+    public static Budget ofNodes(long nodes) {
+        return new Budget(MAX_DEPTH, nodes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets a budget limited only by time, for answering within a latency budget.
+     *
+     * @param millis The maximum time to think, in milliseconds.
+     * @return The budget.
+     */
+    public static Budget ofMillis(long millis) {
+        return new Budget(MAX_DEPTH, Long.MAX_VALUE, millis);
+    }
+
+    /**
+     * Checks whether the search is limited by time. Limits too long to count in nanoseconds, like the one of
+     * {@link #ofDepth(int)}, don't limit it.
+     *
+     * @return true if the search has to stop in time, false otherwise.
+     */
+    public boolean isTimed() {
+        return millis < Long.MAX_VALUE / 1_000_000;
+    }
+
+    /**
+     * Gets the time limit in nanoseconds, to compare against the time elapsed since the search started.
+     *
+     * @return The time limit, or Long.MAX_VALUE if the search is not timed.
+     */
+    public long getNanos() {
+        return isTimed() ? millis * 1_000_000 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+import dev.rnandor.paisho.ginseng.GinsengGame;
+
+/**
+ * A computer player, choosing the turn to play in a position.
+ * Engines keep state between searches, like the positions they already evaluated, so an instance must be used by
+ * one thread at a time, one per seat or worker.
+ */
+public interface Engine {
+
+    /**
+     * Searches a position for the best turn of the side to move. The game is left unchanged.
+     *
+     * @param position The position, a running game.
+     * @param budget The limits of the search.
+     * @return The result of the search.
+     * @throws IllegalArgumentException if the game is over.
+     */
+    SearchResult search(GinsengGame position, Budget budget);
+
+    /**
+     * Forgets everything learnt in earlier searches, to start a new game from a clean slate.
+     */
+    void reset();
+}
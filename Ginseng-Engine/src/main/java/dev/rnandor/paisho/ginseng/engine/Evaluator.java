@@ -0,0 +1,106 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.TileRegistry;
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import dev.rnandor.paisho.ginseng.tiles.*;
+
+import java.util.Map;
+
+/**
+ * Scores Ginseng positions for the side to move, in points, an ordinary tile being worth 300.
+ * A score is the difference between the players of the value of their tiles on the table and of how far their
+ * White Lotus got towards the other half of the board, which wins the game once it's crossed.
+ */
+public final class Evaluator {
+
+    private static final Map<Class<? extends GinsengTile>, Integer> VALUES = Map.of(
+            WhiteLotus.class, 0,
+            Ginseng.class, 450,
+            Dragon.class, 400,
+            SkyBison.class, 400,
+            LionTurtle.class, 350,
+            Wheel.class, 350,
+            Badgermole.class, 300,
+            Koi.class, 300,
+            Orchid.class, 300
+    );
+    private static final int DEFAULT_VALUE = 300;
+
+    // by the number of rows the lotus advanced from its starting square, the last one before crossing is 8
+    private static final int[] LOTUS_PROGRESS = { 0, 5, 10, 20, 35, 55, 80, 120, 170 };
+
+    private final int[] values;
+    private final int lotus;
+
+    /**
+     * Constructs an Evaluator for the tiles of a registry.
+     *
+     * @param registry The registry of the games to evaluate.
+     */
+    public Evaluator(TileRegistry<GinsengTile> registry) {
+        values = new int[registry.size()];
+        for(int kind = 0; kind < values.length; kind++)
+            values[kind] = VALUES.getOrDefault(registry.getTiles().get(kind), DEFAULT_VALUE);
+        lotus = registry.getIndex(WhiteLotus.class);
+    }
+
+    /**
+     * Scores a running game for the side to move.
+     *
+     * @param game The game.
+     * @return The score, positive if the side to move is ahead.
+     */
+    public int evaluate(GinsengGame game) {
+        int score = evaluate(game, true) - evaluate(game, false);
+        return game.isHostTurn() ? score : -score;
+    }
+
+    /**
+     * Gets the value of a kind of tile, used to try the captures of the most valuable tiles first.
+     *
+     * @param kind The kind of the tile, see {@link dev.rnandor.paisho.Table#kindOf(dev.rnandor.paisho.Tile)}.
+     * @return The value of the tile.
+     */
+    public int getValue(int kind) {
+        return values[kind];
+    }
+
+    /**
+     * Gets the kind of the White Lotus, whose moves can end the game.
+     *
+     * @return The kind of the White Lotus.
+     */
+    public int getLotusKind() {
+        return lotus;
+    }
+
+    /**
+     * Checks whether a White Lotus moving to the square wins the game for its player, by crossing into the other half
+     * of the board.
+     *
+     * @param host Whether the lotus belongs to the host player.
+     * @param square The square the lotus moves to.
+     * @return true if the move wins the game.
+     */
+    static boolean isWinningSquare(boolean host, int square) {
+        return host ? BoardGeometry.squareY(square) > 0 : BoardGeometry.squareY(square) < 0;
+    }
+
+    /**
+     * Helper method.
+     * Scores the tiles of one player.
+     */
+    private int evaluate(GinsengGame game, boolean host) {
+        int score = 0;
+        for(int kind = 0; kind < values.length; kind++)
+            score += values[kind] * game.getPieceCount(host, kind);
+
+        if(lotus >= 0 && game.getPieceCount(host, lotus) > 0) {
+            int y = BoardGeometry.squareY(game.getPiece(host, lotus, 0).getSquare());
+            int rows = host ? y + 8 : 8 - y;
+            score += LOTUS_PROGRESS[Math.clamp(rows, 0, LOTUS_PROGRESS.length - 1)];
+        }
+        return score;
+    }
+}
@@ -0,0 +1,430 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plays Ginseng with a Monte Carlo tree search, which samples the game tree instead of walking all of it, as suits
+ * the hundreds of turns of a typical position.
+ * <p>
+ * Every playout descends the tree by UCT, expands one untried turn and plays the game on from there with cheap
+ * heuristic turns: a winning lotus jump if there's one, otherwise a plain move of a random tile, often a capture.
+ * Playouts that don't end the game within a limit are scored by the {@link Evaluator}, as the chance of the host
+ * winning. A turn of the tree that wins the game at once is always chosen, however few playouts it had.
+ * <p>
+ * The search is root parallel: every worker grows its own tree from its own fork of the position, with its own
+ * random numbers, and the statistics of the turns of the root are summed once they're done. Workers share nothing
+ * while searching, so the number of playouts grows with the number of cores. With a node budget, the result only
+ * depends on the seed.
+ */
+@Slf4j
+public final class MonteCarloEngine implements Engine {
+
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int MAX_PLAYOUT = 40;
+    private static final double CAPTURE_BIAS = 0.5;
+    // points of evaluation per e-fold of the odds of winning
+    private static final double WIN_RATE_SCALE = 400;
+    private static final int CHECK_INTERVAL = 64;
+
+    private final ForkJoinPool pool;
+    private final int workers;
+    private final long seed;
+    private SplittableRandom random;
+    private Evaluator evaluator;
+
+    /**
+     * Constructs a MonteCarloEngine searching with a worker per core of the common pool.
+     */
+    public MonteCarloEngine() {
+        this(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), System.nanoTime());
+    }
+
+    /**
+     * Constructs a MonteCarloEngine.
+     *
+     * @param pool The pool to search on.
+     * @param workers The number of trees grown in parallel, at least 1.
+     * @param seed The seed of the random numbers of the playouts.
+     * @throws IllegalArgumentException if the number of workers is less than 1.
+     */
+    public MonteCarloEngine(ForkJoinPool pool, int workers, long seed) {
+        if(workers < 1)
+            throw new IllegalArgumentException("There must be at least 1 worker, got " + workers);
+
+        this.pool = pool;
+        this.workers = workers;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Searches a position. The node budget is the total number of playouts, shared among the workers, and the depth
+     * limits how deep the trees grow. The score is the win rate of the best turn, converted to the scale of the
+     * {@link Evaluator}, and the principal variation follows the most visited turns.
+     */
+    @Override
+    public SearchResult search(GinsengGame position, Budget budget) {
+        if(!position.isGameRunning())
+            throw new IllegalArgumentException("The game is over.");
+        if(evaluator == null)
+            evaluator = new Evaluator(position.getRegistry());
+
+        long start = System.nanoTime();
+
+        var trees = new ArrayList<Tree>(workers);
+        for(int i = 0; i < workers; i++) {
+            long playouts = budget.nodes() / workers + (i < budget.nodes() % workers ? 1 : 0);
+            trees.add(new Tree(position.fork(), random.split(), budget.depth(), Math.max(playouts, 1), budget, start));
+        }
+
+        try {
+            for(var future : pool.invokeAll(trees))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The search was interrupted", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException("A worker of the search failed", e.getCause());
+        }
+
+        return merge(trees, System.nanoTime() - start);
+    }
+
+    @Override
+    public void reset() {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Helper method.
+     * Sums the statistics of the turns of the roots of the trees, and picks the most visited turn.
+     */
+    private SearchResult merge(ArrayList<Tree> trees, long nanos) {
+        // turn -> visits, wins
+        var stats = new HashMap<Integer, double[]>();
+        long playouts = 0;
+        for(var tree : trees) {
+            playouts += tree.playouts;
+            for(int i = 0; i < tree.root.childCount; i++) {
+                var child = tree.root.children[i];
+                var sum = stats.computeIfAbsent(child.move, k -> new double[2]);
+                sum[0] += child.visits;
+                sum[1] += child.wins;
+            }
+        }
+
+        // a turn winning at once needs no statistics
+        for(var tree : trees) {
+            for(int i = 0; i < tree.root.childCount; i++) {
+                var child = tree.root.children[i];
+                if(child.won)
+                    return new SearchResult(child.move, SearchResult.WIN - 1, 1, playouts, nanos, new int[] { child.move });
+            }
+        }
+
+        int best = Move.NONE;
+        double[] bestStats = { 0, 0 };
+        for(var entry : stats.entrySet()) {
+            var s = entry.getValue();
+            if(s[0] > bestStats[0] || (s[0] == bestStats[0] && s[1] > bestStats[1])) {
+                best = entry.getKey();
+                bestStats = s;
+            }
+        }
+        if(best == Move.NONE)
+            return new SearchResult(Move.NONE, 0, 0, playouts, nanos, new int[0]);
+
+        // the line below the best turn, in the tree that visited it most
+        Node node = null;
+        for(var tree : trees) {
+            var child = tree.root.find(best);
+            if(child != null && (node == null || child.visits > node.visits))
+                node = child;
+        }
+
+        var line = new int[Budget.MAX_DEPTH];
+        int length = 0;
+        for(; node != null && length < line.length; node = node.mostVisited())
+            line[length++] = node.move;
+
+        int score = toScore(bestStats[1] / bestStats[0]);
+        log.debug("{} playouts, best turn {} visited {} times", playouts, Move.toString(best), (long) bestStats[0]);
+        return new SearchResult(best, score, length, playouts, nanos, Arrays.copyOf(line, length));
+    }
+
+    /**
+     * Helper method.
+     * Converts a win rate to a score, the inverse of {@link #toWinRate(int)}.
+     */
+    private static int toScore(double rate) {
+        double score = WIN_RATE_SCALE * Math.log(rate / (1 - rate));
+        return (int) Math.clamp(score, -(SearchResult.DECISIVE - 1), SearchResult.DECISIVE - 1);
+    }
+
+    /**
+     * Helper method.
+     * Converts a score to the chance of winning, on a logistic curve.
+     */
+    private static double toWinRate(int score) {
+        return 1 / (1 + Math.exp(-score / WIN_RATE_SCALE));
+    }
+
+    /**
+     * A position of a tree, reached by a turn from its parent.
+     */
+    private static final class Node {
+        private final Node parent;
+        private final int move;
+        // whether the turn into the node was the host's, the wins are counted for that player
+        private final boolean hostMoved;
+        private final int depth;
+
+        private Node[] children;
+        private int childCount;
+        private int[] untried;
+        private int untriedCount;
+        private int visits;
+        private double wins;
+        // whether the turn into the node won the game
+        private boolean won;
+
+        private Node(Node parent, int move, boolean hostMoved) {
+            this.parent = parent;
+            this.move = move;
+            this.hostMoved = hostMoved;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        private boolean isFullyExpanded() {
+            return untried != null && untriedCount == 0;
+        }
+
+        private Node select() {
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            double logVisits = Math.log(visits);
+            for(int i = 0; i < childCount; i++) {
+                var child = children[i];
+                if(child.won)
+                    return child;
+
+                double value = child.wins / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                if(value > bestValue) {
+                    best = child;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        private Node find(int move) {
+            for(int i = 0; i < childCount; i++) {
+                if(children[i].move == move)
+                    return children[i];
+            }
+            return null;
+        }
+
+        private Node mostVisited() {
+            Node best = null;
+            for(int i = 0; i < childCount; i++) {
+                if(best == null || children[i].visits > best.visits)
+                    best = children[i];
+            }
+            return best;
+        }
+    }
+
+    /**
+     * The tree one worker grows on its own fork of the position.
+     */
+    private final class Tree implements Callable<Tree> {
+        private final GinsengGame game;
+        private final SplittableRandom random;
+        private final int maxDepth;
+        private final long maxPlayouts;
+        private final boolean timed;
+        private final long start;
+        private final long limit;
+        private final Node root;
+        // the turns of a node, then the squares of the tiles and captures of a playout step
+        private final MoveBuffer turns = new MoveBuffer();
+        private final MoveBuffer captures = new MoveBuffer();
+        private final int[] squares = new int[BoardGeometry.SQUARES];
+        private long playouts;
+
+        private Tree(GinsengGame game, SplittableRandom random, int maxDepth, long maxPlayouts, Budget budget, long start) {
+            this.game = game;
+            this.random = random;
+            this.maxDepth = maxDepth;
+            this.maxPlayouts = maxPlayouts;
+            this.timed = budget.isTimed();
+            this.start = start;
+            this.limit = budget.getNanos();
+            this.root = new Node(null, Move.NONE, !game.isHostTurn());
+        }
+
+        @Override
+        public Tree call() {
+            do {
+                iterate();
+                playouts++;
+            } while(playouts < maxPlayouts && (!timed || playouts % CHECK_INTERVAL != 0 || System.nanoTime() - start < limit));
+            return this;
+        }
+
+        /**
+         * Helper method.
+         * Selects a node, expands it, plays it out and counts the outcome for every node on the way.
+         */
+        private void iterate() {
+            var node = root;
+            int played = 0;
+            while(node.isFullyExpanded() && node.childCount > 0 && game.isGameRunning()) {
+                node = node.select();
+                game.makeTurn(node.move);
+                played++;
+            }
+
+            if(game.isGameRunning() && node.depth < maxDepth) {
+                if(node.untried == null)
+                    expand(node);
+
+                if(node.untriedCount > 0) {
+                    int i = random.nextInt(node.untriedCount);
+                    int move = node.untried[i];
+                    node.untried[i] = node.untried[--node.untriedCount];
+
+                    var child = new Node(node, move, game.isHostTurn());
+                    node.children[node.childCount++] = child;
+                    game.makeTurn(move);
+                    played++;
+                    node = child;
+
+                    var status = game.getStatus();
+                    child.won = status == (child.hostMoved ? PaiShoGame.GameStatus.HOST_WIN : PaiShoGame.GameStatus.GUEST_WIN);
+                }
+            }
+
+            double reward = playout();
+            for(int i = 0; i < played; i++)
+                game.unmakeTurn();
+
+            for(var n = node; n != null; n = n.parent) {
+                n.visits++;
+                n.wins += n.hostMoved ? reward : 1 - reward;
+            }
+        }
+
+        /**
+         * Helper method.
+         * Lists the legal turns of a node, to be tried one by one.
+         */
+        private void expand(Node node) {
+            turns.clear();
+            int n = game.generateLegalTurns(turns);
+            node.untried = turns.toArray();
+            node.untriedCount = n;
+            node.children = new Node[n];
+        }
+
+        /**
+         * Helper method.
+         * Plays the game on with heuristic turns, and unmakes them again.
+         *
+         * @return The chance of the host winning, 1 or 0 if the game ended.
+         */
+        private double playout() {
+            int played = 0;
+            double reward;
+            while(true) {
+                if(!game.isGameRunning()) {
+                    var status = game.getStatus();
+                    reward = status == PaiShoGame.GameStatus.HOST_WIN ? 1 : status == PaiShoGame.GameStatus.GUEST_WIN ? 0 : 0.5;
+                    break;
+                }
+                if(played == MAX_PLAYOUT) {
+                    int score = evaluator.evaluate(game);
+                    reward = toWinRate(game.isHostTurn() ? score : -score);
+                    break;
+                }
+
+                int turn = pickTurn();
+                if(turn == Move.NONE) {
+                    reward = 0.5;
+                    break;
+                }
+                game.makeTurn(turn);
+                played++;
+            }
+
+            for(int i = 0; i < played; i++)
+                game.unmakeTurn();
+            return reward;
+        }
+
+        /**
+         * Helper method.
+         * Picks the turn of a playout: a winning jump of the lotus if there's one, otherwise a plain move of a random
+         * tile, often a capture. Only the lotus and the picked tile are asked for their moves, abilities and swaps are
+         * left out, listing every turn at every step would make playouts many times slower.
+         *
+         * @return The turn, or {@link Move#NONE} if the side to move can't move.
+         */
+        private int pickTurn() {
+            var t = game.getTable();
+            boolean host = game.isHostTurn();
+
+            int lotus = evaluator.getLotusKind();
+            if(lotus >= 0 && game.getPieceCount(host, lotus) > 0) {
+                var tile = game.getPiece(host, lotus, 0);
+                int count = tile.getValidMoves(squares);
+                for(int i = 0; i < count; i++) {
+                    if(Evaluator.isWinningSquare(host, squares[i]))
+                        return Move.of(tile.getSquare(), squares[i], t.isOccupied(squares[i]));
+                }
+            }
+
+            var own = t.getOccupancy(host);
+            turns.clear();
+            for(int sq = own.nextSetBit(0); sq >= 0; sq = own.nextSetBit(sq + 1))
+                turns.add(sq);
+
+            // tiles are tried from a random one on, until one can move
+            int first = turns.isEmpty() ? 0 : random.nextInt(turns.size());
+            for(int i = 0; i < turns.size(); i++) {
+                int from = turns.get((first + i) % turns.size());
+                int count = t.tileAt(from).getValidMoves(squares);
+                if(count == 0)
+                    continue;
+
+                captures.clear();
+                for(int j = 0; j < count; j++) {
+                    if(t.isOccupied(squares[j]))
+                        captures.add(squares[j]);
+                }
+
+                int to = !captures.isEmpty() && random.nextDouble() < CAPTURE_BIAS
+                        ? captures.get(random.nextInt(captures.size()))
+                        : squares[random.nextInt(count)];
+                return Move.of(from, to, t.isOccupied(to));
+            }
+            return Move.NONE;
+        }
+    }
+}
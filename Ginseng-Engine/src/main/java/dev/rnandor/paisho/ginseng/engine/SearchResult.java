@@ -0,0 +1,54 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+import dev.rnandor.paisho.Move;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * The outcome of a search.
+ *
+ * @param move The best turn found, encoded as described in {@link Move}, or {@link Move#NONE} if there was no legal turn.
+ * @param score The value of the position for the side to move, see {@link Evaluator}. Scores beyond
+ *              {@link #DECISIVE} are forced wins, as many turns away as they're short of {@link #WIN}.
+ * @param depth The depth of the last completed iteration, in turns.
+ * @param nodes The number of visited positions.
+ * @param nanos The time the search took, in nanoseconds.
+ * @param principalVariation The turns both sides are expected to play, starting with the best turn.
+ */
+public record SearchResult(int move, int score, int depth, long nodes, long nanos, int[] principalVariation) {
+
+    /**
+     * The score of a won position.
+     */
+    public static final int WIN = 30_000;
+
+    /**
+     * The least score of a forced win, no evaluation of a position reaches it.
+     */
+    public static final int DECISIVE = WIN - 1_000;
+
+    /**
+     * Checks whether the score is a forced win or loss.
+     *
+     * @return true if the search found a forced end of the game.
+     */
+    public boolean isDecisive() {
+        return Math.abs(score) >= DECISIVE;
+    }
+
+    /**
+     * Gets the speed of the search.
+     *
+     * @return The number of positions visited per second.
+     */
+    public double getNodesPerSecond() {
+        return nanos == 0 ? 0 : nodes * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d score %d nodes %d (%.0f/s) pv %s", depth, score, nodes, getNodesPerSecond(),
+                Arrays.stream(principalVariation).mapToObj(Move::toString).collect(Collectors.joining(" ")));
+    }
+}
@@ -0,0 +1,107 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the results of searched positions by their Zobrist key, so positions reached through different orders
+ * of turns are searched once, and the best turn of the last search is tried first in the next one.
+ * <p>
+ * Entries are two parallel longs: the key, and the best turn, score, depth, bound and generation packed together.
+ * An entry is replaced by a search of the same depth or deeper, or by any search once it's from an earlier one.
+ */
+final class TranspositionTable {
+
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private int generation;
+
+    /**
+     * Constructs a TranspositionTable.
+     *
+     * @param bits The table holds 2^bits entries, 16 bytes each.
+     */
+    TranspositionTable(int bits) {
+        if(bits < 1 || bits > 30)
+            throw new IllegalArgumentException("Table size must be in the range [1, 30] bits, got " + bits);
+
+        keys = new long[1 << bits];
+        data = new long[1 << bits];
+        mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Starts a new search, the entries of the earlier ones can be replaced by any entry from now on.
+     */
+    void newSearch() {
+        generation = (generation + 1) & 0x1F;
+    }
+
+    /**
+     * Forgets every entry.
+     */
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        generation = 0;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key The key of the position.
+     * @return The packed entry, read with the static accessors, or 0 if the position isn't stored.
+     */
+    long probe(long key) {
+        int i = (int) key & mask;
+        return keys[i] == key ? data[i] : 0;
+    }
+
+    /**
+     * Stores the result of a search.
+     *
+     * @param key The key of the position.
+     * @param move The best turn, or {@link dev.rnandor.paisho.Move#NONE}.
+     * @param score The score, wins relative to the position, see {@link SearchResult#WIN}.
+     * @param depth The depth of the search.
+     * @param bound Whether the score is {@link #EXACT}, a {@link #LOWER} or an {@link #UPPER} bound.
+     */
+    void store(long key, int move, int score, int depth, int bound) {
+        int i = (int) key & mask;
+        long old = data[i];
+        if(keys[i] != 0 && generation(old) == generation && depth(old) > depth)
+            return;
+
+        // keep the turn of the position if this search didn't find one
+        if(move == 0 && keys[i] == key)
+            move = move(old);
+
+        keys[i] = key;
+        data[i] = (move & 0xFFFFFFFFL) | (long) (score & 0xFFFF) << 32 | (long) (depth & 0xFF) << 48
+                | (long) bound << 56 | (long) generation << 58 | 1L << 63;
+    }
+
+    static int move(long entry) {
+        return (int) entry;
+    }
+
+    static int score(long entry) {
+        return (short) (entry >>> 32);
+    }
+
+    static int depth(long entry) {
+        return (int) (entry >>> 48) & 0xFF;
+    }
+
+    static int bound(long entry) {
+        return (int) (entry >>> 56) & 0x3;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 58) & 0x1F;
+    }
+}
@@ -0,0 +1,124 @@
+package dev.rnandor.paisho.ginseng.engine;
+
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.ginseng.GinsengGame;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EngineTests {
+
+    /**
+     * Builds a position where the guest, to move, wins by jumping its lotus over the host's lotus into the host's half.
+     */
+    private GinsengGame lotusWin() {
+        var game = new GinsengGame(false, false);
+        var table = game.getTable();
+
+        table.move(0, 8, 0, 1);
+        table.move(0, -8, 1, 0);
+        return game;
+    }
+
+    @Test
+    public void testFindsWin() {
+        var game = lotusWin();
+        var result = new AlphaBetaEngine(16).search(game, Budget.ofDepth(4));
+
+        assertEquals(BoardGeometry.square(0, 1), Move.from(result.move()));
+        assertEquals(BoardGeometry.square(2, -1), Move.to(result.move()));
+        assertTrue(result.isDecisive());
+        assertEquals(SearchResult.WIN - 1, result.score());
+        assertEquals(1, result.principalVariation().length);
+    }
+
+    @Test
+    public void testPrincipalVariation() {
+        var game = new GinsengGame(false, false);
+        var state = game.getState();
+
+        var engine = new AlphaBetaEngine(16);
+        var result = engine.search(game, Budget.ofDepth(3));
+        assertEquals(3, result.depth());
+        assertEquals(state, game.getState(), "The searched game should be left unchanged");
+
+        // every turn of the line is legal in the position it's played in
+        var fork = game.fork();
+        var legal = new MoveBuffer();
+        assertEquals(result.move(), result.principalVariation()[0]);
+        for(int turn : result.principalVariation()) {
+            legal.clear();
+            fork.generateLegalTurns(legal);
+            assertTrue(legal.contains(turn), Move.toString(turn) + " should be legal");
+            fork.makeTurn(turn);
+        }
+
+        // the table carries over to the next search of the same position
+        var again = engine.search(game, Budget.ofDepth(3));
+        assertEquals(result.score(), again.score());
+        assertTrue(again.nodes() < result.nodes());
+    }
+
+    @Test
+    public void testBudget() {
+        var game = new GinsengGame(false, false);
+
+        var result = new AlphaBetaEngine(16).search(game, Budget.ofNodes(5000));
+        assertTrue(result.nodes() <= 5000);
+        assertTrue(result.depth() >= 1);
+        assertNotEquals(0, result.move());
+
+        // the first depth always completes, so there's a turn to play however small the budget
+        result = new AlphaBetaEngine(16).search(game, new Budget(Budget.MAX_DEPTH, 1, 1));
+        assertEquals(1, result.depth());
+        assertNotEquals(0, result.move());
+
+        // limits too long to count in nanoseconds don't overflow into a limit in the past
+        assertFalse(Budget.ofDepth(3).isTimed());
+        assertFalse(Budget.ofMillis(Long.MAX_VALUE / 2).isTimed());
+        assertEquals(Long.MAX_VALUE, Budget.ofMillis(Long.MAX_VALUE / 2).getNanos());
+        assertEquals(5_000_000, Budget.ofMillis(5).getNanos());
+
+        assertThrows(IllegalArgumentException.class, () -> Budget.ofDepth(0));
+        assertThrows(IllegalArgumentException.class, () -> Budget.ofMillis(-1));
+
+        game.setStatus(PaiShoGame.GameStatus.DRAW);
+        assertThrows(IllegalArgumentException.class, () -> new AlphaBetaEngine(16).search(game, Budget.ofDepth(1)));
+    }
+
+    @Test
+    public void testMonteCarlo() {
+        var pool = new ForkJoinPool(2);
+        try {
+            var game = lotusWin();
+            var result = new MonteCarloEngine(pool, 2, 1).search(game, Budget.ofNodes(1000));
+            assertEquals(BoardGeometry.square(2, -1), Move.to(result.move()));
+            assertTrue(result.isDecisive());
+
+            // with a node budget, the same seed plays the same, however the workers were scheduled
+            var start = new GinsengGame(false, false);
+            var state = start.getState();
+            var engine = new MonteCarloEngine(pool, 3, 5);
+            var first = engine.search(start, Budget.ofNodes(2000));
+            engine.reset();
+            var second = engine.search(start, Budget.ofNodes(2000));
+
+            assertEquals(state, start.getState(), "The searched game should be left unchanged");
+            assertEquals(2000, first.nodes());
+            assertEquals(first.move(), second.move());
+            assertEquals(first.score(), second.score());
+            assertArrayEquals(first.principalVariation(), second.principalVariation());
+
+            var legal = new MoveBuffer();
+            start.generateLegalTurns(legal);
+            assertTrue(legal.contains(first.move()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import dev.rnandor.paisho.ui.panels.MainMenuPanel;
 import javax.swing.*;
 import java.awt.*;
 import java.io.IOException;
+import java.nio.file.Path;
 
 public class GameWindow extends JFrame {
 
@@ -59,10 +60,11 @@ public class GameWindow extends JFrame {
      *
      * @param name the name of the game
      * @param game the GinsengGame instance to display
+     * @param directory the directory to journal the turns of the game in
      * @throws IOException if an I/O error occurs
      */
-    public void showInGamePanel(String name, GinsengGame game) throws IOException {
-        inGamePanel.setGame(name, game);
+    public void showInGamePanel(String name, GinsengGame game, Path directory) throws IOException {
+        inGamePanel.setGame(name, game, directory);
         cardLayout.show(contentPane, "game");
         contentPane.revalidate();
         contentPane.repaint();
@@ -159,9 +159,7 @@ public class GameBoardPanel extends ImagePanel {
                         var x = getCapX(cap[i], i);
                         var y = getCapY(cap[i], i);
                         if (x == tx && y == ty) {
-                            cap[i].setPosition(pos);
-                            selected.capture();
-                            ((GinsengTile) cap[i]).uncapture();
+                            game.swapFromTemple(selected, (GinsengTile) cap[i]);
 
                             closeTileReplacementDialog();
 
@@ -170,6 +168,10 @@ public class GameBoardPanel extends ImagePanel {
                     }
                 }
 
+                // publish the finished turns to the other threads reading the game
+                if(selected == null)
+                    game.snapshot();
+
                 repaint();
             }
         });
@@ -183,6 +185,7 @@ public class GameBoardPanel extends ImagePanel {
      */
     public void setGame(GinsengGame game) throws IOException {
         this.game = game;
+        game.snapshot();
         this.selected = null;
         this.moves = new ArrayList<>();
         this.targets = new ArrayList<>();
@@ -1,9 +1,11 @@
 package dev.rnandor.paisho.ui.panels;
 
 import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.ginseng.GinsengCodec;
 import dev.rnandor.paisho.ginseng.GinsengGame;
 import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
 import dev.rnandor.paisho.io.GameManager;
+import dev.rnandor.paisho.io.MoveJournal;
 import dev.rnandor.paisho.ui.GameWindow;
 import dev.rnandor.paisho.ui.ResourceHelper;
 import lombok.Getter;
@@ -15,10 +17,19 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 
 @Slf4j
 public class InGamePanel extends ImagePanel {
 
+    private static final String JOURNAL_EXTENSION = ".journal";
+    // the number of journaled turns between snapshots of the game
+    private static final int JOURNAL_SNAPSHOT_INTERVAL = 16;
+
+    private final GameManager<GinsengTile, GinsengGame> manager = new GameManager<>(new GinsengCodec());
+
     private GameWindow gameWindow;
 
     private GameBoardPanel gameBoard;
@@ -33,6 +44,9 @@ public class InGamePanel extends ImagePanel {
     @Getter
     private String gameName;
 
+    // appends the turns played on the board, null when the game isn't journaled
+    private MoveJournal.Writer<GinsengTile, GinsengGame> journal;
+
     /**
      * Constructs a new InGamePanel with the specified GameWindow.
      *
@@ -67,6 +81,8 @@ public class InGamePanel extends ImagePanel {
                 return;
 
             game.setStatus(game.isGuestTurn() ? PaiShoGame.GameStatus.HOST_WIN : PaiShoGame.GameStatus.GUEST_WIN);
+            game.snapshot();
+            closeJournal();
             repaint();
         });
 
@@ -84,7 +100,10 @@ public class InGamePanel extends ImagePanel {
         JButton exitButton = new JButton("Leave Game");
         exitButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         exitButton.setBounds(100, 100, 100, 30);
-        exitButton.addActionListener(_ -> gameWindow.showMainMenu());
+        exitButton.addActionListener(_ -> {
+            closeJournal();
+            gameWindow.showMainMenu();
+        });
 
         sidePanel.add(new Spacer(0, 10));
         sidePanel.add(welcome);
@@ -145,7 +164,7 @@ public class InGamePanel extends ImagePanel {
                 repaint();
             }
 
-            new GameManager<GinsengTile, GinsengGame>().saveGame(game, selected.toAbsolutePath().toString());
+            manager.saveGame(game, selected.toAbsolutePath().toString());
             log.info("Saved game.");
         }
     }
@@ -158,13 +177,18 @@ public class InGamePanel extends ImagePanel {
     }
 
     /**
-     * Sets the current game and updates the display.
+     * Sets the current game and updates the display. The turns played from now on are journaled until the game
+     * ends or another one is shown, see {@link MoveJournal}.
      *
      * @param name the name of the game
      * @param game the GinsengGame instance to display
+     * @param directory the directory to keep the journal of the game in, as name.journal replacing any earlier one
      * @throws IOException if an I/O error occurs
      */
-    public void setGame(String name, GinsengGame game) throws IOException {
+    public void setGame(String name, GinsengGame game, Path directory) throws IOException {
+        closeJournal();
+
+        var journalName = name + JOURNAL_EXTENSION;
         if(name.length() >= 20) {
             name = name.substring(0, 16)+"...";
         }
@@ -174,5 +198,53 @@ public class InGamePanel extends ImagePanel {
         this.game = game;
         this.gameName = name;
         gameBoard.setGame(game);
+
+        if(game.isGameRunning())
+            openJournal(directory, journalName);
+    }
+
+    /**
+     * Starts journaling the current game. A game that can't be journaled can still be played.
+     *
+     * @param directory the directory of the journal
+     * @param fileName the file name of the journal
+     */
+    private void openJournal(Path directory, String fileName) {
+        try {
+            var path = directory.resolve(fileName);
+            var writer = MoveJournal.create(path, manager, game, JOURNAL_SNAPSHOT_INTERVAL);
+            journal = writer;
+
+            // the writer listens to the game itself, wrapped so the turn ending the game closes the journal
+            game.setTurnListener((move, settled) -> {
+                try {
+                    writer.turnCompleted(move, settled);
+                } catch (UncheckedIOException e) {
+                    log.error("Could not journal the turn, the game is no longer journaled:", e);
+                    closeJournal();
+                    return;
+                }
+                if(settled && game.isGameOver())
+                    closeJournal();
+            });
+            log.info("Journaling the game to {}", path.toAbsolutePath());
+        } catch (IOException | InvalidPathException e) {
+            log.error("Could not journal the game:", e);
+        }
+    }
+
+    /**
+     * Stops journaling the current game, if it's journaled.
+     */
+    private void closeJournal() {
+        if(journal == null)
+            return;
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("Could not close the journal:", e);
+        }
+        journal = null;
     }
 }
@@ -1,5 +1,6 @@
 package dev.rnandor.paisho.ui.panels;
 
+import dev.rnandor.paisho.ginseng.GinsengCodec;
 import dev.rnandor.paisho.ginseng.GinsengGame;
 import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
 import dev.rnandor.paisho.io.GameManager;
@@ -12,6 +13,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 
 @Slf4j
 public class MainMenuPanel extends ImagePanel {
@@ -61,7 +63,7 @@ public class MainMenuPanel extends ImagePanel {
         loadButton.addActionListener(_ -> {
             try {
                 loadGame();
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
@@ -99,7 +101,7 @@ public class MainMenuPanel extends ImagePanel {
 
         try {
             var game = new GinsengGame(bisonChange.isSelected(), ginsengChange.isSelected());
-            gameWindow.showInGamePanel(text.getText(), game);
+            gameWindow.showInGamePanel(text.getText(), game, Path.of("."));
         } catch (Exception e) {
             log.error("Could not start New Game:", e);
         }
@@ -108,10 +110,9 @@ public class MainMenuPanel extends ImagePanel {
     /**
      * Opens a file chooser dialog to load a saved game.
      *
-     * @throws IOException            if an I/O error occurs during loading
-     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     * @throws IOException if an I/O error occurs during loading, or the file is not a save
      */
-    private void loadGame() throws IOException, ClassNotFoundException {
+    private void loadGame() throws IOException {
         log.info("Game selection opened.");
 
         JFileChooser chooser = new JFileChooser();
@@ -127,10 +128,10 @@ public class MainMenuPanel extends ImagePanel {
         if (result == JFileChooser.APPROVE_OPTION) {
             var selected = chooser.getSelectedFile();
             log.info("Selected file: {}", selected.getAbsolutePath());
-            var game = new GameManager<GinsengTile, GinsengGame>().loadGame(selected.getAbsolutePath());
+            var game = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec()).loadGame(selected.getAbsolutePath());
             var name = selected.getName().substring(0, selected.getName().lastIndexOf('.'));
 
-            gameWindow.showInGamePanel(name, game);
+            gameWindow.showInGamePanel(name, game, selected.getParentFile().toPath());
         }
     }
 
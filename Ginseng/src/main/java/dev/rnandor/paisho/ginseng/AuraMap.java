@@ -0,0 +1,155 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.BitBoard;
+import dev.rnandor.paisho.Table;
+import dev.rnandor.paisho.Tile;
+import dev.rnandor.paisho.ginseng.tiles.Koi;
+import dev.rnandor.paisho.ginseng.tiles.LionTurtle;
+import dev.rnandor.paisho.ginseng.tiles.SkyBison;
+
+import static dev.rnandor.paisho.BoardGeometry.*;
+
+/**
+ * Keeps track of the auras of the Koi, Sky Bison and Lion Turtle tiles, so checking whether a tile is trapped,
+ * boosted or blocked is a single bit test.
+ * <p>
+ * Every aura covers the 3x3 area around its tile:
+ * <ul>
+ *     <li>a Lion Turtle blocks the abilities of the enemy tiles around it;</li>
+ *     <li>a Koi in the White Garden traps the enemy tiles around it, unless it's blocked by a Lion Turtle;</li>
+ *     <li>a Sky Bison in the Red Garden boosts the friendly tiles around it, unless it's blocked by a Lion Turtle.</li>
+ * </ul>
+ * When several Koi or Sky Bison tiles reach the same square, the one on the lowest square decides.
+ * The auras only depend on where these three kinds stand, so they're computed again only after one of them changed.
+ */
+final class AuraMap {
+
+    private final Table table;
+    private final int koiKind;
+    private final int bisonKind;
+    private final int turtleKind;
+
+    // indexed by player, 0 for the host and 1 for the guest
+    private final BitBoard[] trapped = { new BitBoard(), new BitBoard() };
+    private final BitBoard[] boosted = { new BitBoard(), new BitBoard() };
+    private final BitBoard[] blocked = { new BitBoard(), new BitBoard() };
+
+    private final BitBoard claimed = new BitBoard();
+    private boolean dirty = true;
+
+    /**
+     * Constructs an AuraMap of the game. The auras are computed on the first query.
+     *
+     * @param game The game to keep track of.
+     */
+    AuraMap(GinsengGame game) {
+        this.table = game.getTable();
+        this.koiKind = game.getRegistry().getIndex(Koi.class);
+        this.bisonKind = game.getRegistry().getIndex(SkyBison.class);
+        this.turtleKind = game.getRegistry().getIndex(LionTurtle.class);
+    }
+
+    /**
+     * Notes a changed tile, the auras are computed again on the next query if the tile casts one.
+     *
+     * @param tile The tile that moved, was removed or was put down.
+     */
+    void tileChanged(Tile tile) {
+        if(tile instanceof Koi || tile instanceof SkyBison || tile instanceof LionTurtle)
+            dirty = true;
+    }
+
+    /**
+     * Checks whether a tile of the player on the square is trapped by an enemy Koi.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is trapped, false otherwise.
+     */
+    boolean isTrapped(int square, boolean host) {
+        refresh();
+        return trapped[host ? 0 : 1].get(square);
+    }
+
+    /**
+     * Checks whether a tile of the player on the square is boosted by a friendly Sky Bison.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is boosted, false otherwise.
+     */
+    boolean isBoosted(int square, boolean host) {
+        refresh();
+        return boosted[host ? 0 : 1].get(square);
+    }
+
+    /**
+     * Checks whether a tile of the player on the square is blocked by an enemy Lion Turtle.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is blocked, false otherwise.
+     */
+    boolean isBlocked(int square, boolean host) {
+        refresh();
+        return blocked[host ? 0 : 1].get(square);
+    }
+
+    /**
+     * Helper method.
+     * Computes every aura again if one of the casting tiles changed.
+     */
+    private void refresh() {
+        if(!dirty)
+            return;
+
+        for(int i = 0; i < 2; i++) {
+            boolean host = i == 0;
+
+            // blocked by the turtles of the other player
+            blocked[i].clear();
+            var turtles = table.getOccupancy(!host, turtleKind);
+            for(int sq = turtles.nextSetBit(0); sq >= 0; sq = turtles.nextSetBit(sq+1))
+                blocked[i].or(surroundings(sq));
+        }
+
+        for(int i = 0; i < 2; i++) {
+            boolean host = i == 0;
+            cast(trapped[i], table.getOccupancy(!host, koiKind), Table.Locale.WHITE_GARDEN, blocked[1-i]);
+            cast(boosted[i], table.getOccupancy(host, bisonKind), Table.Locale.RED_GARDEN, blocked[i]);
+        }
+
+        dirty = false;
+    }
+
+    /**
+     * Helper method.
+     * Computes the aura of the Koi or Sky Bison tiles of one player.
+     *
+     * @param aura The aura to compute.
+     * @param casters The squares of the tiles casting the aura.
+     * @param garden The garden the casters have to stand in.
+     * @param casterBlocked The squares where a tile of the casters' player is blocked by a Lion Turtle.
+     */
+    private void cast(BitBoard aura, BitBoard casters, Table.Locale garden, BitBoard casterBlocked) {
+        aura.clear();
+        claimed.clear();
+
+        // in ascending order, so the lowest caster claims the squares first
+        for(int sq = casters.nextSetBit(0); sq >= 0; sq = casters.nextSetBit(sq+1)) {
+            if(!Table.isFrom(table.localeFlags(sq), garden))
+                continue;
+
+            boolean active = !casterBlocked.get(sq);
+            var area = surroundings(sq);
+            for(int s = area.nextSetBit(0); s >= 0; s = area.nextSetBit(s+1)) {
+                if(claimed.get(s))
+                    continue;
+
+                claimed.set(s);
+                if(active)
+                    aura.set(s);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.io.GameCodec;
+import dev.rnandor.paisho.io.GameManager;
+import dev.rnandor.paisho.io.LegacyStream;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The save format of GinsengGame, see {@link GameManager}.
+ * <p>
+ * Version 1 writes, after the header:
+ * <ul>
+ *     <li>1 byte: the variants, bit 0 for Sky Bison flight and bit 1 for the alternative Ginseng protection</li>
+ *     <li>1 byte: the status, the ordinal of {@link PaiShoGame.GameStatus}</li>
+ *     <li>4 bytes: the turn number</li>
+ *     <li>1 byte: the number of tile kinds, followed by their registry codes</li>
+ *     <li>2 bytes: the number of tiles, followed by the tiles as packed by {@link GinsengState}</li>
+ * </ul>
+ * The kinds of the tiles index the codes of the save, so saves stay valid when tiles are added to the registry.
+ * The captured pools aren't written, a tile's captured bit puts it in the pool of its player.
+ */
+public final class GinsengCodec implements GameCodec<GinsengGame> {
+
+    private static final int VERSION = 1;
+    private static final int BISON_FLIGHT = 1;
+    private static final int ALTERNATIVE_GINSENG = 1 << 1;
+
+    @Override
+    public String getName() {
+        return "ginseng";
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(GinsengGame game, DataOutput out) throws IOException {
+        var state = game.getState();
+        var registry = game.getRegistry();
+
+        out.writeByte((state.isBisonFlightMode() ? BISON_FLIGHT : 0) | (state.isAlternativeGinsengMode() ? ALTERNATIVE_GINSENG : 0));
+        out.writeByte(state.getStatus().ordinal());
+        out.writeInt(state.getTurn());
+
+        out.writeByte(registry.size());
+        for(int i = 0; i < registry.size(); i++)
+            out.writeUTF(registry.getCode(i));
+
+        out.writeShort(state.getTileCount());
+        for(int i = 0; i < state.getTileCount(); i++)
+            out.writeInt(state.getTile(i));
+    }
+
+    @Override
+    public GinsengGame read(DataInput in, int version) throws IOException {
+        var registry = GinsengGame.tileRegistry();
+
+        int variants = in.readUnsignedByte();
+        int status = in.readUnsignedByte();
+        int turn = in.readInt();
+        if(status >= PaiShoGame.GameStatus.values().length)
+            throw new GameManager.InvalidSaveException("Unknown status " + status);
+
+        // kind of the save -> kind of the registry
+        var kinds = new int[in.readUnsignedByte()];
+        for(int i = 0; i < kinds.length; i++) {
+            String code = in.readUTF();
+            kinds[i] = registry.getIndex(code);
+            if(kinds[i] < 0)
+                throw new GameManager.InvalidSaveException("Unknown tile " + code);
+        }
+
+        var tiles = new int[in.readUnsignedShort()];
+        for(int i = 0; i < tiles.length; i++) {
+            int packed = in.readInt();
+            int kind = GinsengState.kind(packed);
+            if(kind >= kinds.length)
+                throw new GameManager.InvalidSaveException("Tile of unknown kind " + kind);
+
+            tiles[i] = pack(GinsengState.square(packed), kinds[kind], GinsengState.isHost(packed), GinsengState.isCaptured(packed));
+        }
+
+        return build(tiles, turn, PaiShoGame.GameStatus.values()[status],
+                (variants & BISON_FLIGHT) != 0, (variants & ALTERNATIVE_GINSENG) != 0);
+    }
+
+    /**
+     * Migrates the Java serialized saves of every earlier version. Their tiles are identified by class name, and
+     * stand either on a square or on locX and locY game coordinates.
+     */
+    @Override
+    public GinsengGame migrate(LegacyStream.Instance game) throws IOException {
+        if(!game.getClassName().equals(GinsengGame.class.getName()))
+            throw new GameManager.InvalidSaveException("Save of " + game.getClassName() + ", expected a GinsengGame");
+
+        var registry = GinsengGame.tileRegistry();
+        if(!(game.get("tiles") instanceof LegacyStream.Instance set))
+            throw new GameManager.InvalidSaveException("Legacy save without tiles");
+
+        var tiles = new ArrayList<Integer>();
+        for(var element : set.getAnnotations()) {
+            if(!(element instanceof LegacyStream.Instance tile))
+                continue;
+
+            int kind = -1;
+            for(var clazz : registry.getTiles())
+                if(clazz.getName().equals(tile.getClassName()))
+                    kind = registry.getIndex(clazz);
+            if(kind < 0)
+                throw new GameManager.InvalidSaveException("Unknown tile " + tile.getClassName());
+
+            int square = tile.has("square")
+                    ? value(tile, "square", Integer.class)
+                    : BoardGeometry.square(value(tile, "locX", Integer.class), value(tile, "locY", Integer.class));
+            tiles.add(pack(square, kind, value(tile, "host", Boolean.class), value(tile, "captured", Boolean.class)));
+        }
+
+        if(!(game.get("status") instanceof LegacyStream.EnumConstant status))
+            throw new GameManager.InvalidSaveException("Legacy save without a status");
+
+        PaiShoGame.GameStatus gameStatus;
+        try {
+            gameStatus = PaiShoGame.GameStatus.valueOf(status.name());
+        } catch (IllegalArgumentException e) {
+            throw new GameManager.InvalidSaveException("Unknown status " + status.name());
+        }
+
+        return build(tiles.stream().mapToInt(Integer::intValue).toArray(), value(game, "turn", Integer.class), gameStatus,
+                value(game, "bisonFlightMode", Boolean.class), value(game, "alternativeGinsengMode", Boolean.class));
+    }
+
+    /**
+     * Helper method.
+     * Packs a tile read from a save.
+     */
+    private static int pack(int square, int kind, boolean host, boolean captured) throws GameManager.InvalidSaveException {
+        if(square < 0 || square >= BoardGeometry.SQUARES || (!captured && !BoardGeometry.isValidSquare(square)))
+            throw new GameManager.InvalidSaveException("Tile on invalid square " + square);
+
+        return GinsengState.pack(square, kind, host, captured);
+    }
+
+    /**
+     * Helper method.
+     * Builds the game of a save, with the tiles already checked by {@link #pack(int, int, boolean, boolean)}.
+     */
+    private static GinsengGame build(int[] tiles, int turn, PaiShoGame.GameStatus status, boolean bisonFlight,
+                                     boolean alternativeGinseng) throws GameManager.InvalidSaveException {
+        var occupied = new boolean[BoardGeometry.SQUARES];
+        for(int tile : tiles) {
+            if(GinsengState.isCaptured(tile))
+                continue;
+            if(occupied[GinsengState.square(tile)])
+                throw new GameManager.InvalidSaveException("Two tiles on square " + GinsengState.square(tile));
+            occupied[GinsengState.square(tile)] = true;
+        }
+
+        try {
+            return new GinsengGame(new GinsengState(tiles, turn, status, bisonFlight, alternativeGinseng));
+        } catch (IllegalArgumentException e) {
+            throw new GameManager.InvalidSaveException(e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method.
+     * Gets a field of a legacy object.
+     */
+    private static <V> V value(LegacyStream.Instance instance, String field, Class<V> type) throws GameManager.InvalidSaveException {
+        var value = instance.get(field);
+        if(!type.isInstance(value))
+            throw new GameManager.InvalidSaveException("Legacy " + instance.getClassName() + " without " + field);
+
+        return type.cast(value);
+    }
+}
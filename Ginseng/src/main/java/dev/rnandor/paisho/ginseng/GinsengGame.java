@@ -3,12 +3,11 @@ package dev.rnandor.paisho.ginseng;
 import com.sun.source.tree.Tree;
 import dev.rnandor.paisho.*;
 import dev.rnandor.paisho.ginseng.tiles.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
@@ -27,6 +26,48 @@ public class GinsengGame extends PaiShoGame<GinsengTile> {
     private final boolean bisonFlightMode;
     private final boolean alternativeGinsengMode;
 
+    // scratch space of generateLegalTurns
+    private transient int[] moveSquares;
+    private transient int[] abilitySquares;
+
+    // scratch space of getPositionKey, the captured tiles of each kind counted so far
+    @Getter(AccessLevel.NONE)
+    private transient int[] capturedCounts;
+
+    @Getter(AccessLevel.NONE)
+    private transient Mobility mobility;
+
+    @Getter(AccessLevel.NONE)
+    private transient ProtectionMap protection;
+
+    @Getter(AccessLevel.NONE)
+    private transient AuraMap auras;
+
+    // written only by the thread changing the game, read by any thread
+    @Getter(AccessLevel.NONE)
+    private transient volatile GinsengSnapshot published;
+
+    // undo operations, see PaiShoGame.record
+    private static final int OP_CAPTURED = FIRST_CUSTOM_OP;
+    private static final int OP_RELEASED = FIRST_CUSTOM_OP + 1;
+
+    // the guest's half of the starting layout, the host's half mirrors it through the centre
+    private static final Placement[] GUEST_LAYOUT = {
+            new Placement("wl", 0, 8),
+            new Placement("drg", -1, 7),
+            new Placement("bm", 1, 7),
+            new Placement("sb", -2, 6),
+            new Placement("koi", 2, 6),
+            new Placement("wh", -3, 5),
+            new Placement("wh", 3, 5),
+            new Placement("gs", -4, 4),
+            new Placement("gs", 4, 4),
+            new Placement("oc", -5, 4),
+            new Placement("oc", 5, 4),
+            new Placement("lt", 0, 4)
+    };
+    private static final Placement[] HOST_LAYOUT = Arrays.stream(GUEST_LAYOUT).map(Placement::mirrored).toArray(Placement[]::new);
+
     // Static block to initialize the TileRegistry
     static {
         try {
@@ -36,17 +77,22 @@ public class GinsengGame extends PaiShoGame<GinsengTile> {
         }
     }
 
+    /**
+     * Gets the tile registry shared by every GinsengGame, for reading games before they exist.
+     *
+     * @return The tile registry.
+     */
+    static TileRegistry<GinsengTile> tileRegistry() {
+        return registry;
+    }
+
     /**
      * Constructs a new GinsengGame with the specified game modes.
      *
      * @param bisonGrantsFlight          whether the Sky Bison grants flight
      * @param alternativeGinsengProtection whether the alternative Ginseng protection mode is enabled
-     * @throws NoSuchMethodException      if a required method is not found
-     * @throws InvocationTargetException  if there is an error during tile instantiation
-     * @throws InstantiationException     if there is an error during tile instantiation
-     * @throws IllegalAccessException     if there is illegal access during tile instantiation
      */
-    public GinsengGame(boolean bisonGrantsFlight, boolean alternativeGinsengProtection) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
+    public GinsengGame(boolean bisonGrantsFlight, boolean alternativeGinsengProtection) {
         super(registry);
 
         this.bisonFlightMode = bisonGrantsFlight;
@@ -55,43 +101,94 @@ public class GinsengGame extends PaiShoGame<GinsengTile> {
         hostCaptured = new TreeSet<>();
         guestCaptured = new TreeSet<>();
 
-        guestLotus = new WhiteLotus(false, table, 0, 8);
-        hostLotus = new WhiteLotus(true, table, 0, -8);
+        setUp(GUEST_LAYOUT, false);
+        setUp(HOST_LAYOUT, true);
+    }
+
+    /**
+     * Constructs a GinsengGame from a state taken by {@link #getState()}, without any turns to unmake.
+     *
+     * @param state The state of the game.
+     * @throws IndexOutOfBoundsException if the state has a tile of an unregistered kind.
+     */
+    public GinsengGame(GinsengState state) {
+        super(registry);
 
-        tiles.add(new Dragon(false, table, -1, 7));
+        this.bisonFlightMode = state.isBisonFlightMode();
+        this.alternativeGinsengMode = state.isAlternativeGinsengMode();
 
-        tiles.add(new Badgermole(false, table, 1, 7));
+        hostCaptured = new TreeSet<>();
+        guestCaptured = new TreeSet<>();
 
-        tiles.add(new SkyBison(false, table, -2, 6));
+        for(int i = 0; i < state.getTileCount(); i++) {
+            int packed = state.getTile(i);
+            var tile = createTile(GinsengState.kind(packed), GinsengState.isHost(packed), GinsengState.square(packed));
+            if(GinsengState.isCaptured(packed))
+                applyCaptured(tile, true);
+            else
+                table.put(tile);
+        }
 
-        tiles.add(new Koi(false, table, 2, 6));
+        restoreProgress(state.getTurn(), state.getStatus());
+    }
 
-        tiles.add(new Wheel(false, table, -3, 5));
-        tiles.add(new Wheel(false, table, 3, 5));
+    /**
+     * Takes the state of the game, see {@link GinsengState}.
+     *
+     * @return The state of the game.
+     */
+    public GinsengState getState() {
+        return GinsengState.of(this);
+    }
 
-        tiles.add(new Ginseng(false, table, -4, 4));
-        tiles.add(new Ginseng(false, table, 4, 4));
+    /**
+     * Creates an independent copy of the game, built from its state rather than by copying the tiles.
+     * The copy shares nothing mutable with the original, so it can be handed to another thread.
+     * Turns that could still be unmade are part of the copy, but the copy can't unmake them.
+     *
+     * @return The copy of the game.
+     */
+    public GinsengGame fork() {
+        return new GinsengGame(getState());
+    }
 
-        tiles.add(new Orchid(false, table, -5, 4));
-        tiles.add(new Orchid(false, table, 5, 4));
+    /**
+     * Takes an immutable snapshot of the game and publishes it to {@link #getPublishedSnapshot()}.
+     * Should only be called by the thread changing the game, between turns. Reuses the last snapshot while the game
+     * didn't change since.
+     *
+     * @return The snapshot of the current version of the game.
+     */
+    public GinsengSnapshot snapshot() {
+        var last = published;
+        if(last != null && last.getVersion() == getVersion())
+            return last;
 
-        tiles.add(new LionTurtle(false, table, 0, 4));
+        last = new GinsengSnapshot(getState(), getVersion(), getRegistry());
+        published = last;
+        return last;
+    }
 
-        var mirrored = new ArrayList<GinsengTile>();
-        for (var tile : this.tiles) {
-            var pos = tile.getPosition();
-            var construct = tile.getClass().getDeclaredConstructor(boolean.class, table.getClass(), int.class, int.class)
-                    .newInstance(!tile.isHost(), table, -pos.getX(), -pos.getY());
-            mirrored.add(construct);
-        }
-        tiles.addAll(mirrored);
+    /**
+     * Gets the last snapshot taken by {@link #snapshot()}. Nothing is published until the thread changing the game
+     * takes the first snapshot, so games that are never shown don't pay for one.
+     * Safe to call from any thread while the game is being changed, the snapshot never shows a half-made change.
+     *
+     * @return The last published snapshot, or null if none was taken yet.
+     */
+    public GinsengSnapshot getPublishedSnapshot() {
+        return published;
+    }
 
-        tiles.add(guestLotus);
-        tiles.add(hostLotus);
+    @Override
+    protected void tileCreated(GinsengTile tile) {
+        tile.setGame(this);
 
-        for(var tile : tiles) {
-            tile.setGame(this);
-            table.put(tile);
+        if(tile instanceof WhiteLotus lotus) {
+            if(lotus.isHost())
+                hostLotus = lotus;
+            else
+                guestLotus = lotus;
         }
     }
 
@@ -104,18 +201,352 @@ public class GinsengGame extends PaiShoGame<GinsengTile> {
         return !hostLotus.isInTemple() && !guestLotus.isInTemple();
     }
 
+    /**
+     * Takes a complete turn, which can be taken back with {@link #unmakeTurn()}.
+     * The turn is not validated, its parts should come from the tiles' move and ability generators.
+     *
+     * @param tile The tile to move.
+     * @param to The target square of the move.
+     * @param abilityTarget The square the tile's ability is used on after the move, -1 for none.
+     * @param swap The captured tile to swap the moved tile with when it ends in a temple, null for none.
+     */
+    public void makeTurn(GinsengTile tile, int to, int abilityTarget, GinsengTile swap) {
+        int move = Move.of(tile.getSquare(), to, table.tileAt(to) != null, abilityTarget, swap == null ? -1 : table.kindOf(swap));
+        playTurn(tile, to, abilityTarget, swap, move);
+    }
+
+    /**
+     * Helper method.
+     * Takes a complete turn, reporting it as the given move.
+     */
+    private void playTurn(GinsengTile tile, int to, int abilityTarget, GinsengTile swap, int move) {
+        beginTurn();
+
+        tile.moveTo(to);
+
+        if(abilityTarget >= 0)
+            tile.useAbility(abilityTarget);
+
+        if(swap != null)
+            swapFromTemple(tile, swap);
+
+        setTurnInProgress(move);
+        nextTurn();
+    }
+
+    /**
+     * Appends every complete legal turn of the side to move to the buffer.
+     * A turn is a move, optionally followed by the ability of the moved tile and a swap with a captured tile
+     * when the tile ends in a temple, the same choices the board offers to a player:
+     * <ul>
+     *     <li>the ability and the swap are always optional,</li>
+     *     <li>skipping the ability also skips the swap, as the turn ends there,</li>
+     *     <li>a tile that got captured during its move, or a move that ends the game, gets no follow-up,</li>
+     *     <li>the White Lotus never swaps, and captured tiles of the same kind count as one swap.</li>
+     * </ul>
+     * Tiles are visited in ascending square order, so the order of the turns is deterministic.
+     *
+     * @param buffer The buffer to append to, it's not cleared.
+     * @return The number of appended turns.
+     */
     @Override
-    public boolean checkForDraw() {
-        for(var tile : this.tiles) {
-            if(tile.isGuest() != this.isGuestTurn())
-                continue;
+    public int generateLegalTurns(MoveBuffer buffer) {
+        if(!isGameRunning())
+            return 0;
+
+        if(moveSquares == null) {
+            moveSquares = new int[BoardGeometry.SQUARES];
+            abilitySquares = new int[8];
+        }
+
+        int start = buffer.size();
+        var own = table.getOccupancy(isHostTurn());
+
+        // every turn made below is unmade before the next lookup, so the occupancy is the same again
+        for(int from = own.nextSetBit(0); from >= 0; from = own.nextSetBit(from+1)) {
+            var tile = (GinsengTile) table.tileAt(from);
+            int count = tile.getValidMoves(moveSquares);
+
+            for(int i = 0; i < count; i++) {
+                int to = moveSquares[i];
+                int move = Move.of(from, to, table.isOccupied(to));
+                buffer.add(move);
+
+                // only abilities and temples lead to follow-ups, other moves need no look-ahead
+                boolean temple = Table.isTemple(table.localeFlags(to)) && !(tile instanceof WhiteLotus);
+                if(tile.hasUtility() || temple)
+                    addFollowUps(tile, move, buffer);
+            }
+        }
+
+        return buffer.size() - start;
+    }
+
+    /**
+     * Helper method.
+     * Makes the move and appends the turns that continue it with an ability or a swap.
+     *
+     * @param tile The moved tile.
+     * @param move The plain move.
+     * @param buffer The buffer to append to.
+     */
+    private void addFollowUps(GinsengTile tile, int move, MoveBuffer buffer) {
+        beginTurn();
+        tile.moveTo(Move.to(move));
+
+        if(isGameRunning() && !tile.isCaptured()) {
+            int count = tile.getAbilityTargets(abilitySquares);
+            if(count > 0) {
+                for(int i = 0; i < count; i++) {
+                    int withAbility = Move.withAbility(move, abilitySquares[i]);
+                    buffer.add(withAbility);
+
+                    beginTurn();
+                    tile.useAbility(abilitySquares[i]);
+                    addSwaps(tile, withAbility, buffer);
+                    unmakeTurn();
+                }
+            }
+            else {
+                addSwaps(tile, move, buffer);
+            }
+        }
+
+        unmakeTurn();
+    }
+
+    /**
+     * Helper method.
+     * Appends the turns that continue with a swap, one for every kind of the owner's captured tiles.
+     *
+     * @param tile The moved tile.
+     * @param move The turn so far.
+     * @param buffer The buffer to append to.
+     */
+    private void addSwaps(GinsengTile tile, int move, MoveBuffer buffer) {
+        if(!isGameRunning() || !tile.isInTemple() || tile instanceof WhiteLotus)
+            return;
+
+        int kinds = 0;
+        for(var t : tile.isHost() ? hostCaptured : guestCaptured)
+            kinds |= 1 << table.kindOf(t);
+
+        for(int kind = 0; kinds != 0; kind++, kinds >>>= 1) {
+            if((kinds & 1) != 0)
+                buffer.add(Move.withSwap(move, kind));
+        }
+    }
 
-            if(tile.isCaptured())
-                continue;
+    @Override
+    public void makeTurn(int move) {
+        if(!(table.tileAt(Move.from(move)) instanceof GinsengTile tile))
+            throw new IllegalArgumentException("There's no tile to move in " + Move.toString(move));
+
+        GinsengTile swap = null;
+        if(Move.swapKind(move) >= 0) {
+            swap = getCapturedOfKind(tile.isHost(), Move.swapKind(move));
+            if(swap == null)
+                throw new IllegalArgumentException("There's no captured tile to swap in for " + Move.toString(move));
+        }
+
+        playTurn(tile, Move.to(move), Move.abilityTarget(move), swap, move);
+    }
+
+    /**
+     * Finds a captured tile of the given kind. Captured tiles of the same kind are interchangeable.
+     *
+     * @param host Whether to look among the host's captured tiles.
+     * @param kind The kind of the tile, see {@link Table#kindOf(Tile)}.
+     * @return A captured tile of the kind, or null if there's none.
+     */
+    public GinsengTile getCapturedOfKind(boolean host, int kind) {
+        for(var t : host ? hostCaptured : guestCaptured) {
+            if(table.kindOf(t) == kind)
+                return (GinsengTile) t;
+        }
+        return null;
+    }
+
+    /**
+     * Swaps a tile standing in a temple with one of its owner's captured tiles.
+     * The captured tile takes the place of the other one, which gets captured. Noted as the swap of the turn in progress.
+     *
+     * @param inTemple The tile in the temple.
+     * @param captured The captured tile to bring back.
+     * @throws IllegalArgumentException if the tiles don't belong to the same player or the second one is not captured.
+     */
+    public void swapFromTemple(GinsengTile inTemple, GinsengTile captured) {
+        if(!captured.isCaptured() || captured.isHost() != inTemple.isHost())
+            throw new IllegalArgumentException("Only a captured tile of the same player can be swapped in.");
+
+        setOffTableSquare(captured, inTemple.getSquare());
+        inTemple.capture();
+        captured.uncapture();
+        setTurnInProgress(Move.withSwap(getTurnInProgress(), table.kindOf(captured)));
+    }
+
+    /**
+     * Moves a tile into or out of its owner's captured tiles.
+     * Only updates the bookkeeping, the tile should be removed from or put on the table separately.
+     *
+     * @param tile The tile.
+     * @param captured Whether the tile is captured.
+     */
+    public void setCaptured(GinsengTile tile, boolean captured) {
+        record(captured ? OP_CAPTURED : OP_RELEASED, tile, 0, 0);
+        applyCaptured(tile, captured);
+    }
+
+    /**
+     * Helper method.
+     * Updates the captured flag of the tile and its owner's captured tiles.
+     *
+     * @param tile The tile.
+     * @param captured Whether the tile is captured.
+     */
+    private void applyCaptured(GinsengTile tile, boolean captured) {
+        tile.setCaptured(captured);
 
-            if(!tile.getValidMoves().isEmpty())
-                return false;
+        var pool = tile.isGuest() ? guestCaptured : hostCaptured;
+        if(captured)
+            pool.add(tile);
+        else
+            pool.remove(tile);
+    }
+
+    @Override
+    protected void revert(int op, Tile subject, int a, int b) {
+        switch(op) {
+            case OP_CAPTURED -> applyCaptured((GinsengTile) subject, false);
+            case OP_RELEASED -> applyCaptured((GinsengTile) subject, true);
+            default -> super.revert(op, subject, a, b);
         }
+    }
+
+    /**
+     * Gets the canonical key of the position, which also covers the captured tiles of both players, as they can be
+     * swapped back in. Captured tiles of the same kind are interchangeable, only their number counts.
+     *
+     * @return The 64-bit key of the position.
+     */
+    @Override
+    public long getPositionKey() {
+        return getKey() ^ getCapturedKey(true) ^ getCapturedKey(false);
+    }
+
+    /**
+     * Helper method.
+     * Hashes the captured tiles of a player, see {@link Zobrist#captured(int, boolean, int)}.
+     */
+    private long getCapturedKey(boolean host) {
+        if(capturedCounts == null)
+            capturedCounts = new int[Zobrist.MAX_KINDS];
+
+        var counts = capturedCounts;
+        Arrays.fill(counts, 0);
+        long key = 0;
+        for(var t : host ? hostCaptured : guestCaptured) {
+            int kind = table.kindOf(t);
+            if(counts[kind] < Zobrist.MAX_CAPTURED)
+                key ^= Zobrist.captured(kind, host, counts[kind]++);
+        }
+        return key;
+    }
+
+    @Override
+    protected long getVariantKey() {
+        return (bisonFlightMode ? Zobrist.variant(0) : 0) ^ (alternativeGinsengMode ? Zobrist.variant(1) : 0);
+    }
+
+    /**
+     * Checks whether a player has a tile that can move.
+     * Only the tiles near the squares changed since the last query are checked again, so asking after every turn is cheap.
+     *
+     * @param host true for the host, false for the guest.
+     * @return true if the player has at least one valid move, false otherwise.
+     */
+    public boolean hasValidMoves(boolean host) {
+        if(mobility == null)
+            mobility = new Mobility(this);
+
+        return mobility.canMove(host);
+    }
+
+    /**
+     * Checks whether a tile of the player standing on the square is protected by one of the player's Ginsengs,
+     * following the protection mode of the game.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is protected, false otherwise.
+     */
+    public boolean isGinsengProtected(int square, boolean host) {
+        if(protection == null)
+            protection = new ProtectionMap(this);
+
+        return protection.isProtected(square, host);
+    }
+
+    /**
+     * Checks whether a tile of the player standing on the square is trapped by an enemy Koi.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is trapped, false otherwise.
+     */
+    public boolean isKoiTrapped(int square, boolean host) {
+        return auras().isTrapped(square, host);
+    }
+
+    /**
+     * Checks whether a tile of the player standing on the square is boosted by a friendly Sky Bison.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is boosted, false otherwise.
+     */
+    public boolean isBisonBoosted(int square, boolean host) {
+        return auras().isBoosted(square, host);
+    }
+
+    /**
+     * Checks whether the abilities of a tile of the player standing on the square are blocked by an enemy Lion Turtle.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is blocked, false otherwise.
+     */
+    public boolean isTurtleBlocked(int square, boolean host) {
+        return auras().isBlocked(square, host);
+    }
+
+    /**
+     * Helper method.
+     * Gets the aura map, creating it on first use.
+     *
+     * @return The aura map.
+     */
+    private AuraMap auras() {
+        if(auras == null)
+            auras = new AuraMap(this);
+
+        return auras;
+    }
+
+    @Override
+    protected void squareChanged(Tile tile, int square) {
+        if(mobility != null)
+            mobility.squareChanged(square);
+        if(protection != null)
+            protection.squareChanged(square);
+        if(auras != null)
+            auras.tileChanged(tile);
+    }
+
+    @Override
+    public boolean checkForDraw() {
+        if(hasValidMoves(!this.isGuestTurn()))
+            return false;
 
         this.setStatus(GameStatus.DRAW);
         return true;
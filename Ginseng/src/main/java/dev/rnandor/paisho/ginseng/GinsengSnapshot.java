@@ -0,0 +1,115 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.TileRegistry;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * An immutable view of a GinsengGame at one of its versions, safe to read from any thread without locking.
+ * The thread changing the game takes snapshots with {@link GinsengGame#snapshot()}, the other threads read the last
+ * one through {@link GinsengGame#getPublishedSnapshot()}.
+ */
+@Getter
+public final class GinsengSnapshot {
+
+    private final long version;
+    private final GinsengState state;
+
+    @Getter(AccessLevel.NONE)
+    private final TileRegistry<GinsengTile> registry;
+
+    // the packed tile on each square, -1 for empty squares
+    @Getter(AccessLevel.NONE)
+    private final int[] board = new int[BoardGeometry.SQUARES];
+
+    @Getter(AccessLevel.NONE)
+    private final int[] captured = new int[2];
+
+    /**
+     * Constructs a GinsengSnapshot.
+     *
+     * @param state The state of the game.
+     * @param version The version of the game, see {@link PaiShoGame#getVersion()}.
+     * @param registry The tile registry of the game.
+     */
+    GinsengSnapshot(GinsengState state, long version, TileRegistry<GinsengTile> registry) {
+        this.version = version;
+        this.state = state;
+        this.registry = registry;
+
+        Arrays.fill(board, -1);
+        for(int i = 0; i < state.getTileCount(); i++) {
+            int tile = state.getTile(i);
+            if(GinsengState.isCaptured(tile))
+                captured[GinsengState.isHost(tile) ? 0 : 1]++;
+            else
+                board[GinsengState.square(tile)] = tile;
+        }
+    }
+
+    /**
+     * Gets the tile on a square.
+     *
+     * @param square The square.
+     * @return The packed tile, see {@link GinsengState}, or -1 if the square is empty.
+     * @throws IndexOutOfBoundsException if the square is out of bounds.
+     */
+    public int tileAt(int square) {
+        return board[square];
+    }
+
+    /**
+     * Checks whether a square is occupied.
+     *
+     * @param square The square.
+     * @return true if a tile stands on the square, false otherwise.
+     * @throws IndexOutOfBoundsException if the square is out of bounds.
+     */
+    public boolean isOccupied(int square) {
+        return board[square] >= 0;
+    }
+
+    /**
+     * Gets the registry code of the tile on a square.
+     *
+     * @param square The square.
+     * @return The code of the tile, or null if the square is empty.
+     * @throws IndexOutOfBoundsException if the square is out of bounds.
+     */
+    public String codeAt(int square) {
+        return board[square] < 0 ? null : registry.getCode(GinsengState.kind(board[square]));
+    }
+
+    /**
+     * Gets the number of captured tiles of a player.
+     *
+     * @param host true for the host, false for the guest.
+     * @return The number of captured tiles.
+     */
+    public int getCapturedCount(boolean host) {
+        return captured[host ? 0 : 1];
+    }
+
+    /**
+     * Checks if it's the host player's turn, see {@link PaiShoGame#isHostTurn()}.
+     *
+     * @return true if the game is running and the host is to move, false otherwise.
+     */
+    public boolean isHostTurn() {
+        return state.getStatus() == PaiShoGame.GameStatus.RUNNING && state.getTurn()%2 == 0;
+    }
+
+    /**
+     * Checks if it's the guest player's turn, see {@link PaiShoGame#isGuestTurn()}.
+     *
+     * @return true if the game is running and the guest is to move, false otherwise.
+     */
+    public boolean isGuestTurn() {
+        return state.getStatus() == PaiShoGame.GameStatus.RUNNING && state.getTurn()%2 == 1;
+    }
+}
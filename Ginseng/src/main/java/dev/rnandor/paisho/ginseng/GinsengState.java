@@ -0,0 +1,174 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.PaiShoGame;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * The complete state of a GinsengGame packed into an int per tile, independent of the tile objects.
+ * Cheap to take and to build a new game from, see {@link GinsengGame#fork()}, and immutable, so it can be shared
+ * between threads.
+ * <p>
+ * Every tile is packed as:
+ * <ul>
+ *     <li>9 bits: its square, the last one for captured tiles</li>
+ *     <li>8 bits: its kind, see {@link dev.rnandor.paisho.TileRegistry#getIndex(Class)}</li>
+ *     <li>1 bit: set for a tile of the host</li>
+ *     <li>1 bit: set for a captured tile</li>
+ * </ul>
+ * The tiles are sorted by their packed value, so equal games have equal states.
+ */
+@Getter
+public final class GinsengState {
+
+    private static final int SQUARE_MASK = (1 << 9) - 1;
+    private static final int KIND_SHIFT = 9;
+    private static final int KIND_MASK = (1 << 8) - 1;
+    private static final int HOST_BIT = 1 << 17;
+    private static final int CAPTURED_BIT = 1 << 18;
+
+    @Getter(AccessLevel.NONE)
+    private final int[] tiles;
+
+    private final int turn;
+    private final PaiShoGame.GameStatus status;
+    private final boolean bisonFlightMode;
+    private final boolean alternativeGinsengMode;
+
+    /**
+     * Constructs a GinsengState from its parts.
+     *
+     * @param tiles The packed tiles, see {@link #pack(int, int, boolean, boolean)}. The array is copied.
+     * @param turn The turn number, starting from 1.
+     * @param status The status of the game.
+     * @param bisonFlightMode Whether the Sky Bison grants flight.
+     * @param alternativeGinsengMode Whether the alternative Ginseng protection mode is enabled.
+     * @throws IllegalArgumentException if the turn number is less than 1.
+     */
+    public GinsengState(int[] tiles, int turn, PaiShoGame.GameStatus status, boolean bisonFlightMode, boolean alternativeGinsengMode) {
+        if(turn < 1)
+            throw new IllegalArgumentException("Turn numbers start from 1, got " + turn);
+
+        this.tiles = tiles.clone();
+        Arrays.sort(this.tiles);
+        this.turn = turn;
+        this.status = status;
+        this.bisonFlightMode = bisonFlightMode;
+        this.alternativeGinsengMode = alternativeGinsengMode;
+    }
+
+    /**
+     * Takes the state of a game. Turns that could still be unmade are part of the state, the undo history is not.
+     *
+     * @param game The game.
+     * @return The state of the game.
+     */
+    static GinsengState of(GinsengGame game) {
+        var registry = game.getRegistry();
+        var tiles = new int[game.getTiles().size()];
+        int i = 0;
+        for(var tile : game.getTiles())
+            tiles[i++] = pack(tile.getSquare(), registry.getIndex(tile.getClass()), tile.isHost(), tile.isCaptured());
+
+        return new GinsengState(tiles, game.getTurn(), game.getStatus(), game.isBisonFlightMode(), game.isAlternativeGinsengMode());
+    }
+
+    /**
+     * Packs a tile into an int.
+     *
+     * @param square The square of the tile.
+     * @param kind The kind of the tile.
+     * @param host true for a tile of the host, false for the guest.
+     * @param captured Whether the tile is captured.
+     * @return The packed tile.
+     * @throws IllegalArgumentException if the square or the kind doesn't fit.
+     */
+    public static int pack(int square, int kind, boolean host, boolean captured) {
+        if((square & ~SQUARE_MASK) != 0 || (kind & ~KIND_MASK) != 0)
+            throw new IllegalArgumentException("Cannot pack a tile of kind " + kind + " on square " + square);
+
+        return square | kind << KIND_SHIFT | (host ? HOST_BIT : 0) | (captured ? CAPTURED_BIT : 0);
+    }
+
+    /**
+     * Gets the number of tiles, including the captured ones.
+     *
+     * @return The number of tiles.
+     */
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    /**
+     * Gets a packed tile.
+     *
+     * @param i The index of the tile, in the range [0, getTileCount()).
+     * @return The packed tile.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int getTile(int i) {
+        return tiles[i];
+    }
+
+    /**
+     * Gets the square of a packed tile.
+     *
+     * @param tile The packed tile.
+     * @return The square of the tile, the last one if it's captured.
+     */
+    public static int square(int tile) {
+        return tile & SQUARE_MASK;
+    }
+
+    /**
+     * Gets the kind of a packed tile.
+     *
+     * @param tile The packed tile.
+     * @return The kind of the tile.
+     */
+    public static int kind(int tile) {
+        return (tile >>> KIND_SHIFT) & KIND_MASK;
+    }
+
+    /**
+     * Checks whether a packed tile belongs to the host.
+     *
+     * @param tile The packed tile.
+     * @return true for a tile of the host, false for the guest.
+     */
+    public static boolean isHost(int tile) {
+        return (tile & HOST_BIT) != 0;
+    }
+
+    /**
+     * Checks whether a packed tile is captured.
+     *
+     * @param tile The packed tile.
+     * @return true if the tile is captured, false otherwise.
+     */
+    public static boolean isCaptured(int tile) {
+        return (tile & CAPTURED_BIT) != 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof GinsengState other))
+            return false;
+
+        return turn == other.turn
+               && status == other.status
+               && bisonFlightMode == other.bisonFlightMode
+               && alternativeGinsengMode == other.alternativeGinsengMode
+               && Arrays.equals(tiles, other.tiles);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Arrays.hashCode(tiles);
+        hash = 31*hash + turn;
+        hash = 31*hash + status.ordinal();
+        return 31*hash + (bisonFlightMode ? 2 : 0) + (alternativeGinsengMode ? 1 : 0);
+    }
+}
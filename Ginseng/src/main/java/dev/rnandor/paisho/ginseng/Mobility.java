@@ -0,0 +1,168 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.BitBoard;
+import dev.rnandor.paisho.Table;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+
+import static dev.rnandor.paisho.BoardGeometry.*;
+
+/**
+ * Keeps track of which tiles on the table can move, so a player without legal moves is found without generating them.
+ * <p>
+ * Whether a tile can move depends on only a few squares around it, so after a turn only the tiles near the changed
+ * squares are checked again:
+ * <ul>
+ *     <li>the 5x5 area around the tile, which holds its first steps and jumps, and the Koi, Sky Bison and Lion Turtle
+ *     tiles that trap, boost or block it;</li>
+ *     <li>the rows and columns through its neighbours while it has an enemy neighbour, which decide whether the
+ *     neighbour is protected by a Ginseng;</li>
+ *     <li>the whole table while it can fly, or when capturing becomes allowed or forbidden.</li>
+ * </ul>
+ */
+final class Mobility {
+
+    private static final BitBoard[] AREAS = new BitBoard[SQUARES];
+    private static final BitBoard[] LINES = new BitBoard[SQUARES];
+
+    static {
+        for(int sq = 0; sq < SQUARES; sq++) {
+            int x = squareX(sq);
+            int y = squareY(sq);
+
+            var area = new BitBoard();
+            var lines = new BitBoard();
+            for(int i = -OFFSET; i <= OFFSET; i++) {
+                for(int j = -OFFSET; j <= OFFSET; j++) {
+                    int dx = Math.abs(i - x);
+                    int dy = Math.abs(j - y);
+
+                    if(dx <= 2 && dy <= 2)
+                        area.set(square(i, j));
+                    if(dx <= 1 || dy <= 1)
+                        lines.set(square(i, j));
+                }
+            }
+            AREAS[sq] = area.freeze();
+            LINES[sq] = lines.freeze();
+        }
+    }
+
+    private final GinsengGame game;
+    private final Table table;
+
+    // indexed by square, only meaningful on the occupied squares
+    private final BitBoard mobile = new BitBoard();
+    private final BitBoard capturing = new BitBoard();
+    private final BitBoard flying = new BitBoard();
+
+    private final BitBoard changed = new BitBoard();
+    private boolean capturingAllowed;
+    private boolean stale = true;
+
+    /**
+     * Constructs a Mobility of the game. Every tile is checked on the first query.
+     *
+     * @param game The game to keep track of.
+     */
+    Mobility(GinsengGame game) {
+        this.game = game;
+        this.table = game.getTable();
+    }
+
+    /**
+     * Notes a changed square, the tiles depending on it are checked on the next query.
+     *
+     * @param square The square.
+     */
+    void squareChanged(int square) {
+        changed.set(square);
+    }
+
+    /**
+     * Checks whether a player has a tile on the table that can move.
+     * Costs nothing more than a few bit operations when the table didn't change since the last query.
+     *
+     * @param host true for the host, false for the guest.
+     * @return true if the player has at least one valid move, false otherwise.
+     */
+    boolean canMove(boolean host) {
+        refresh();
+        return mobile.intersects(table.getOccupancy(host));
+    }
+
+    /**
+     * Helper method.
+     * Checks the tiles that depend on the squares changed since the last query.
+     */
+    private void refresh() {
+        if(!stale && changed.isEmpty())
+            return;
+
+        boolean allowed = game.isCapturingAllowed();
+        if(allowed != capturingAllowed) {
+            capturingAllowed = allowed;
+            stale = true;
+        }
+
+        refresh(table.getOccupancy(true), table.getOccupancy(false));
+        refresh(table.getOccupancy(false), table.getOccupancy(true));
+
+        changed.clear();
+        stale = false;
+    }
+
+    /**
+     * Helper method.
+     * Checks the tiles of one player that depend on the changed squares.
+     *
+     * @param own The squares of the player.
+     * @param enemies The squares of the other player.
+     */
+    private void refresh(BitBoard own, BitBoard enemies) {
+        for(int sq = own.nextSetBit(0); sq >= 0; sq = own.nextSetBit(sq+1)) {
+            if(stale
+               || flying.get(sq)
+               || AREAS[sq].intersects(changed)
+               || (capturing.get(sq) && LINES[sq].intersects(changed))) {
+                check(sq, enemies);
+            }
+        }
+    }
+
+    /**
+     * Helper method.
+     * Checks whether the tile on the square can move, and what it depends on.
+     *
+     * @param sq The square of the tile.
+     * @param enemies The squares of the other player.
+     */
+    private void check(int sq, BitBoard enemies) {
+        var tile = (GinsengTile) table.tileAt(sq);
+
+        boolean enemyNeighbour = false;
+        for(int d = UP; d <= RIGHT; d++) {
+            int next = neighbour(sq, d);
+            if(next >= 0 && enemies.get(next))
+                enemyNeighbour = true;
+        }
+
+        assign(mobile, sq, tile.hasValidMoves());
+        assign(capturing, sq, enemyNeighbour);
+        assign(flying, sq, game.isBisonFlightMode() && tile.isBisonBoosted());
+    }
+
+    /**
+     * Helper method.
+     * Sets or clears a square of a BitBoard.
+     *
+     * @param board The BitBoard.
+     * @param sq The square.
+     * @param value Whether the square should be set.
+     */
+    private static void assign(BitBoard board, int sq, boolean value) {
+        if(value)
+            board.set(sq);
+        else
+            board.clear(sq);
+    }
+}
@@ -0,0 +1,212 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
+import lombok.Getter;
+
+/**
+ * Counts the leaves of the game tree to a fixed depth, the classic way to validate a move generator.
+ * Every complete turn from {@link GinsengGame#generateLegalTurns(MoveBuffer)} is a node, the game is walked with
+ * make/unmake, so the counts double as a measure of the speed of the rules engine.
+ * <p>
+ * Run it with the depth as the only argument to print the counts of every rule variant.
+ */
+public final class Perft {
+
+    private final GinsengGame game;
+    private MoveBuffer[] buffers = new MoveBuffer[0];
+
+    /**
+     * Constructs a Perft walking the given game. The game is left unchanged after every count.
+     *
+     * @param game The game to start from.
+     */
+    public Perft(GinsengGame game) {
+        this.game = game;
+    }
+
+    /**
+     * Counts the leaves at the given depth.
+     *
+     * @param depth The depth, in turns.
+     * @return The number of leaves.
+     */
+    public long count(int depth) {
+        ensureBuffers(depth);
+        return count(depth, 0);
+    }
+
+    /**
+     * Counts the leaves at the given depth, with a breakdown of the last turns that lead to them.
+     *
+     * @param depth The depth, in turns.
+     * @return The counts of the depth.
+     */
+    public Result countDetailed(int depth) {
+        ensureBuffers(depth);
+
+        var result = new Result(depth);
+        long start = System.nanoTime();
+        countDetailed(depth, 0, result);
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Counts the leaves at the given depth below every turn of the current position, to narrow down a mismatch.
+     *
+     * @param depth The depth, in turns, at least 1.
+     * @return The turns followed by their leaf counts, one per line.
+     */
+    public String divide(int depth) {
+        if(depth < 1)
+            throw new IllegalArgumentException("Depth must be at least 1.");
+
+        ensureBuffers(depth);
+        var turns = buffers[0];
+        turns.clear();
+        game.generateLegalTurns(turns);
+
+        var br = new StringBuilder();
+        for(int i = 0; i < turns.size(); i++) {
+            game.makeTurn(turns.get(i));
+            br.append(Move.toString(turns.get(i))).append(": ").append(count(depth-1, 1)).append(System.lineSeparator());
+            game.unmakeTurn();
+        }
+        return br.toString();
+    }
+
+    /**
+     * Helper method.
+     * Counts the leaves below the current position.
+     *
+     * @param depth The remaining depth.
+     * @param ply The distance from the root, selects the buffer.
+     * @return The number of leaves.
+     */
+    private long count(int depth, int ply) {
+        if(depth == 0)
+            return 1;
+
+        var turns = buffers[ply];
+        turns.clear();
+        int n = game.generateLegalTurns(turns);
+        if(depth == 1)
+            return n;
+
+        long nodes = 0;
+        for(int i = 0; i < n; i++) {
+            game.makeTurn(turns.get(i));
+            nodes += count(depth-1, ply+1);
+            game.unmakeTurn();
+        }
+        return nodes;
+    }
+
+    /**
+     * Helper method.
+     * Counts the leaves below the current position, classifying the turns leading to them.
+     *
+     * @param depth The remaining depth, at least 1.
+     * @param ply The distance from the root, selects the buffer.
+     * @param result The counts to add to.
+     */
+    private void countDetailed(int depth, int ply, Result result) {
+        var turns = buffers[ply];
+        turns.clear();
+        int n = game.generateLegalTurns(turns);
+
+        for(int i = 0; i < n; i++) {
+            int turn = turns.get(i);
+            game.makeTurn(turn);
+
+            if(depth == 1) {
+                result.nodes++;
+                if(Move.isCapture(turn))
+                    result.captures++;
+                if(Move.abilityTarget(turn) >= 0)
+                    result.abilities++;
+                if(Move.swapKind(turn) >= 0)
+                    result.swaps++;
+                if(game.isGameOver())
+                    result.lotusWins++;
+            }
+            else {
+                countDetailed(depth-1, ply+1, result);
+            }
+
+            game.unmakeTurn();
+        }
+    }
+
+    /**
+     * Helper method.
+     * Makes sure there's a buffer for every ply up to the given depth.
+     *
+     * @param depth The depth.
+     */
+    private void ensureBuffers(int depth) {
+        if(buffers.length >= depth)
+            return;
+
+        var grown = new MoveBuffer[depth];
+        System.arraycopy(buffers, 0, grown, 0, buffers.length);
+        for(int i = buffers.length; i < depth; i++)
+            grown[i] = new MoveBuffer();
+        buffers = grown;
+    }
+
+    /**
+     * The leaf counts of one depth.
+     */
+    @Getter
+    public static final class Result {
+        private final int depth;
+        private long nodes;
+        private long captures;
+        private long abilities;
+        private long swaps;
+        private long lotusWins;
+        private long nanos;
+
+        private Result(int depth) {
+            this.depth = depth;
+        }
+
+        /**
+         * Gets the speed of the count.
+         *
+         * @return The number of leaves visited per second.
+         */
+        public double getNodesPerSecond() {
+            return nanos == 0 ? 0 : nodes * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%5d %14d %12d %12d %10d %10d %14.0f",
+                    depth, nodes, captures, abilities, swaps, lotusWins, getNodesPerSecond());
+        }
+    }
+
+    /**
+     * Prints the leaf counts of every rule variant, up to the given depth.
+     *
+     * @param args The maximum depth, 3 by default.
+     */
+    public static void main(String[] args) {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+
+        for(int flags = 0; flags < 4; flags++) {
+            boolean flight = (flags & 1) != 0;
+            boolean alternative = (flags & 2) != 0;
+
+            var perft = new Perft(new GinsengGame(flight, alternative));
+            System.out.printf("bison flight: %b, alternative ginseng protection: %b%n", flight, alternative);
+            System.out.printf("%5s %14s %12s %12s %10s %10s %14s%n", "depth", "nodes", "captures", "abilities", "swaps", "wins", "nodes/s");
+            for(int depth = 1; depth <= maxDepth; depth++)
+                System.out.println(perft.countDetailed(depth));
+            System.out.println();
+        }
+    }
+}
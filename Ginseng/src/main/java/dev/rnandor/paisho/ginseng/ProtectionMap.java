@@ -0,0 +1,161 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.BitBoard;
+import dev.rnandor.paisho.Table;
+import dev.rnandor.paisho.ginseng.tiles.Ginseng;
+
+import static dev.rnandor.paisho.BoardGeometry.*;
+
+/**
+ * Keeps track of the squares protected by the Ginsengs of each player, so checking whether a tile can be captured
+ * is a single bit test.
+ * <p>
+ * With line of sight protection a Ginseng protects the squares it sees along its row and column, up to and including
+ * the first tile in the way. Tiles only look as far as x = 0 to their left and y = 0 below them, so a Ginseng left of
+ * x = 0 doesn't protect the squares to its right, and one below y = 0 doesn't protect the squares above it.
+ * With proximity protection a Ginseng protects the squares at most 5 steps away along its row and column,
+ * and nothing blocks it.
+ * <p>
+ * Either way, the protection along a row only changes when a square of that row changes, and the same goes for
+ * columns, so only the Ginsengs of the changed rows and columns are walked again.
+ */
+final class ProtectionMap {
+
+    private static final int ALL_LINES = (1 << SIZE) - 1;
+    private static final int REACH = 5;
+
+    private static final BitBoard[] ROWS = new BitBoard[SIZE];
+    private static final BitBoard[] COLUMNS = new BitBoard[SIZE];
+
+    static {
+        for(int i = 0; i < SIZE; i++) {
+            ROWS[i] = new BitBoard();
+            COLUMNS[i] = new BitBoard();
+        }
+        for(int sq = 0; sq < SQUARES; sq++) {
+            ROWS[squareY(sq) + OFFSET].set(sq);
+            COLUMNS[squareX(sq) + OFFSET].set(sq);
+        }
+        for(int i = 0; i < SIZE; i++) {
+            ROWS[i] = ROWS[i].freeze();
+            COLUMNS[i] = COLUMNS[i].freeze();
+        }
+    }
+
+    private final Table table;
+    private final int ginsengKind;
+    private final boolean proximity;
+
+    // indexed by player, 0 for the host and 1 for the guest
+    private final BitBoard[] alongRows = { new BitBoard(), new BitBoard() };
+    private final BitBoard[] alongColumns = { new BitBoard(), new BitBoard() };
+    private final BitBoard[] protectedSquares = { new BitBoard(), new BitBoard() };
+
+    private int dirtyRows = ALL_LINES;
+    private int dirtyColumns = ALL_LINES;
+
+    /**
+     * Constructs a ProtectionMap of the game. Every Ginseng is walked on the first query.
+     *
+     * @param game The game to keep track of.
+     */
+    ProtectionMap(GinsengGame game) {
+        this.table = game.getTable();
+        this.ginsengKind = game.getRegistry().getIndex(Ginseng.class);
+        this.proximity = game.isAlternativeGinsengMode();
+    }
+
+    /**
+     * Notes a changed square, its row and column are walked again on the next query.
+     *
+     * @param square The square.
+     */
+    void squareChanged(int square) {
+        dirtyRows |= 1 << (squareY(square) + OFFSET);
+        dirtyColumns |= 1 << (squareX(square) + OFFSET);
+    }
+
+    /**
+     * Checks whether a tile of the player standing on the square is protected by one of the player's Ginsengs.
+     *
+     * @param square The square.
+     * @param host true for the host, false for the guest.
+     * @return true if the square is protected, false otherwise.
+     */
+    boolean isProtected(int square, boolean host) {
+        if((dirtyRows | dirtyColumns) != 0)
+            refresh();
+
+        return protectedSquares[host ? 0 : 1].get(square);
+    }
+
+    /**
+     * Helper method.
+     * Walks the Ginsengs of the changed rows and columns again.
+     */
+    private void refresh() {
+        refresh(true, alongRows[0], alongColumns[0], protectedSquares[0]);
+        refresh(false, alongRows[1], alongColumns[1], protectedSquares[1]);
+
+        dirtyRows = 0;
+        dirtyColumns = 0;
+    }
+
+    /**
+     * Helper method.
+     * Walks the Ginsengs of one player on the changed rows and columns again.
+     *
+     * @param host true for the host, false for the guest.
+     * @param rows The squares protected along rows.
+     * @param columns The squares protected along columns.
+     * @param combined The squares protected either way.
+     */
+    private void refresh(boolean host, BitBoard rows, BitBoard columns, BitBoard combined) {
+        for(int i = 0; i < SIZE; i++) {
+            if((dirtyRows & (1 << i)) != 0)
+                rows.andNot(ROWS[i]);
+            if((dirtyColumns & (1 << i)) != 0)
+                columns.andNot(COLUMNS[i]);
+        }
+
+        var ginsengs = table.getOccupancy(host, ginsengKind);
+        for(int sq = ginsengs.nextSetBit(0); sq >= 0; sq = ginsengs.nextSetBit(sq+1)) {
+            int x = squareX(sq);
+            int y = squareY(sq);
+
+            if((dirtyRows & (1 << (y + OFFSET))) != 0) {
+                walk(sq, LEFT, rows);
+                if(proximity || x >= 0)
+                    walk(sq, RIGHT, rows);
+            }
+
+            if((dirtyColumns & (1 << (x + OFFSET))) != 0) {
+                walk(sq, DOWN, columns);
+                if(proximity || y >= 0)
+                    walk(sq, UP, columns);
+            }
+        }
+
+        combined.copyFrom(rows);
+        combined.or(columns);
+    }
+
+    /**
+     * Helper method.
+     * Marks the squares a Ginseng protects in one direction.
+     *
+     * @param ginseng The square of the Ginseng.
+     * @param direction One of UP, DOWN, LEFT and RIGHT.
+     * @param into The BitBoard to mark the squares in.
+     */
+    private void walk(int ginseng, int direction, BitBoard into) {
+        int sq = neighbour(ginseng, direction);
+        for(int steps = 1; sq >= 0; steps++) {
+            into.set(sq);
+            if(proximity ? steps == REACH : table.isOccupied(sq))
+                return;
+
+            sq = neighbour(sq, direction);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import dev.rnandor.paisho.io.GameManager;
+import dev.rnandor.paisho.io.MoveJournal;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays recorded games through the current rules, to find the games a change of the rules affects.
+ * Every turn of a {@link MoveJournal} must be one of the legal turns of its position, and every snapshot of the
+ * journal must match the position the replay reached. The first divergence of a journal is reported, the rest of
+ * it isn't replayed.
+ * <p>
+ * Journals are validated in parallel on a work-stealing pool. Each worker streams one journal at a time, so the
+ * memory needed doesn't grow with the number or the length of the journals, only the reported divergences are kept,
+ * up to a limit.
+ * <p>
+ * Run it with the journals or the directories holding them as arguments.
+ */
+public final class ReplayValidator {
+
+    private static final String EXTENSION = ".journal";
+
+    private final GameManager<GinsengTile, GinsengGame> manager;
+    private final ForkJoinPool pool;
+    private final int maxDivergences;
+
+    /**
+     * Constructs a ReplayValidator.
+     *
+     * @param manager The manager reading the snapshots of the journals.
+     * @param pool The pool to validate on.
+     * @param maxDivergences The number of divergences to keep, the others are only counted.
+     */
+    public ReplayValidator(GameManager<GinsengTile, GinsengGame> manager, ForkJoinPool pool, int maxDivergences) {
+        this.manager = manager;
+        this.pool = pool;
+        this.maxDivergences = maxDivergences;
+    }
+
+    /**
+     * Validates journals in parallel.
+     *
+     * @param journals The paths of the journals.
+     * @return The report of the validation.
+     */
+    public Report validate(List<Path> journals) {
+        var report = new Report(maxDivergences);
+        long start = System.nanoTime();
+        pool.invoke(new Batch(journals.toArray(Path[]::new), 0, journals.size(), report));
+        report.nanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Validates every journal in a directory and its subdirectories, see {@link #validate(List)}.
+     *
+     * @param directory The directory.
+     * @return The report of the validation.
+     * @throws IOException If the directory can't be walked.
+     */
+    public Report validateDirectory(Path directory) throws IOException {
+        return validate(findJournals(List.of(directory)));
+    }
+
+    /**
+     * Validates one journal on the calling thread.
+     *
+     * @param journal The path of the journal.
+     * @return The first divergence of the journal, or null if it replays the same.
+     */
+    public Divergence validate(Path journal) {
+        var replay = new Replay(journal);
+        try {
+            MoveJournal.scan(journal, manager, replay);
+        } catch (IOException | UncheckedIOException e) {
+            return new Divergence(journal, replay.turns, Divergence.Kind.UNREADABLE, e.getMessage());
+        } catch (RuntimeException e) {
+            // a broken rule that throws is as much a divergence as one that allows a different turn
+            return new Divergence(journal, replay.turns, Divergence.Kind.FAILED, e.toString());
+        }
+        return replay.divergence;
+    }
+
+    /**
+     * Helper method.
+     * Lists the journals among paths, directories are searched for journals recursively.
+     */
+    private static List<Path> findJournals(List<Path> paths) throws IOException {
+        var journals = new ArrayList<Path>();
+        for(var path : paths) {
+            if(Files.isDirectory(path)) {
+                try(var files = Files.walk(path)) {
+                    files.filter(ReplayValidator::isJournal).forEach(journals::add);
+                }
+            } else {
+                journals.add(path);
+            }
+        }
+        return journals;
+    }
+
+    private static boolean isJournal(Path path) {
+        return Files.isRegularFile(path) && path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * Replays one journal, turn by turn.
+     */
+    private final class Replay implements MoveJournal.Visitor<GinsengGame> {
+        private final Path journal;
+        private final MoveBuffer legal = new MoveBuffer();
+        private GinsengGame game;
+        private int turns;
+        private Divergence divergence;
+
+        private Replay(Path journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        public boolean turn(int index, int move) {
+            legal.clear();
+            game.generateLegalTurns(legal);
+            if(!legal.contains(move)) {
+                divergence = new Divergence(journal, index, Divergence.Kind.ILLEGAL_TURN,
+                        Move.toString(move) + " is not a legal turn on turn " + game.getTurn());
+                return false;
+            }
+
+            game.makeTurn(move);
+            game.commitTurns();
+            turns = index + 1;
+            return true;
+        }
+
+        @Override
+        public boolean snapshot(int turns, GinsengGame recorded) {
+            if(game == null) {
+                game = recorded;
+                return true;
+            }
+
+            if(!recorded.getState().equals(game.getState())) {
+                divergence = new Divergence(journal, turns, Divergence.Kind.POSITION,
+                        "the replay differs from the snapshot after " + turns + " turns");
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Validates a range of journals, splitting it while it's large so idle workers can steal the halves.
+     */
+    private final class Batch extends RecursiveAction {
+        private static final int THRESHOLD = 4;
+
+        private final Path[] journals;
+        private final int from;
+        private final int to;
+        private final Report report;
+
+        private Batch(Path[] journals, int from, int to, Report report) {
+            this.journals = journals;
+            this.from = from;
+            this.to = to;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(journals, from, mid, report), new Batch(journals, mid, to, report));
+                return;
+            }
+
+            for(int i = from; i < to; i++) {
+                var divergence = validate(journals[i]);
+                report.add(divergence);
+            }
+        }
+    }
+
+    /**
+     * A journal that doesn't replay the same under the current rules.
+     *
+     * @param journal The path of the journal.
+     * @param turn The index of the first diverging turn, or the number of turns before the diverging snapshot.
+     * @param kind The kind of the divergence.
+     * @param message The description of the divergence.
+     */
+    public record Divergence(Path journal, int turn, Kind kind, String message) {
+
+        /**
+         * The kinds of divergences.
+         */
+        public enum Kind {
+            /** A turn of the journal is not legal anymore. */
+            ILLEGAL_TURN,
+            /** The replay reached a different position than the one recorded. */
+            POSITION,
+            /** The rules threw an exception during the replay. */
+            FAILED,
+            /** The journal can't be read. */
+            UNREADABLE
+        }
+
+        @Override
+        public String toString() {
+            return journal + " turn " + turn + ": " + kind + ", " + message;
+        }
+    }
+
+    /**
+     * The result of a validation, filled in by the workers concurrently.
+     */
+    public static final class Report {
+        private final int maxDivergences;
+        private final AtomicInteger journals = new AtomicInteger();
+        private final AtomicLong divergenceCount = new AtomicLong();
+        private final List<Divergence> divergences = Collections.synchronizedList(new ArrayList<>());
+
+        @Getter
+        private long nanos;
+
+        private Report(int maxDivergences) {
+            this.maxDivergences = maxDivergences;
+        }
+
+        private void add(Divergence divergence) {
+            journals.incrementAndGet();
+            if(divergence == null)
+                return;
+
+            if(divergenceCount.incrementAndGet() <= maxDivergences)
+                divergences.add(divergence);
+        }
+
+        /**
+         * Gets the number of validated journals.
+         *
+         * @return The number of journals.
+         */
+        public int getJournalCount() {
+            return journals.get();
+        }
+
+        /**
+         * Gets the number of diverging journals, including the ones beyond the limit of kept divergences.
+         *
+         * @return The number of diverging journals.
+         */
+        public long getDivergenceCount() {
+            return divergenceCount.get();
+        }
+
+        /**
+         * Gets the kept divergences, ordered by journal.
+         *
+         * @return The divergences.
+         */
+        public List<Divergence> getDivergences() {
+            synchronized(divergences) {
+                return divergences.stream().sorted((a, b) -> a.journal().compareTo(b.journal())).toList();
+            }
+        }
+    }
+
+    /**
+     * Validates the journals given as arguments, directories are searched for journals recursively.
+     * Exits with status 1 if a journal diverges.
+     *
+     * @param args The journals and directories.
+     * @throws IOException If a directory can't be walked.
+     */
+    public static void main(String[] args) throws IOException {
+        var journals = findJournals(Arrays.stream(args).map(Path::of).toList());
+        var validator = new ReplayValidator(new GameManager<>(new GinsengCodec()), ForkJoinPool.commonPool(), 1000);
+        var report = validator.validate(journals);
+
+        report.getDivergences().forEach(System.out::println);
+        System.out.printf("%d journals, %d diverging, %.1f s%n",
+                report.getJournalCount(), report.getDivergenceCount(), report.getNanos() / 1e9);
+        if(report.getDivergenceCount() > 0)
+            System.exit(1);
+    }
+}
@@ -1,5 +1,6 @@
 package dev.rnandor.paisho.ginseng.tiles;
 
+import dev.rnandor.paisho.BoardGeometry;
 import dev.rnandor.paisho.Position;
 import dev.rnandor.paisho.Table;
 import dev.rnandor.paisho.TileEntry;
@@ -24,42 +25,66 @@ public class Badgermole extends GinsengTile {
         if(!this.canUseAbility())
             return Collections.emptyList();
 
-        var affected = new ArrayList<Position>();
-        var pos = getPosition();
+        var squares = new int[8];
+        int count = getAbilityTargets(squares);
 
-        for(var tile : getTilesInSurroundings()) {
-            if(canFlip(tile.getPosition()))
-                affected.add(tile.getPosition());
-        }
+        var affected = new ArrayList<Position>(count);
+        for(int i = 0; i < count; i++)
+            affected.add(new Position(BoardGeometry.squareX(squares[i]), BoardGeometry.squareY(squares[i])));
 
         return affected;
     }
 
+    @Override
+    public int getAbilityTargets(int[] squares) {
+        if(!this.canUseAbility())
+            return 0;
+
+        int count = 0;
+        var area = BoardGeometry.surroundings(getSquare());
+        for(int sq = area.nextSetBit(0); sq >= 0; sq = area.nextSetBit(sq+1)) {
+            if(canFlip(sq))
+                squares[count++] = sq;
+        }
+
+        return count;
+    }
+
     /**
-     * Checks whether the badgermole can flip a tile at the target position.
+     * Checks whether the badgermole can flip a tile at the target square.
      *
-     * @param target The target position.
+     * @param target The target square.
      * @return True if the badgermole can flip the tile, false otherwise.
      */
-    private boolean canFlip(Position target) {
-        var pos = getPosition();
-        var after = new Position(target.getX() + (pos.getX()-target.getX())*2, target.getY() + (pos.getY()-target.getY())*2);
+    private boolean canFlip(int target) {
+        if(!table.isValidSquare(target))
+            return false;
 
-        if(!table.isValidPosition(target) || !table.isValidPosition(after))
+        int after = getSquareAfter(target);
+        if(after < 0)
             return false;
 
-        return table.getTile(target).isPresent() && table.getTile(after).isEmpty();
+        return table.isOccupied(target) && !table.isOccupied(after);
+    }
+
+    /**
+     * Helper method.
+     * Gets the square the target tile lands on when the ability is used on it.
+     *
+     * @param target The target square, not checked.
+     * @return The landing square, or -1 if it's outside the table.
+     */
+    private int getSquareAfter(int target) {
+        int tx = BoardGeometry.squareX(target);
+        int ty = BoardGeometry.squareY(target);
+        return BoardGeometry.toSquare(2*getX() - tx, 2*getY() - ty);
     }
 
     @Override
-    public void useAbility(Position target) {
+    public void useAbility(int target) {
         if(!this.canUseAbility() || !canFlip(target))
             return;
 
-        var pos = getPosition();
-
-        var after = new Position(target.getX() + (pos.getX()-target.getX())*2, target.getY() + (pos.getY()-target.getY())*2);
-
-        table.move(table.getTile(target).get(), after);
+        table.move(target, getSquareAfter(target));
     }
 }
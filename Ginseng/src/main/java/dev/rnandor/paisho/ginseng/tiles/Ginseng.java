@@ -1,12 +1,8 @@
 package dev.rnandor.paisho.ginseng.tiles;
 
-import dev.rnandor.paisho.Position;
 import dev.rnandor.paisho.Table;
 import dev.rnandor.paisho.TileEntry;
 
-import java.util.Collections;
-import java.util.List;
-
 @TileEntry(value = "gs")
 public class Ginseng extends GinsengTile {
     public Ginseng(boolean host, Table table, int locX, int locY) {
@@ -14,10 +10,18 @@ public class Ginseng extends GinsengTile {
     }
 
     @Override
-    public List<Position> getValidMoves() {
+    public int getValidMoves(int[] squares) {
+        if(this.isCaptured())
+            return 0;
+
+        return this.getBasicMoves(false, false, squares);
+    }
+
+    @Override
+    public boolean hasValidMoves() {
         if(this.isCaptured())
-            return Collections.emptyList();
+            return false;
 
-        return this.getBasicMoves(false, false);
+        return this.hasBasicMoves(false);
     }
 }
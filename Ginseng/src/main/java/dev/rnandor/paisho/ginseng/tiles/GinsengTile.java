@@ -1,5 +1,8 @@
 package dev.rnandor.paisho.ginseng.tiles;
 
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
 import dev.rnandor.paisho.Position;
 import dev.rnandor.paisho.Table;
 import dev.rnandor.paisho.Tile;
@@ -9,6 +12,8 @@ import lombok.Setter;
 
 import java.util.*;
 
+import static dev.rnandor.paisho.BoardGeometry.*;
+
 public abstract class GinsengTile extends Tile {
 
     @Getter @Setter
@@ -36,15 +41,73 @@ public abstract class GinsengTile extends Tile {
 
     @Override
     public final boolean isValidMove(int x, int y) {
-        return getValidMoves().stream().anyMatch(pos -> pos.getX() == x && pos.getY() == y);
+        int sq = BoardGeometry.toSquare(x, y);
+        return sq >= 0 && isValidMove(sq);
+    }
+
+    /**
+     * Checks if the tile can move to the specified square.
+     *
+     * @param square The target square to check.
+     * @return true if the tile can move to the specified square, false otherwise.
+     */
+    public final boolean isValidMove(int square) {
+        var moves = MoveScratch.get().moves;
+        int count = getValidMoves(moves);
+        for(int i = 0; i < count; i++) {
+            if(moves[i] == square)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public final List<Position> getValidMoves() {
+        var moves = MoveScratch.get().moves;
+        int count = getValidMoves(moves);
+
+        var positions = new ArrayList<Position>(count);
+        for(int i = 0; i < count; i++)
+            positions.add(new Position(squareX(moves[i]), squareY(moves[i])));
+        return positions;
+    }
+
+    /**
+     * Appends the valid moves of the tile to the buffer, encoded as plain moves without follow-ups.
+     *
+     * @param buffer The buffer to append to.
+     * @return The number of appended moves.
+     */
+    public final int generateMoves(MoveBuffer buffer) {
+        var squares = MoveScratch.get().moves;
+        int count = getValidMoves(squares);
+
+        int from = getSquare();
+        for(int i = 0; i < count; i++)
+            buffer.add(Move.of(from, squares[i], table.isOccupied(squares[i])));
+
+        return count;
+    }
+
+    /**
+     * Checks whether the tile has at least one valid move, without generating them.
+     * Should be overridden together with {@link #getValidMoves(int[])} when the moves follow other rules.
+     *
+     * @return true if the tile can move, false otherwise.
+     */
+    public boolean hasValidMoves() {
+        if(this.isCaptured())
+            return false;
+
+        return hasBasicMoves(true);
     }
 
     @Override
-    public List<Position> getValidMoves() {
+    public int getValidMoves(int[] squares) {
         if(this.isCaptured())
-            return Collections.emptyList();
+            return 0;
 
-        return getBasicMoves(true, false);
+        return getBasicMoves(true, false, squares);
     }
 
     /**
@@ -52,9 +115,10 @@ public abstract class GinsengTile extends Tile {
      *
      * @param canCapture Whether capturing is allowed.
      * @param canFly Whether the tile can fly.
-     * @return A list of valid positions the tile can move to.
+     * @param squares The array to write the target squares into.
+     * @return The number of target squares written.
      */
-    protected final List<Position> getBasicMoves(boolean canCapture, boolean canFly) {
+    protected final int getBasicMoves(boolean canCapture, boolean canFly, int[] squares) {
 
         // flying = rhombus pattern
         // not flying = BFS
@@ -63,9 +127,38 @@ public abstract class GinsengTile extends Tile {
         boolean flying = game.isBisonFlightMode() || canFly;
 
         if(bisonBoosted && flying)
-            return getMovesByRhombus(radius, canCapture);
+            return getMovesByRhombus(radius, canCapture, squares);
         else
-            return getMovesByBFS(radius, canCapture);
+            return getMovesByBFS(radius, canCapture, squares);
+    }
+
+    /**
+     * Checks whether the tile has at least one basic move, see {@link #getBasicMoves(boolean, boolean, int[])}.
+     * Every move found by the BFS starts with a step to a neighbour, so only the neighbours are checked.
+     *
+     * @param canCapture Whether capturing is allowed.
+     * @return true if the tile can move, false otherwise.
+     */
+    protected final boolean hasBasicMoves(boolean canCapture) {
+        if(game.isBisonFlightMode() && isBisonBoosted())
+            return getMovesByRhombus(6, canCapture, MoveScratch.get().moves) > 0;
+
+        return canStepToNeighbour(canCapture);
+    }
+
+    /**
+     * Checks whether the tile can move to at least one of its neighbours.
+     *
+     * @param canCapture Whether capturing is allowed.
+     * @return true if a neighbour can be moved to, false otherwise.
+     */
+    protected final boolean canStepToNeighbour(boolean canCapture) {
+        int center = getSquare();
+        for(int d = UP; d <= RIGHT; d++) {
+            if(canMoveThere(neighbour(center, d), canCapture))
+                return true;
+        }
+        return false;
     }
 
     /**
@@ -73,29 +166,31 @@ public abstract class GinsengTile extends Tile {
      *
      * @param radius The movement radius.
      * @param withCaptures Whether capturing is allowed.
-     * @return A list of valid positions the tile can move to.
+     * @param squares The array to write the target squares into.
+     * @return The number of target squares written.
      */
-    private List<Position> getMovesByRhombus(int radius, boolean withCaptures) {
-        var center = this.getPosition();
-        var moves = new ArrayList<Position>();
+    private int getMovesByRhombus(int radius, boolean withCaptures, int[] squares) {
+        int cx = getX();
+        int cy = getY();
+        int count = 0;
 
-        for(int i = center.getX()-radius; i <= center.getX()+radius; i++) {
-            for(int j = center.getY()-radius; j <= center.getY()+radius; j++) {
+        for(int i = cx-radius; i <= cx+radius; i++) {
+            for(int j = cy-radius; j <= cy+radius; j++) {
 
                 // skip self
-                if(i == center.getX() && j == center.getY())
+                if(i == cx && j == cy)
                     continue;
 
-                var ax = Math.abs(center.getX() - i);
-                var ay = Math.abs(center.getY() - j);
+                var ax = Math.abs(cx - i);
+                var ay = Math.abs(cy - j);
 
-                if(ax+ay <= radius && canMoveThere(i, j, withCaptures)) {
-                    moves.add(new Position(i, j));
+                if(ax+ay <= radius && canMoveThere(BoardGeometry.toSquare(i, j), withCaptures)) {
+                    squares[count++] = BoardGeometry.square(i, j);
                 }
             }
         }
 
-        return moves;
+        return count;
     }
 
     /**
@@ -103,88 +198,74 @@ public abstract class GinsengTile extends Tile {
      *
      * @param radius The movement radius.
      * @param withCaptures Whether capturing is allowed.
-     * @return A list of valid positions the tile can move to.
+     * @param squares The array to write the target squares into.
+     * @return The number of target squares written.
      */
-    private List<Position> getMovesByBFS(int radius, boolean withCaptures) {
-        var dist = new int[17][17];
-        for(var i = 0; i < dist.length; i++) {
-            for(int j = 0; j < dist.length; j++) {
-                dist[i][j] = Integer.MAX_VALUE;
-            }
-        }
-
-        var center = this.getPosition();
-        var centerNormalised = table.fromGameCoords(center.getX(), center.getY());
-        dist[centerNormalised[0]][centerNormalised[1]] = 0;
-
-        Queue<Position> queue = new LinkedList<>();
-        queue.add(center);
-
-        var moves = new ArrayList<Position>();
+    private int getMovesByBFS(int radius, boolean withCaptures, int[] squares) {
+        var scratch = MoveScratch.get();
+        scratch.reset();
+
+        var queue = scratch.queue;
+        var dist = scratch.dist;
+        int head = 0;
+        int tail = 0;
+        int count = 0;
+
+        int center = getSquare();
+        scratch.visit(center);
+        dist[center] = 0;
+        queue[tail++] = center;
+
+        while(head < tail) {
+            int curr = queue[head++];
+
+            for(int d = UP; d <= RIGHT; d++) {
+                int next = neighbour(curr, d);
+                if(next < 0 || scratch.isVisited(next))
+                    continue;
 
-        while(!queue.isEmpty()) {
-            var curr = queue.poll();
+                if(!canMoveThere(next, withCaptures))
+                    continue;
 
-            var up = new Position(curr.getX(), curr.getY()+1);
-            var down = new Position(curr.getX(), curr.getY()-1);
-            var left = new Position(curr.getX()-1, curr.getY());
-            var right = new Position(curr.getX()+1, curr.getY());
+                scratch.visit(next);
+                dist[next] = dist[curr] + 1;
 
-            addIfValid(curr, up, queue, withCaptures, dist, radius, moves);
-            addIfValid(curr, down, queue, withCaptures, dist, radius, moves);
-            addIfValid(curr, left, queue, withCaptures, dist, radius, moves);
-            addIfValid(curr, right, queue, withCaptures, dist, radius, moves);
+                if(dist[next] <= radius) {
+                    squares[count++] = next;
+                    if(!table.isOccupied(next))
+                        queue[tail++] = next;
+                }
+            }
         }
 
-        return moves;
+        return count;
     }
 
     /**
-     * Helper method.
-     * Adds the next position to the queue and moves list if it is valid.
+     * Checks whether the tile can move to the specified position.
      *
-     * @param curr The current position.
-     * @param next The next position to consider.
-     * @param queue The queue used for BFS traversal.
+     * @param x The target x-coordinate to check in game coordinates.
+     * @param y The target y-coordinate to check in game coordinates.
      * @param withCaptures Whether capturing is allowed.
-     * @param dist The distance array tracking distances from the center.
-     * @param radius The movement radius.
-     * @param moves The list of valid moves.
+     * @return true if the tile can move to the specified position, false otherwise.
      */
-    private void addIfValid(Position curr, Position next, Queue<Position> queue, boolean withCaptures, int[][] dist, int radius, List<Position> moves) {
-        if(!table.isValidPosition(next.getX(), next.getY()))
-            return;
-
-        var norm = table.fromGameCoords(next.getX(), next.getY());
-        if(dist[norm[0]][norm[1]] != Integer.MAX_VALUE)
-            return;
-
-        if(canMoveThere(next, withCaptures)) {
-            var currNorm = table.fromGameCoords(curr.getX(), curr.getY());
-            dist[norm[0]][norm[1]] = dist[currNorm[0]][currNorm[1]] + 1;
-
-            if(dist[norm[0]][norm[1]] <= radius) {
-                moves.add(next);
-                if(table.getTile(next).isEmpty())
-                    queue.add(next);
-            }
-        }
+    public boolean canMoveThere(int x, int y, boolean withCaptures) {
+        return canMoveThere(BoardGeometry.toSquare(x, y), withCaptures);
     }
 
     /**
-     * Checks whether the tile can move to the specified position.
+     * Checks whether the tile can move to the specified square.
      *
-     * @param x The target x-coordinate to check in game coordinates.
-     * @param y The target y-coordinate to check in game coordinates.
+     * @param square The target square to check, -1 stands for a square outside the table.
      * @param withCaptures Whether capturing is allowed.
-     * @return true if the tile can move to the specified position, false otherwise.
+     * @return true if the tile can move to the specified square, false otherwise.
      */
-    public boolean canMoveThere(int x, int y, boolean withCaptures) {
-        if(!table.isValidPosition(x, y))
+    public boolean canMoveThere(int square, boolean withCaptures) {
+        if(!table.isValidSquare(square))
             return false;
 
-        var tile = table.getTile(x, y);
-        int type = table.getType(x, y).orElse(0);
+        var tile = table.tileAt(square);
+        int type = table.localeFlags(square);
 
         // only lotuses may use the northern and southern temples
         if(Table.isFrom(type, Table.Locale.NORTHERN_TEMPLE)) {
@@ -196,11 +277,11 @@ public abstract class GinsengTile extends Tile {
         }
 
         // any other place
-        return (tile.isEmpty()                                              // - if the target is empty, no other check is needed
+        return (tile == null                                                // - if the target is empty, no other check is needed
                || (withCaptures                                             // - if capturing is enabled, then:
-                   && tile.get().isGuest() != this.isGuest()                //   - the target tile's owner should be different
+                   && tile.isGuest() != this.isGuest()                      //   - the target tile's owner should be different
                    && game.isCapturingAllowed()                             //   - both lotuses should be outside temples
-                   && !(((GinsengTile) tile.get()).isGinsengProtected())    //   - the target tile can't be protected by a Ginseng
+                   && !(((GinsengTile) tile).isGinsengProtected())          //   - the target tile can't be protected by a Ginseng
                )) && !this.isKoiTrapped();                                  // - Koi tiles can block enemy tiles from moving
     }
 
@@ -216,164 +297,39 @@ public abstract class GinsengTile extends Tile {
     }
 
     /**
-     * Checks whether the tile is protected by a Ginseng.
+     * Checks whether the tile is protected by a Ginseng, see {@link GinsengGame#isGinsengProtected(int, boolean)}.
      *
      * @return True if protected by a Ginseng, false otherwise.
      */
     public boolean isGinsengProtected() {
-        return game.isAlternativeGinsengMode() ?
-                this.isGinsengProtectedByProximity() :
-                this.isGinsengProtectedByLineOfSight();
-    }
-
-    /**
-     * Checks for a Ginseng tile at the specified position.
-     *
-     * @param x The x-coordinate to check.
-     * @param y The y-coordinate to check.
-     * @return 1 if a friendly Ginseng is found, 0 if the tile is empty, -1 otherwise.
-     */
-    private int checkForGinseng(int x, int y) {
-        if(!table.isValidPosition(x, y))
-            return -1;
-
-        var t = table.getTile(x, y);
-        if(t.isEmpty())
-            return 0;
-
-        if(t.get() instanceof Ginseng gin && gin.isGuest() == this.isGuest())
-                return 1;
-
-        return -1;
-    }
-
-    /**
-     * Checks whether the tile is protected by a Ginseng in proximity (within 5 tiles in cardinal directions).
-     *
-     * @return True if protected by a Ginseng, false otherwise.
-     */
-    private boolean isGinsengProtectedByProximity() {
-        var pos =  getPosition();
-
-        for(int i = 1; i <= 5; ++i) {
-            int up = checkForGinseng(pos.getX(), pos.getY()+i);
-            int down = checkForGinseng(pos.getX(), pos.getY()-i);
-            int left = checkForGinseng(pos.getX()-i, pos.getY());
-            int right = checkForGinseng(pos.getX()+i, pos.getY());
-
-            if(up == 1 || down == 1 || left == 1 || right == 1)
-                return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * Checks whether the tile is protected by a Ginseng in line of sight.
-     *
-     * @return True if protected by a Ginseng, false otherwise.
-     */
-    private boolean isGinsengProtectedByLineOfSight() {
-        var pos = getPosition();
-
-        for(int x = pos.getX()+1; x < 17; ++x) {
-            int r = checkForGinseng(x, pos.getY());
-
-            if(r == -1)
-                break;
-
-            if(r == 1)
-                return true;
-        }
-
-        for(int x = pos.getX()-1; x >= 0; --x) {
-            int r = checkForGinseng(x, pos.getY());
-
-            if(r == -1)
-                break;
-
-            if(r == 1)
-                return true;
-        }
-
-        for(int y = pos.getY()+1; y < 17; ++y) {
-            int r = checkForGinseng(pos.getX(), y);
-
-            if(r == -1)
-                break;
-
-            if(r == 1)
-                return true;
-        }
-
-        for(int y = pos.getY()-1; y >= 0; --y) {
-            int r = checkForGinseng(pos.getX(), y);
-
-            if(r == -1)
-                break;
-
-            if(r == 1)
-                return true;
-        }
-
-        return false;
+        return game.isGinsengProtected(getSquare(), isHost());
     }
 
     /**
-     * Checks whether the tile is boosted by a Sky Bison in the surrounding area.
+     * Checks whether the tile is boosted by a Sky Bison in the surrounding area, see {@link GinsengGame#isBisonBoosted(int, boolean)}.
      *
      * @return True if boosted by a Sky Bison, false otherwise.
      */
     public boolean isBisonBoosted() {
-        return this.hasTileInSurroundings(SkyBison.class, true, true, Table.Locale.RED_GARDEN);
+        return game.isBisonBoosted(getSquare(), isHost());
     }
 
     /**
-     * Checks whether the tile is trapped by a Koi in the surrounding area.
+     * Checks whether the tile is trapped by a Koi in the surrounding area, see {@link GinsengGame#isKoiTrapped(int, boolean)}.
      *
      * @return True if trapped by a Koi, false otherwise.
      */
     public boolean isKoiTrapped() {
-        return this.hasTileInSurroundings(Koi.class, false, true, Table.Locale.WHITE_GARDEN);
+        return game.isKoiTrapped(getSquare(), isHost());
     }
 
     /**
-     * Checks whether the tile's abilities are blocked by a Lion Turtle in the surrounding area.
+     * Checks whether the tile's abilities are blocked by a Lion Turtle in the surrounding area, see {@link GinsengGame#isTurtleBlocked(int, boolean)}.
      *
      * @return True if blocked by a Lion Turtle, false otherwise.
      */
     public boolean isTurtleBlocked() {
-        return this.hasTileInSurroundings(LionTurtle.class, false, false);
-    }
-
-    /**
-     * Checks whether there is a tile of the specified class in the surrounding 3x3 area.
-     *
-     * @param tileClass The class of the tile to check for.
-     * @param sameTeam Whether to check for tiles from the same team.
-     * @param turtleCheck Whether to consider turtle blocking.
-     * @param locales The locales to consider for the tile.
-     * @return True if such a tile exists in the surroundings, false otherwise.
-     */
-    private boolean hasTileInSurroundings(Class<? extends GinsengTile> tileClass, boolean sameTeam, boolean turtleCheck, Table.Locale... locales) {
-        var pos = getPosition();
-        for(int i = pos.getX()-1; i <= pos.getX()+1; i++) {
-            for(int j = pos.getY()-1; j <= pos.getY()+1; j++) {
-                if(( i == pos.getX() && j == pos.getY() ) || !table.isValidPosition(i, j))
-                    continue;
-
-                var t = this.table.getTile(i, j);
-                if(t.isEmpty() || !( (t.get() instanceof GinsengTile gs) && (gs.getClass().equals(tileClass)) ))
-                    continue;
-
-                if(gs.isFromArea(locales)
-                   && gs.isGuest() == (sameTeam == this.isGuest())) {
-                    return !turtleCheck || !gs.isTurtleBlocked();
-                }
-            }
-        }
-
-        return false;
+        return game.isTurtleBlocked(getSquare(), isHost());
     }
 
     /**
@@ -382,24 +338,27 @@ public abstract class GinsengTile extends Tile {
      * @return A list of GinsengTiles in the surrounding area.
      */
     protected List<? extends GinsengTile> getTilesInSurroundings() {
-        var pos = getPosition();
         var tiles = new ArrayList<GinsengTile>();
-        for(int i = pos.getX()-1; i <= pos.getX()+1; i++) {
-            for(int j = pos.getY()-1; j <= pos.getY()+1; j++) {
-                if(( i == pos.getX() && j == pos.getY() ) || !table.isValidPosition(i, j))
-                    continue;
+        var area = surroundings(getSquare());
+        for(int sq = area.nextSetBit(0); sq >= 0; sq = area.nextSetBit(sq+1)) {
+            if(!(this.table.tileAt(sq) instanceof GinsengTile gs))
+                continue;
 
-                var t = this.table.getTile(i, j);
-                if(t.isEmpty() || !(t.get() instanceof GinsengTile gs))
-                    continue;
-
-                tiles.add(gs);
-            }
+            tiles.add(gs);
         }
 
         return tiles;
     }
 
+    /**
+     * Checks whether the tile has a special ability at all, regardless of where it stands.
+     *
+     * @return True if the tile has an additional utility, false otherwise.
+     */
+    public final boolean hasUtility() {
+        return hasUtility;
+    }
+
     /**
      * Checks whether the tile can use its special ability.
      * This should be overridden by tiles with special abilities.
@@ -424,30 +383,73 @@ public abstract class GinsengTile extends Tile {
     }
 
     /**
-     * Uses the tile's special ability on the target position.
+     * Collects the squares the tile's special ability can currently be used on.
+     * This should be overridden by tiles with special abilities.
+     *
+     * @param squares The array to write the target squares into, it should hold at least 8 entries.
+     * @return The number of target squares written.
+     */
+    public int getAbilityTargets(int[] squares) {
+        return 0;
+    }
+
+    /**
+     * Uses the tile's special ability on the target position, as the ability of the turn in progress.
      *
      * @param target The target position.
      * @throws UnsupportedOperationException if the tile does not have an additional utility or if the ability is not implemented.
      */
-    public void useAbility(Position target) {
+    public final void useAbility(Position target) {
+        int square = BoardGeometry.toSquare(target.getX(), target.getY());
+        useAbility(square);
+        game.setTurnInProgress(Move.withAbility(game.getTurnInProgress(), square));
+    }
+
+    /**
+     * Uses the tile's special ability on the target square.
+     *
+     * @param target The target square.
+     * @throws UnsupportedOperationException if the tile does not have an additional utility or if the ability is not implemented.
+     */
+    public void useAbility(int target) {
         if(this.hasUtility)
             throw new UnsupportedOperationException("Not yet implemented.");
         else
             throw new UnsupportedOperationException("This tile does not have an additional utility.");
     }
 
+    /**
+     * Moves the tile to the specified position, capturing the tile standing there, and starts the turn in progress
+     * of the game with the move, see {@link dev.rnandor.paisho.PaiShoGame#setTurnInProgress(int)}.
+     *
+     * @param x The target x-coordinate to move the tile to in game coordinates.
+     * @param y The target y-coordinate to move the tile to in game coordinates.
+     * @throws IllegalArgumentException if the target position is not a valid move for this tile.
+     */
     @Override
-    public void move(int x, int y) throws IllegalArgumentException {
+    public final void move(int x, int y) throws IllegalArgumentException {
         if(!isValidMove(x, y))
             throw new IllegalArgumentException("The target position cannot be accessed with this tile.");
 
-        table.getTile(x, y).ifPresent(tile -> {
-            if(tile instanceof GinsengTile gs) {
-                gs.capture();
-            }
-        });
+        int from = getSquare();
+        int to = BoardGeometry.square(x, y);
+        boolean capture = table.tileAt(to) != null;
+
+        moveTo(to);
+        game.setTurnInProgress(Move.of(from, to, capture));
+    }
 
-        super.move(x, y);
+    /**
+     * Moves the tile to the target square without validating the move, capturing the tile standing there.
+     * Meant for moves that come from {@link #getValidMoves(int[])}.
+     *
+     * @param square The target square.
+     */
+    public void moveTo(int square) {
+        if(table.tileAt(square) instanceof GinsengTile gs)
+            gs.capture();
+
+        table.move(this, square);
     }
 
     /**
@@ -455,28 +457,14 @@ public abstract class GinsengTile extends Tile {
      */
     public void capture() {
         table.remove(this);
-        this.setCaptured(true);
-
-        if(this.isGuest()) {
-            game.getGuestCaptured().add(this);
-        }
-        else {
-            game.getHostCaptured().add(this);
-        }
+        game.setCaptured(this, true);
     }
 
     /**
      * Uncaptures the tile, placing it back on the table.
      */
     public void uncapture() {
-        this.setCaptured(false);
+        game.setCaptured(this, false);
         table.put(this);
-
-        if(this.isGuest()) {
-            game.getGuestCaptured().remove(this);
-        }
-        else {
-            game.getHostCaptured().remove(this);
-        }
     }
 }
@@ -0,0 +1,58 @@
+package dev.rnandor.paisho.ginseng.tiles;
+
+import dev.rnandor.paisho.BoardGeometry;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread working memory of the move generators, so a search doesn't allocate per tile.
+ * A square counts as visited when its stamp equals the current epoch, which spares clearing the arrays.
+ */
+final class MoveScratch {
+
+    private static final ThreadLocal<MoveScratch> SCRATCH = ThreadLocal.withInitial(MoveScratch::new);
+
+    final int[] moves = new int[BoardGeometry.SQUARES];
+    final int[] queue = new int[BoardGeometry.SQUARES];
+    final int[] dist = new int[BoardGeometry.SQUARES];
+    private final int[] stamps = new int[BoardGeometry.SQUARES];
+    private int epoch;
+
+    /**
+     * Gets the scratch space of the current thread.
+     *
+     * @return The scratch space.
+     */
+    static MoveScratch get() {
+        return SCRATCH.get();
+    }
+
+    /**
+     * Forgets every visited square.
+     */
+    void reset() {
+        if(++epoch == 0) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * Checks whether the square has been visited since the last reset.
+     *
+     * @param sq The square index.
+     * @return true if the square has been visited, false otherwise.
+     */
+    boolean isVisited(int sq) {
+        return stamps[sq] == epoch;
+    }
+
+    /**
+     * Marks the square as visited.
+     *
+     * @param sq The square index.
+     */
+    void visit(int sq) {
+        stamps[sq] = epoch;
+    }
+}
@@ -10,10 +10,10 @@ public class Orchid extends GinsengTile {
     }
 
     @Override
-    public void move(int x, int y) {
+    public void moveTo(int square) {
         var cap = this.isHost() ? getGame().getGuestCaptured() : getGame().getHostCaptured();
         var prev = cap.size();
-        super.move(x, y);
+        super.moveTo(square);
 
         if(cap.size() != prev && !this.isTurtleBlocked())
             this.capture();
@@ -1,12 +1,8 @@
 package dev.rnandor.paisho.ginseng.tiles;
 
-import dev.rnandor.paisho.Position;
 import dev.rnandor.paisho.Table;
 import dev.rnandor.paisho.TileEntry;
 
-import java.util.Collections;
-import java.util.List;
-
 @TileEntry(value = "sb")
 public class SkyBison extends GinsengTile {
     public SkyBison(boolean host, Table table, int locX, int locY) {
@@ -14,11 +10,11 @@ public class SkyBison extends GinsengTile {
     }
 
     @Override
-    public List<Position> getValidMoves() {
+    public int getValidMoves(int[] squares) {
         if(this.isCaptured())
-            return Collections.emptyList();
+            return 0;
 
-        //return this.getBasicMoves(true, getGame().isBisonFlightMode());
-        return this.getBasicMoves(true, false);
+        //return this.getBasicMoves(true, getGame().isBisonFlightMode(), squares);
+        return this.getBasicMoves(true, false, squares);
     }
 }
@@ -1,12 +1,11 @@
 package dev.rnandor.paisho.ginseng.tiles;
 
 import dev.rnandor.paisho.PaiShoGame;
-import dev.rnandor.paisho.Position;
 import dev.rnandor.paisho.Table;
 import dev.rnandor.paisho.TileEntry;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.*;
+import static dev.rnandor.paisho.BoardGeometry.*;
 
 @Slf4j
 @TileEntry(value = "wl")
@@ -17,68 +16,58 @@ public class WhiteLotus extends GinsengTile {
     }
 
     @Override
-    public List<Position> getValidMoves() {
-        List<Position> moves = new ArrayList<>();
-        var center = this.getPosition();
-
-        var visited = new boolean[17][17];
-        var centerNormalised = table.fromGameCoords(center.getX(), center.getY());
-        visited[centerNormalised[0]][centerNormalised[1]] = true;
-
-        Queue<Position> queue = new LinkedList<>();
-        queue.add(center);
-
-        while (!queue.isEmpty()) {
-            var curr = queue.poll();
-
-            var upRightAnchor = new Position(curr.getX()+1, curr.getY()+1);
-            var upRight = new Position(curr.getX()+2, curr.getY()+2);
+    public int getValidMoves(int[] squares) {
+        var scratch = MoveScratch.get();
+        scratch.reset();
+
+        var queue = scratch.queue;
+        int head = 0;
+        int tail = 0;
+        int count = 0;
+
+        int center = getSquare();
+        scratch.visit(center);
+        queue[tail++] = center;
+
+        while (head < tail) {
+            int curr = queue[head++];
+
+            // up-right, down-right, up-left, down-left: jumping over the anchor next to the lotus
+            for(int d = UP_RIGHT; d <= DOWN_LEFT; d++) {
+                int anchor = diagonal(curr, d);
+                int next = anchor < 0 ? -1 : diagonal(anchor, d);
+
+                if(next < 0 || scratch.isVisited(next) || !canMoveThere(next, false))
+                    continue;
+
+                // the target counts as visited even if there is nothing to jump over
+                scratch.visit(next);
+
+                if(table.isOccupied(anchor)) {
+                    squares[count++] = next;
+                    if (!table.isOccupied(next))
+                        queue[tail++] = next;
+                }
+            }
+        }
 
-            var downRightAnchor = new Position(curr.getX()+1, curr.getY()-1);
-            var downRight = new Position(curr.getX()+2, curr.getY()-2);
+        return count;
+    }
 
-            var upLeftAnchor = new Position(curr.getX()-1, curr.getY()+1);
-            var upLeft = new Position(curr.getX()-2, curr.getY()+2);
+    @Override
+    public boolean hasValidMoves() {
+        int center = getSquare();
 
-            var downLeftAnchor = new Position(curr.getX()-1, curr.getY()-1);
-            var downLeft = new Position(curr.getX()-2, curr.getY()-2);
+        // every chain of jumps starts with a jump over a neighbour
+        for(int d = UP_RIGHT; d <= DOWN_LEFT; d++) {
+            int anchor = diagonal(center, d);
+            int next = anchor < 0 ? -1 : diagonal(anchor, d);
 
-            addIfValid(upRightAnchor, upRight, queue, visited, moves);
-            addIfValid(downRightAnchor, downRight, queue, visited, moves);
-            addIfValid(upLeftAnchor, upLeft, queue, visited, moves);
-            addIfValid(downLeftAnchor, downLeft, queue, visited, moves);
+            if(next >= 0 && table.isOccupied(anchor) && canMoveThere(next, false))
+                return true;
         }
 
-        return moves;
-    }
-
-    /**
-     * Helper method.
-     * Adds the next position to the queue and moves list if it is valid.
-     *
-     * @param anchor The anchor position that must be occupied to move to the next position.
-     * @param next The next position to consider.
-     * @param queue The queue used for BFS traversal.
-     * @param visited A 2D array tracking visited positions.
-     * @param moves The list of valid moves.
-     */
-    private void addIfValid(Position anchor, Position next, Queue<Position> queue, boolean[][] visited, List<Position> moves) {
-        if(!table.isValidPosition(next))
-            return;
-
-        var norm = table.fromGameCoords(next.getX(), next.getY());
-        if(visited[norm[0]][norm[1]])
-            return;
-
-        if(canMoveThere(next, false)) {
-            visited[norm[0]][norm[1]] = true;
-
-            if(table.getTile(anchor).isPresent()) {
-                moves.add(next);
-                if (table.getTile(next).isEmpty())
-                    queue.add(next);
-            }
-        }
+        return false;
     }
 
     @Override
@@ -88,11 +77,11 @@ public class WhiteLotus extends GinsengTile {
 
     @Override
     public void afterMoved() {
-        if(this.isGuest() && this.getPosition().getY() < 0) {
+        if(this.isGuest() && this.getY() < 0) {
             getGame().setStatus(PaiShoGame.GameStatus.GUEST_WIN);
         }
 
-        if(this.isHost() && this.getPosition().getY() > 0) {
+        if(this.isHost() && this.getY() > 0) {
             getGame().setStatus(PaiShoGame.GameStatus.HOST_WIN);
         }
     }
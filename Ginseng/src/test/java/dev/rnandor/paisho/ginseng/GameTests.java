@@ -1,16 +1,34 @@
 package dev.rnandor.paisho.ginseng;
 
+import dev.rnandor.paisho.BoardGeometry;
+import dev.rnandor.paisho.Move;
+import dev.rnandor.paisho.MoveBuffer;
 import dev.rnandor.paisho.PaiShoGame;
 import dev.rnandor.paisho.Position;
 import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import dev.rnandor.paisho.ginseng.tiles.Wheel;
+import dev.rnandor.paisho.io.GameArchive;
 import dev.rnandor.paisho.io.GameManager;
+import dev.rnandor.paisho.io.LegacyStream;
+import dev.rnandor.paisho.io.MoveJournal;
+import dev.rnandor.paisho.io.PositionIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,7 +39,7 @@ public class GameTests {
     private GinsengGame alternativeGame;
 
     @BeforeEach
-    void setup() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+    void setup() {
         this.defaultGame = new GinsengGame(false, false);
         this.alternativeGame = new GinsengGame(true, true);
     }
@@ -112,11 +130,265 @@ public class GameTests {
     }
 
     @Test
-    public void testSerialisation() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException, IOException, ClassNotFoundException {
+    public void testOccupancy() {
+        allowCapturing(defaultGame);
+        performMove(defaultGame, 2, 2, -2, -2, false);
+
+        var table = defaultGame.getTable();
+        for(int i = -8; i <= 8; i++) {
+            for(int j = -8; j <= 8; j++) {
+                if(!table.isValidPosition(j, i))
+                    continue;
+
+                var tile = table.getTile(j, i);
+                assertEquals(tile.isPresent(), table.isOccupied(j, i), "Occupancy at (" + j + "," + i + ") should match the tiles.");
+                assertEquals(tile.isPresent() && tile.get().isHost(), table.isHostAt(j, i), "Host occupancy at (" + j + "," + i + ") should match the tiles.");
+                assertEquals(tile.isPresent() && tile.get().isGuest(), table.isGuestAt(j, i), "Guest occupancy at (" + j + "," + i + ") should match the tiles.");
+            }
+        }
+
+        int onBoard = (int) defaultGame.getTiles().stream().filter(t -> !t.isCaptured()).count();
+        assertEquals(onBoard, table.getOccupancy(true).cardinality() + table.getOccupancy(false).cardinality(), "Every tile on the board should be tracked once.");
+    }
+
+    @Test
+    public void testZobristKey() {
+        var other = new GinsengGame(false, false);
+        assertEquals(defaultGame.getKey(), other.getKey(), "Identical positions should share the key.");
+        assertNotEquals(defaultGame.getKey(), alternativeGame.getKey(), "The rule variants should be part of the key.");
+
+        long start = defaultGame.getKey();
+        performMove(defaultGame, 2, 6, 2, 5, false);
+        performMove(defaultGame, 2, -6, 2, -5, false);
+        assertNotEquals(start, defaultGame.getKey(), "Moving a tile should change the key.");
+
+        // same moves, different order
+        performMove(other, 2, -6, 2, -5, false);
+        performMove(other, 2, 6, 2, 5, false);
+        assertEquals(defaultGame.getKey(), other.getKey(), "Transposed positions should share the key.");
+
+        defaultGame.nextTurn();
+        assertNotEquals(other.getKey(), defaultGame.getKey(), "The side to move should be part of the key.");
+    }
+
+    @Test
+    public void testMakeUnmakeTurn() {
+        long key = defaultGame.getKey();
+
+        var dragon = (GinsengTile) defaultGame.getTable().getTile(-1, 7).get();
+        var pushed = defaultGame.getTable().getTile(0, 4).get();
+        defaultGame.makeTurn(dragon, BoardGeometry.square(-1, 5), BoardGeometry.square(0, 4), null);
+        assertEquals(BoardGeometry.square(1, 3), pushed.getSquare(), "The tile should have been pushed.");
+        assertEquals(2, defaultGame.getTurn());
+
+        defaultGame.unmakeTurn();
+        assertEquals(key, defaultGame.getKey());
+        assertEquals(1, defaultGame.getTurn());
+        assertEquals(BoardGeometry.square(0, 4), pushed.getSquare(), "The push should have been taken back.");
+        assertEquals(BoardGeometry.square(-1, 7), dragon.getSquare());
+
+        allowCapturing(defaultGame);
+        key = defaultGame.getKey();
+
+        var lotus = (GinsengTile) defaultGame.getTable().getTile(2, 2).get();
+        defaultGame.makeTurn(lotus, BoardGeometry.square(-2, -2), -1, null);
+        assertEquals(PaiShoGame.GameStatus.GUEST_WIN, defaultGame.getStatus());
+
+        defaultGame.unmakeTurn();
+        assertEquals(PaiShoGame.GameStatus.RUNNING, defaultGame.getStatus(), "Unmaking should take back the win.");
+        assertEquals(key, defaultGame.getKey());
+        assertTrue(defaultGame.getTable().getTile(2, 2).isPresent(), "The lotus should be back at (2,2).");
+        assertThrows(IllegalStateException.class, defaultGame::unmakeTurn);
+    }
+
+    @Test
+    public void testMoveEncoding() {
+        int from = BoardGeometry.square(-1, 7);
+        int to = BoardGeometry.square(-1, 5);
+        int target = BoardGeometry.square(0, 4);
+
+        int move = Move.of(from, to, false, target, 3);
+        assertEquals(from, Move.from(move));
+        assertEquals(to, Move.to(move));
+        assertEquals(target, Move.abilityTarget(move));
+        assertEquals(3, Move.swapKind(move));
+        assertFalse(Move.isCapture(move));
+
+        int plain = Move.of(from, to, true);
+        assertEquals(-1, Move.abilityTarget(plain));
+        assertEquals(-1, Move.swapKind(plain));
+        assertTrue(Move.isCapture(plain));
+
+        var dragon = (GinsengTile) defaultGame.getTable().getTile(-1, 7).get();
+        var buffer = new MoveBuffer();
+        assertEquals(dragon.getValidMoves().size(), dragon.generateMoves(buffer));
+        assertTrue(buffer.contains(Move.of(from, to, false)), "The dragon should be able to move to (-1,5).");
+
+        defaultGame.makeTurn(Move.withAbility(Move.of(from, to, false), target));
+        assertTrue(defaultGame.getTable().getTile(1, 3).isPresent(), "The tile at (0,4) should have been pushed to (1,3).");
+    }
+
+    @Test
+    public void testLegalTurns() {
+        var buffer = new MoveBuffer();
+        int count = defaultGame.generateLegalTurns(buffer);
+        assertEquals(count, buffer.size());
+
+        int dragonPush = Move.of(BoardGeometry.square(-1, 7), BoardGeometry.square(-1, 5), false, BoardGeometry.square(0, 4), -1);
+        assertTrue(buffer.contains(dragonPush), "Moving the dragon and pushing the turtle should be a legal turn.");
+        assertTrue(buffer.contains(Move.of(BoardGeometry.square(-1, 7), BoardGeometry.square(-1, 5), false)), "Skipping the ability should be a legal turn.");
+
+        long key = defaultGame.getKey();
+        for(int i = 0; i < buffer.size(); i++) {
+            var tile = defaultGame.getTable().tileAt(Move.from(buffer.get(i)));
+            assertTrue(tile.isGuest(), "The guest should move first.");
+
+            defaultGame.makeTurn(buffer.get(i));
+            defaultGame.unmakeTurn();
+        }
+        assertEquals(key, defaultGame.getKey(), "Generating and trying every turn should leave the game unchanged.");
+    }
+
+    @Test
+    public void testGinsengProtection() {
+        defaultGame.getTable().move(4, -4, 4, -1);
+        assertTrue(defaultGame.isGinsengProtected(BoardGeometry.square(0, -1), true));
+        assertTrue(defaultGame.isGinsengProtected(BoardGeometry.square(6, -1), true));
+        assertTrue(defaultGame.isGinsengProtected(BoardGeometry.square(4, -3), true));
+        assertFalse(defaultGame.isGinsengProtected(BoardGeometry.square(4, 0), true), "Tiles only look down as far as y = 0.");
+        assertFalse(defaultGame.isGinsengProtected(BoardGeometry.square(0, -1), false), "A Ginseng should only protect its own player's tiles.");
+
+        defaultGame.getTable().move(-3, -5, 2, -1);
+        assertFalse(defaultGame.isGinsengProtected(BoardGeometry.square(0, -1), true), "The wheel should block the line of sight.");
+        assertTrue(defaultGame.isGinsengProtected(BoardGeometry.square(2, -1), true));
+
+        alternativeGame.getTable().move(4, -4, 4, -1);
+        assertTrue(alternativeGame.isGinsengProtected(BoardGeometry.square(4, 0), true));
+        assertTrue(alternativeGame.isGinsengProtected(BoardGeometry.square(4, 4), true));
+        assertFalse(alternativeGame.isGinsengProtected(BoardGeometry.square(4, 5), true), "Proximity protection should reach 5 squares.");
+        assertFalse(alternativeGame.isGinsengProtected(BoardGeometry.square(-2, -1), true), "Proximity protection should reach 5 squares.");
+    }
+
+    @Test
+    public void testAuras() {
+        var table = defaultGame.getTable();
+        table.move(2, 6, 2, 1);     // guest koi, in the White Garden
+        table.move(3, -5, 3, 2);    // host wheel
+        var wheel = (GinsengTile) table.getTile(3, 2).get();
+        assertTrue(wheel.isKoiTrapped(), "The koi should trap the wheel next to it.");
+        assertFalse(wheel.hasValidMoves());
+
+        table.move(0, -4, 1, 1);    // host turtle
+        assertFalse(wheel.isKoiTrapped(), "The turtle should block the koi.");
+        assertTrue(defaultGame.isTurtleBlocked(BoardGeometry.square(2, 1), false));
+        assertTrue(wheel.hasValidMoves());
+
+        table.move(2, -6, 2, -1);   // host sky bison, in the Red Garden
+        table.move(-3, -5, 3, -2);  // host wheel
+        assertTrue(defaultGame.isBisonBoosted(BoardGeometry.square(3, -2), true));
+        assertFalse(defaultGame.isBisonBoosted(BoardGeometry.square(3, -2), false), "The bison should only boost its own player's tiles.");
+
+        table.move(0, 4, 1, -1);    // guest turtle
+        assertFalse(defaultGame.isBisonBoosted(BoardGeometry.square(3, -2), true), "The turtle should block the bison.");
+    }
+
+    @Test
+    public void testPieceLists() {
+        var registry = defaultGame.getRegistry();
+        int wheel = registry.getIndex("wh");
+        int lotus = registry.getIndex("wl");
+        assertEquals(2, defaultGame.getPieceCount(true, wheel));
+        assertEquals(2, defaultGame.getPieceCount(false, wheel));
+        assertEquals(1, defaultGame.getPieceCount(false, lotus));
+        assertEquals(-1, registry.getIndex("nope"));
+
+        var first = defaultGame.getPiece(false, wheel, 0);
+        var second = defaultGame.getPiece(false, wheel, 1);
+        assertTrue(first.getSquare() < second.getSquare(), "The tiles should be listed by square.");
+
+        defaultGame.beginTurn();
+        first.capture();
+        assertEquals(1, defaultGame.getPieceCount(false, wheel), "A captured tile should leave the list.");
+        assertSame(second, defaultGame.getPiece(false, wheel, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> defaultGame.getPiece(false, wheel, 1));
+
+        defaultGame.unmakeTurn();
+        assertEquals(2, defaultGame.getPieceCount(false, wheel), "Unmaking should put the tile back in the list.");
+        assertSame(first, defaultGame.getPiece(false, wheel, 0));
+    }
+
+    @Test
+    public void testTileFactories() {
+        var registry = defaultGame.getRegistry();
+        var wheel = registry.getFactory("wh").orElseThrow().create(true, defaultGame.getTable(), 3, -3);
+        assertTrue(wheel instanceof Wheel);
+        assertTrue(wheel.isHost());
+        assertEquals(BoardGeometry.square(3, -3), wheel.getSquare());
+        assertTrue(registry.getFactory("nope").isEmpty());
+
+        for(var tile : defaultGame.getTiles()) {
+            var mirror = defaultGame.getTable().getTile(-tile.getX(), -tile.getY());
+            assertTrue(mirror.isPresent(), "The layout should be symmetric.");
+            assertEquals(tile.getClass(), mirror.get().getClass());
+            assertNotEquals(tile.isHost(), mirror.get().isHost());
+        }
+    }
+
+    @Test
+    public void testSnapshots() {
+        assertNull(defaultGame.getPublishedSnapshot(), "Nothing should be published before the first snapshot.");
+
+        var first = defaultGame.snapshot();
+        assertSame(first, defaultGame.getPublishedSnapshot());
+        assertSame(first, defaultGame.snapshot(), "An unchanged game should reuse its snapshot.");
+        assertEquals("wl", first.codeAt(BoardGeometry.square(0, 8)));
+        assertTrue(first.isGuestTurn());
+
+        performMove(defaultGame, 2, 6, 2, 5, false);
+        defaultGame.nextTurn();
+        assertSame(first, defaultGame.getPublishedSnapshot(), "Nothing should be published until the next snapshot.");
+        assertTrue(first.isOccupied(BoardGeometry.square(2, 6)), "A snapshot should not follow the game.");
+
+        var second = defaultGame.snapshot();
+        assertTrue(second.getVersion() > first.getVersion());
+        assertEquals("koi", second.codeAt(BoardGeometry.square(2, 5)));
+        assertTrue(second.isHostTurn());
+
+        var buffer = new MoveBuffer();
+        defaultGame.generateLegalTurns(buffer);
+        defaultGame.makeTurn(buffer.get(0));
+        defaultGame.unmakeTurn();
+        assertEquals(second.getState(), defaultGame.getState());
+        assertTrue(defaultGame.snapshot().getVersion() > second.getVersion(), "Versions should keep growing after unmaking a turn.");
+    }
+
+    @Test
+    public void testDrawDetection() {
+        var lotus = (GinsengTile) defaultGame.getTable().getTile(0, 8).get();
+        assertFalse(lotus.hasValidMoves(), "The lotus should be boxed in by its own tiles.");
+        assertTrue(defaultGame.hasValidMoves(false));
+        assertTrue(defaultGame.hasValidMoves(true));
+
+        defaultGame.getTable().move(2, 6, 2, 3);
+        assertTrue(lotus.hasValidMoves(), "The lotus should jump over the badgermole once the koi is gone.");
+
+        for(var tile : defaultGame.getTiles()) {
+            if(tile.isGuest() && tile != lotus)
+                tile.capture();
+        }
+        assertFalse(defaultGame.hasValidMoves(false), "A lone lotus has nothing to jump over.");
+        assertTrue(defaultGame.hasValidMoves(true));
+
+        assertTrue(defaultGame.checkForDraw());
+        assertEquals(PaiShoGame.GameStatus.DRAW, defaultGame.getStatus());
+    }
+
+    @Test
+    public void testSerialisation()throws IOException {
         var temp = new GinsengGame(false, true);
         allowCapturing(temp);
 
-        var manager = new GameManager<GinsengTile, GinsengGame>();
+        var manager = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec());
         var file = new File(System.identityHashCode(temp)+"_"+System.currentTimeMillis() + ".ginseng");
         manager.saveGame(temp, file.getAbsolutePath());
 
@@ -149,4 +421,283 @@ public class GameTests {
 
         file.delete();
     }
+
+    @Test
+    public void testSaveFormat() throws IOException {
+        allowCapturing(defaultGame);
+        ((GinsengTile) defaultGame.getTable().getTile(-3, -4).orElseThrow()).capture();
+        assertEquals(1, defaultGame.getHostCaptured().size());
+
+        var manager = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec());
+        var out = new ByteArrayOutputStream();
+        manager.write(defaultGame, out);
+        assertTrue(out.size() < 200, "A save should take a few bytes per tile, took " + out.size());
+
+        var loaded = manager.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(defaultGame.getState(), loaded.getState());
+        assertEquals(defaultGame.getKey(), loaded.getKey());
+        assertEquals(1, loaded.getHostCaptured().size());
+
+        var corrupt = out.toByteArray();
+        corrupt[0] ^= 1;
+        assertThrows(GameManager.InvalidSaveException.class, () -> manager.read(new ByteArrayInputStream(corrupt)));
+        var truncated = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+        assertThrows(GameManager.InvalidSaveException.class, () -> manager.read(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    public void testLegacySave() throws IOException {
+        // written by the Java serialization of the first release: the guest's Wheel moved from (-3, 5) to (-2, 5),
+        // the host's Koi captured on (-2, -6), three turns played, Sky Bison flight enabled
+        var manager = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec());
+        GinsengGame game;
+        try(var in = getClass().getResourceAsStream("/legacy.ginseng")) {
+            assertNotNull(in);
+            game = manager.read(in);
+        }
+
+        assertEquals(4, game.getTurn());
+        assertEquals(PaiShoGame.GameStatus.RUNNING, game.getStatus());
+        assertTrue(game.isBisonFlightMode());
+        assertFalse(game.isAlternativeGinsengMode());
+        assertEquals(24, game.getTiles().size());
+
+        assertTrue(game.getTable().getTile(-3, 5).isEmpty());
+        var wheel = game.getTable().getTile(-2, 5).orElseThrow();
+        assertTrue(wheel instanceof Wheel && wheel.isGuest());
+
+        assertEquals(1, game.getHostCaptured().size());
+        assertEquals("Koi", game.getHostCaptured().iterator().next().getName());
+        assertTrue(game.getTable().getTile(-2, -6).isEmpty());
+
+        var out = new ByteArrayOutputStream();
+        manager.write(game, out);
+        assertEquals(game.getState(), manager.read(new ByteArrayInputStream(out.toByteArray())).getState());
+
+        // strings too long for readUTF, and arrays whose written size the stream doesn't hold
+        var serialized = new ByteArrayOutputStream();
+        var text = "\u00e9\u4e2d".repeat(30000);
+        try(var objects = new ObjectOutputStream(serialized)) {
+            objects.writeObject(new Object[] { text, new int[] { 1, 2 } });
+        }
+        var read = (Object[]) LegacyStream.read(new ByteArrayInputStream(serialized.toByteArray()));
+        assertEquals(text, read[0]);
+        assertArrayEquals(new int[] { 1, 2 }, (int[]) read[1]);
+
+        var lying = serialized.toByteArray();
+        // the size of the int array, just before its two elements
+        ByteBuffer.wrap(lying).putInt(lying.length - 12, Integer.MAX_VALUE);
+        assertThrows(EOFException.class, () -> LegacyStream.read(new ByteArrayInputStream(lying)));
+    }
+
+    @Test
+    public void testArchive() throws IOException {
+        allowCapturing(alternativeGame);
+        var games = List.of(defaultGame, alternativeGame, defaultGame.fork());
+
+        var manager = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec());
+        var file = Files.createTempFile("games", ".archive");
+        try {
+            try(var writer = GameArchive.create(file, manager)) {
+                for(var game : games)
+                    writer.add(game);
+            }
+
+            try(var archive = GameArchive.open(file, manager)) {
+                assertEquals(games.size(), archive.size());
+                assertEquals(alternativeGame.getState(), archive.get(1).getState());
+                assertEquals(defaultGame.getState(), archive.get(0).getState());
+                assertThrows(IndexOutOfBoundsException.class, () -> archive.get(3));
+
+                int i = 0;
+                for(var game : archive)
+                    assertEquals(games.get(i++).getState(), game.getState());
+                assertEquals(games.size(), i);
+
+                var record = archive.records().next();
+                assertTrue(record.isReadOnly());
+                assertEquals(defaultGame.getState(), manager.read(new ByteArrayInputStream(toArray(record))).getState());
+            }
+
+            Files.write(file, new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND);
+            assertThrows(GameManager.InvalidSaveException.class, () -> GameArchive.open(file, manager));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMoveJournal() throws IOException {
+        var manager = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec());
+        var states = new ArrayList<GinsengState>();
+        states.add(defaultGame.getState());
+
+        var file = Files.createTempFile("game", ".journal");
+        try {
+            try(var journal = MoveJournal.create(file, manager, defaultGame, 3)) {
+                // played piece by piece, like the board does
+                var dragon = (GinsengTile) defaultGame.getTable().getTile(-1, 7).get();
+                performMove(defaultGame, -1, 7, -1, 5, false);
+                dragon.useAbility(new Position(0, 4));
+                defaultGame.nextTurn();
+                states.add(defaultGame.getState());
+
+                performMove(defaultGame, 2, -6, 2, -5, false);
+                defaultGame.nextTurn();
+                states.add(defaultGame.getState());
+
+                // turns that are unmade are never journaled, committed ones are
+                var buffer = new MoveBuffer();
+                for(int i = 0; i < 5; i++) {
+                    buffer.clear();
+                    defaultGame.generateLegalTurns(buffer);
+                    defaultGame.makeTurn(buffer.get(buffer.size()-1));
+                    defaultGame.unmakeTurn();
+
+                    defaultGame.makeTurn(buffer.get(0));
+                    defaultGame.commitTurns();
+                    states.add(defaultGame.getState());
+                }
+                assertEquals(7, journal.getTurns());
+            }
+            defaultGame.nextTurn();
+
+            try(var reader = MoveJournal.open(file, manager)) {
+                assertEquals(states.get(0), reader.getGame().getState());
+                for(int i = 1; i < states.size(); i++) {
+                    assertTrue(reader.next());
+                    assertEquals(states.get(i), reader.getGame().getState(), "Position after turn " + i);
+                }
+                assertFalse(reader.next());
+
+                assertEquals(states.get(2), reader.seek(2).getState());
+                assertEquals(states.get(7), reader.seek(7).getState());
+                assertEquals(states.get(5), reader.seek(5).getState());
+            }
+
+            // a record cut short by a crash ends the journal
+            Files.write(file, new byte[] { 1, 0, 0 }, StandardOpenOption.APPEND);
+            assertEquals(states.get(7), MoveJournal.replay(file, manager, 100).getState());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testReplayValidator() throws IOException {
+        var manager = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec());
+        var directory = Files.createTempDirectory("journals");
+        var pool = new ForkJoinPool(2);
+        try {
+            try(var _ = MoveJournal.create(directory.resolve("legal.journal"), manager, defaultGame, 2)) {
+                var buffer = new MoveBuffer();
+                for(int i = 0; i < 6; i++) {
+                    buffer.clear();
+                    defaultGame.generateLegalTurns(buffer);
+                    defaultGame.makeTurn(buffer.get(i));
+                    defaultGame.commitTurns();
+                }
+            }
+
+            // the guest's lotus jumps across the board, which no rule allows
+            try(var _ = MoveJournal.create(directory.resolve("illegal.journal"), manager, alternativeGame, 2)) {
+                performMove(alternativeGame, 2, 6, 2, 5, false);
+                alternativeGame.nextTurn();
+
+                int from = BoardGeometry.square(0, 8);
+                int to = BoardGeometry.square(0, 0);
+                alternativeGame.getTable().move(0, 8, 0, 0);
+                alternativeGame.setTurnInProgress(Move.of(from, to, false));
+                alternativeGame.nextTurn();
+            }
+
+            Files.write(directory.resolve("broken.journal"), new byte[] { 1, 2, 3 });
+
+            var validator = new ReplayValidator(manager, pool, 10);
+            var report = validator.validateDirectory(directory);
+            assertEquals(3, report.getJournalCount());
+            assertEquals(2, report.getDivergenceCount());
+
+            var divergences = report.getDivergences();
+            assertEquals("broken.journal", divergences.get(0).journal().getFileName().toString());
+            assertEquals(ReplayValidator.Divergence.Kind.UNREADABLE, divergences.get(0).kind());
+            assertEquals("illegal.journal", divergences.get(1).journal().getFileName().toString());
+            assertEquals(ReplayValidator.Divergence.Kind.ILLEGAL_TURN, divergences.get(1).kind());
+            assertEquals(1, divergences.get(1).turn());
+
+            assertNull(validator.validate(directory.resolve("legal.journal")));
+        } finally {
+            pool.shutdown();
+            try(var files = Files.list(directory)) {
+                for(var file : files.toList())
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testPositionIndex() throws IOException {
+        var manager = new GameManager<GinsengTile, GinsengGame>(new GinsengCodec());
+        var start = defaultGame.getPositionKey();
+        var keys = new ArrayList<Long>();
+
+        var directory = Files.createTempDirectory("positions");
+        var index = directory.resolve("games.index");
+        try {
+            // both games open the same way, then part
+            for(int game = 0; game < 2; game++) {
+                var played = defaultGame.fork();
+                assertEquals(start, played.getPositionKey());
+
+                var journal = directory.resolve(game + ".journal");
+                try(var _ = MoveJournal.create(journal, manager, played, 4)) {
+                    var buffer = new MoveBuffer();
+                    for(int i = 0; i < 4; i++) {
+                        buffer.clear();
+                        played.generateLegalTurns(buffer);
+                        played.makeTurn(buffer.get(i < 2 ? 0 : game));
+                        played.commitTurns();
+                        if(game == 0)
+                            keys.add(played.getPositionKey());
+                    }
+                }
+
+                try(var writer = PositionIndex.append(index)) {
+                    assertEquals(5, writer.addJournal(game, journal, manager));
+                }
+            }
+
+            for(int compacted = 0; compacted < 2; compacted++) {
+                try(var positions = PositionIndex.open(index)) {
+                    assertEquals(2 - compacted, positions.getSegmentCount());
+                    assertEquals(10, positions.size());
+                    // the second game moves its tiles back, and is found a second time in the starting position
+                    assertEquals(List.of(new PositionIndex.Hit(0, 0), new PositionIndex.Hit(1, 0), new PositionIndex.Hit(1, 4)),
+                            positions.find(start));
+                    assertArrayEquals(new int[] { 0, 1 }, positions.findGames(keys.get(1)));
+                    assertEquals(List.of(new PositionIndex.Hit(0, 4)), positions.find(keys.get(3)));
+                    assertEquals(1, positions.count(keys.get(3)));
+                    assertEquals(0, positions.count(start ^ 1));
+                }
+                PositionIndex.compact(index);
+            }
+
+            Files.write(index, new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND);
+            assertThrows(GameManager.InvalidSaveException.class, () -> PositionIndex.open(index));
+            assertThrows(GameManager.InvalidSaveException.class, () -> PositionIndex.append(index));
+        } finally {
+            try(var files = Files.list(directory)) {
+                for(var file : files.toList())
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
 }
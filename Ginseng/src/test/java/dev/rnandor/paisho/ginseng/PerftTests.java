@@ -0,0 +1,113 @@
+package dev.rnandor.paisho.ginseng;
+
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.ginseng.tiles.GinsengTile;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Golden leaf counts of the rules engine, see {@link Perft}.
+ * A change in any of these means the rules changed, not just their speed.
+ */
+public class PerftTests {
+
+    /**
+     * Builds a midgame position where capturing is allowed, both sides have captured tiles to swap in
+     * and the guest lotus can win by jumping into the host's half.
+     * The guest is to move.
+     */
+    private GinsengGame midgame(boolean bisonGrantsFlight, boolean alternativeGinsengProtection) {
+        var game = new GinsengGame(bisonGrantsFlight, alternativeGinsengProtection);
+        var table = game.getTable();
+
+        // lotuses out of their temples, the guest one next to a host tile it can jump over
+        table.move(0, 8, 2, 1);
+        table.move(0, -8, 0, -5);
+
+        ((GinsengTile) table.getTile(3, 5).get()).capture();   // guest wheel
+        ((GinsengTile) table.getTile(-2, -6).get()).capture(); // host koi
+
+        table.move(-2, 6, -2, 1);   // guest sky bison
+        table.move(5, 4, 5, 1);     // guest orchid, next to the eastern temple
+        table.move(-5, -4, -5, -1); // host orchid, next to the western temple
+        table.move(-3, 5, -3, -2);  // guest wheel
+        table.move(-1, 7, -1, 1);   // guest dragon
+        table.move(2, -6, 2, 2);    // host badgermole
+        table.move(-3, -5, 3, 0);   // host wheel
+        return game;
+    }
+
+    /**
+     * Helper method.
+     * Checks the detailed counts of one depth.
+     */
+    private void assertCounts(Perft.Result result, long nodes, long captures, long abilities, long swaps, long lotusWins) {
+        String depth = "depth " + result.getDepth() + ": ";
+        assertEquals(nodes, result.getNodes(), depth + "nodes");
+        assertEquals(captures, result.getCaptures(), depth + "captures");
+        assertEquals(abilities, result.getAbilities(), depth + "abilities");
+        assertEquals(swaps, result.getSwaps(), depth + "swaps");
+        assertEquals(lotusWins, result.getLotusWins(), depth + "lotus wins");
+    }
+
+    @Test
+    public void testStartingPosition() {
+        for(int flags = 0; flags < 4; flags++) {
+            var game = new GinsengGame((flags & 1) != 0, (flags & 2) != 0);
+            long key = game.getKey();
+
+            var perft = new Perft(game);
+            assertCounts(perft.countDetailed(1), 406, 0, 23, 0, 0);
+            assertCounts(perft.countDetailed(2), 164664, 0, 9346, 0, 0);
+            assertEquals(164664, perft.count(2));
+            assertEquals(key, game.getKey(), "Perft should leave the game unchanged.");
+        }
+    }
+
+    @Test
+    public void testMidgame() {
+        var perft = new Perft(midgame(false, false));
+        assertCounts(perft.countDetailed(1), 500, 11, 33, 4, 1);
+        assertCounts(perft.countDetailed(2), 209038, 4924, 10541, 3931, 0);
+
+        perft = new Perft(midgame(true, false));
+        assertCounts(perft.countDetailed(1), 509, 11, 35, 4, 1);
+        assertCounts(perft.countDetailed(2), 212777, 5010, 10730, 3997, 0);
+
+        perft = new Perft(midgame(false, true));
+        assertCounts(perft.countDetailed(1), 500, 11, 33, 4, 1);
+        assertCounts(perft.countDetailed(2), 208974, 4860, 10541, 3931, 0);
+
+        perft = new Perft(midgame(true, true));
+        assertCounts(perft.countDetailed(1), 509, 11, 35, 4, 1);
+        assertCounts(perft.countDetailed(2), 212713, 4946, 10730, 3997, 0);
+    }
+
+    @Test
+    public void testMidgameHostToMove() {
+        var game = midgame(false, false);
+        game.nextTurn();
+
+        var perft = new Perft(game);
+        assertCounts(perft.countDetailed(1), 422, 10, 21, 8, 0);
+        assertCounts(perft.countDetailed(2), 210360, 4752, 14050, 1696, 396);
+    }
+
+    @Test
+    public void testFork() {
+        var game = midgame(false, false);
+        game.nextTurn();
+
+        var fork = game.fork();
+        assertEquals(game.getKey(), fork.getKey());
+        assertEquals(game.getState(), fork.getState());
+        assertCounts(new Perft(fork).countDetailed(2), 210360, 4752, 14050, 1696, 396);
+
+        var buffer = new MoveBuffer();
+        fork.generateLegalTurns(buffer);
+        fork.makeTurn(buffer.get(0));
+        assertNotEquals(game.getKey(), fork.getKey());
+        assertEquals(game.getState(), game.fork().getState(), "Playing on the fork should leave the game unchanged.");
+    }
+}
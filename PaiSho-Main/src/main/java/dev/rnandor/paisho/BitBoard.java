@@ -0,0 +1,245 @@
+package dev.rnandor.paisho;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A fixed-size set of board squares, packed into a few longs.
+ * Square indices are in the range [0, CAPACITY), where bit {@code sq} lives in word {@code sq >>> 6}.
+ */
+public final class BitBoard implements Serializable {
+
+    /**
+     * The number of longs backing a BitBoard.
+     */
+    public static final int WORDS = 5;
+
+    /**
+     * The number of squares a BitBoard can hold.
+     */
+    public static final int CAPACITY = WORDS * Long.SIZE;
+
+    private final long[] words = new long[WORDS];
+
+    private final boolean frozen;
+
+    /**
+     * Constructs an empty BitBoard.
+     */
+    public BitBoard() {
+        this.frozen = false;
+    }
+
+    /**
+     * Constructs a BitBoard holding the same squares as the given one.
+     *
+     * @param other The BitBoard to copy.
+     */
+    public BitBoard(BitBoard other) {
+        this.frozen = false;
+        copyFrom(other);
+    }
+
+    /**
+     * Constructs a copy of the given BitBoard.
+     *
+     * @param other The BitBoard to copy.
+     * @param frozen Whether the copy rejects modifications.
+     */
+    private BitBoard(BitBoard other, boolean frozen) {
+        System.arraycopy(other.words, 0, words, 0, WORDS);
+        this.frozen = frozen;
+    }
+
+    /**
+     * Creates an unmodifiable copy of this BitBoard.
+     *
+     * @return A copy that throws UnsupportedOperationException on modification.
+     */
+    public BitBoard freeze() {
+        return frozen ? this : new BitBoard(this, true);
+    }
+
+    /**
+     * Checks whether this BitBoard rejects modifications.
+     *
+     * @return true if the BitBoard is unmodifiable, false otherwise.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Helper method.
+     * Guards every modification of the BitBoard.
+     *
+     * @throws UnsupportedOperationException if the BitBoard is frozen.
+     */
+    private void checkMutable() {
+        if(frozen)
+            throw new UnsupportedOperationException("This BitBoard cannot be modified.");
+    }
+
+    /**
+     * Checks whether the given square is set.
+     *
+     * @param sq The square index.
+     * @return true if the square is set, false otherwise.
+     */
+    public boolean get(int sq) {
+        return (words[sq >>> 6] & (1L << sq)) != 0;
+    }
+
+    /**
+     * Sets the given square.
+     *
+     * @param sq The square index.
+     */
+    public void set(int sq) {
+        checkMutable();
+        words[sq >>> 6] |= 1L << sq;
+    }
+
+    /**
+     * Clears the given square.
+     *
+     * @param sq The square index.
+     */
+    public void clear(int sq) {
+        checkMutable();
+        words[sq >>> 6] &= ~(1L << sq);
+    }
+
+    /**
+     * Clears every square.
+     */
+    public void clear() {
+        checkMutable();
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Replaces the contents of this BitBoard with the contents of another.
+     *
+     * @param other The BitBoard to copy.
+     */
+    public void copyFrom(BitBoard other) {
+        checkMutable();
+        System.arraycopy(other.words, 0, words, 0, WORDS);
+    }
+
+    /**
+     * Sets every square that is set in the other BitBoard.
+     *
+     * @param other The other BitBoard.
+     */
+    public void or(BitBoard other) {
+        checkMutable();
+        for(int i = 0; i < WORDS; i++)
+            words[i] |= other.words[i];
+    }
+
+    /**
+     * Clears every square that is not set in the other BitBoard.
+     *
+     * @param other The other BitBoard.
+     */
+    public void and(BitBoard other) {
+        checkMutable();
+        for(int i = 0; i < WORDS; i++)
+            words[i] &= other.words[i];
+    }
+
+    /**
+     * Clears every square that is set in the other BitBoard.
+     *
+     * @param other The other BitBoard.
+     */
+    public void andNot(BitBoard other) {
+        checkMutable();
+        for(int i = 0; i < WORDS; i++)
+            words[i] &= ~other.words[i];
+    }
+
+    /**
+     * Checks whether this BitBoard shares at least one square with the other.
+     *
+     * @param other The other BitBoard.
+     * @return true if there's a common square, false otherwise.
+     */
+    public boolean intersects(BitBoard other) {
+        for(int i = 0; i < WORDS; i++) {
+            if((words[i] & other.words[i]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether no square is set.
+     *
+     * @return true if the BitBoard is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        for(var w : words) {
+            if(w != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts the squares that are set.
+     *
+     * @return The number of set squares.
+     */
+    public int cardinality() {
+        int count = 0;
+        for(var w : words)
+            count += Long.bitCount(w);
+        return count;
+    }
+
+    /**
+     * Finds the first set square at or after the given index.
+     * Iterating a BitBoard looks like {@code for(int sq = b.nextSetBit(0); sq >= 0; sq = b.nextSetBit(sq+1))}.
+     *
+     * @param from The index to start from.
+     * @return The index of the next set square, or -1 if there's none.
+     */
+    public int nextSetBit(int from) {
+        if(from >= CAPACITY)
+            return -1;
+
+        int i = from >>> 6;
+        long w = words[i] & (-1L << from);
+        while(true) {
+            if(w != 0)
+                return (i << 6) + Long.numberOfTrailingZeros(w);
+            if(++i == WORDS)
+                return -1;
+            w = words[i];
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BitBoard b && Arrays.equals(words, b.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        var br = new StringBuilder("{");
+        for(int sq = nextSetBit(0); sq >= 0; sq = nextSetBit(sq+1)) {
+            if(br.length() > 1)
+                br.append(", ");
+            br.append(sq);
+        }
+        return br.append('}').toString();
+    }
+}
@@ -0,0 +1,275 @@
+package dev.rnandor.paisho;
+
+import java.util.EnumMap;
+
+import static dev.rnandor.paisho.Table.Locale.*;
+
+/**
+ * The shape of the Pai Sho table, shared by every {@link Table}.
+ * Everything here is computed once, when the class is initialised, and never changes afterwards.
+ * <p>
+ * Squares are indexed as {@code (x+8)*17 + (y+8)}, where x and y are game coordinates.
+ */
+public final class BoardGeometry {
+
+    /**
+     * The number of rows and columns of the table.
+     */
+    public static final int SIZE = 17;
+
+    /**
+     * The offset between game coordinates and array indices.
+     */
+    public static final int OFFSET = 8;
+
+    /**
+     * The number of square indices, including the ones outside the playable area.
+     */
+    public static final int SQUARES = SIZE * SIZE;
+
+    // neighbour directions
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+
+    // diagonal directions
+    public static final int UP_RIGHT = 0;
+    public static final int DOWN_RIGHT = 1;
+    public static final int UP_LEFT = 2;
+    public static final int DOWN_LEFT = 3;
+
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {1, -1, 0, 0};
+    private static final int[] DIAGONAL_DX = {1, 1, -1, -1};
+    private static final int[] DIAGONAL_DY = {1, -1, 1, -1};
+
+    private static final int[] LOCALES = new int[SQUARES];
+    private static final int[] NEIGHBOURS = new int[SQUARES * 4];
+    private static final int[] DIAGONALS = new int[SQUARES * 4];
+    private static final BitBoard[] SURROUNDINGS = new BitBoard[SQUARES];
+
+    private static final BitBoard VALID;
+    private static final EnumMap<Table.Locale, BitBoard> LOCALE_MASKS = new EnumMap<>(Table.Locale.class);
+
+    static {
+        // Western Temple
+        LOCALES[square(-8, -1)] = WESTERN_TEMPLE.flag;
+        LOCALES[square(-8, 0)] = WESTERN_TEMPLE.flag;
+        LOCALES[square(-8, 1)] = WESTERN_TEMPLE.flag;
+        LOCALES[square(-7, 0)] = WESTERN_TEMPLE.flag;
+
+        // Eastern Temple
+        LOCALES[square(8, -1)] = EASTERN_TEMPLE.flag;
+        LOCALES[square(8, 0)] = EASTERN_TEMPLE.flag;
+        LOCALES[square(8, 1)] = EASTERN_TEMPLE.flag;
+        LOCALES[square(7, 0)] = EASTERN_TEMPLE.flag;
+
+        // Southern Temple
+        LOCALES[square(-1, -8)] = SOUTHERN_TEMPLE.flag;
+        LOCALES[square(0, -8)] = SOUTHERN_TEMPLE.flag;
+        LOCALES[square(1, -8)] = SOUTHERN_TEMPLE.flag;
+        LOCALES[square(0, -7)] = SOUTHERN_TEMPLE.flag;
+
+        // Northern Temple
+        LOCALES[square(-1, 8)] = NORTHERN_TEMPLE.flag;
+        LOCALES[square(0, 8)] = NORTHERN_TEMPLE.flag;
+        LOCALES[square(1, 8)] = NORTHERN_TEMPLE.flag;
+        LOCALES[square(0, 7)] = NORTHERN_TEMPLE.flag;
+
+        // Gardens
+        for(int x = -7; x <= 7; x++) {
+            for (int y = -7; y <= 7; y++) {
+                int flag = x*y > 0 ? WHITE_GARDEN.flag : RED_GARDEN.flag; // if the sign matches, it's a white garden
+                if(x*y == 0) flag |= WHITE_GARDEN.flag;              // if either axis is on the 0, it's both
+
+                if(Math.abs(x) + Math.abs(y) > 7)
+                    continue;
+
+                LOCALES[square(x, y)] |= flag;                   // setting the selected garden type(s)
+            }
+        }
+
+        var valid = new BitBoard();
+        var masks = new EnumMap<Table.Locale, BitBoard>(Table.Locale.class);
+        for(var locale : Table.Locale.values())
+            masks.put(locale, new BitBoard());
+
+        for(int sq = 0; sq < SQUARES; sq++) {
+            int x = squareX(sq);
+            int y = squareY(sq);
+
+            var surroundings = new BitBoard();
+            for(int d = 0; d < 4; d++) {
+                NEIGHBOURS[sq*4 + d] = toSquare(x + DX[d], y + DY[d]);
+                DIAGONALS[sq*4 + d] = toSquare(x + DIAGONAL_DX[d], y + DIAGONAL_DY[d]);
+            }
+            for(int i = x-1; i <= x+1; i++) {
+                for(int j = y-1; j <= y+1; j++) {
+                    if((i != x || j != y) && isValidPosition(i, j))
+                        surroundings.set(square(i, j));
+                }
+            }
+            SURROUNDINGS[sq] = surroundings.freeze();
+
+            if(!isValidPosition(x, y))
+                continue;
+
+            valid.set(sq);
+            for(var locale : Table.Locale.values()) {
+                if(locale == NEUTRAL_GARDEN ? Table.isNeutralGarden(LOCALES[sq]) : Table.isFrom(LOCALES[sq], locale))
+                    masks.get(locale).set(sq);
+            }
+        }
+
+        VALID = valid.freeze();
+        masks.forEach((locale, mask) -> LOCALE_MASKS.put(locale, mask.freeze()));
+    }
+
+    private BoardGeometry() {}
+
+    /**
+     * Checks if the given coordinates are within the table bounds.
+     *
+     * @param x The x coordinate in game space.
+     * @param y The y coordinate in game space.
+     * @return True if the coordinates are within the table bounds, false otherwise.
+     */
+    public static boolean isValidPosition(int x, int y) {
+        var a = Math.abs(x);
+        var b = Math.abs(y);
+
+        return (a <= OFFSET && b <= OFFSET) && (a + b <= 12); // diamond check
+    }
+
+    /**
+     * Checks if the given square is within the table bounds.
+     *
+     * @param sq The square index.
+     * @return True if the square is on the table, false otherwise.
+     */
+    public static boolean isValidSquare(int sq) {
+        return sq >= 0 && sq < SQUARES && VALID.get(sq);
+    }
+
+    /**
+     * Converts game coordinates to a square index, without any bounds check.
+     *
+     * @param x The x coordinate in game space.
+     * @param y The y coordinate in game space.
+     * @return The square index.
+     */
+    public static int square(int x, int y) {
+        return (x+OFFSET)*SIZE + (y+OFFSET);
+    }
+
+    /**
+     * Converts game coordinates to a square index.
+     *
+     * @param x The x coordinate in game space.
+     * @param y The y coordinate in game space.
+     * @return The square index, or -1 if the coordinates are not on the table.
+     */
+    public static int toSquare(int x, int y) {
+        return isValidPosition(x, y) ? square(x, y) : -1;
+    }
+
+    /**
+     * Gets the x coordinate of a square.
+     *
+     * @param sq The square index.
+     * @return The x coordinate in game space.
+     */
+    public static int squareX(int sq) {
+        return sq/SIZE - OFFSET;
+    }
+
+    /**
+     * Gets the y coordinate of a square.
+     *
+     * @param sq The square index.
+     * @return The y coordinate in game space.
+     */
+    public static int squareY(int sq) {
+        return sq%SIZE - OFFSET;
+    }
+
+    /**
+     * Gets the locale flags of a square, see {@link Table.Locale}.
+     *
+     * @param sq The square index, not checked.
+     * @return The locale flags of the square.
+     */
+    public static int locale(int sq) {
+        return LOCALES[sq];
+    }
+
+    /**
+     * Gets the neighbouring square in the given direction.
+     *
+     * @param sq The square index, not checked.
+     * @param direction One of UP, DOWN, LEFT and RIGHT.
+     * @return The neighbouring square, or -1 if it's not on the table.
+     */
+    public static int neighbour(int sq, int direction) {
+        return NEIGHBOURS[sq*4 + direction];
+    }
+
+    /**
+     * Gets the diagonally adjacent square in the given direction.
+     *
+     * @param sq The square index, not checked.
+     * @param direction One of UP_RIGHT, DOWN_RIGHT, UP_LEFT and DOWN_LEFT.
+     * @return The diagonal square, or -1 if it's not on the table.
+     */
+    public static int diagonal(int sq, int direction) {
+        return DIAGONALS[sq*4 + direction];
+    }
+
+    /**
+     * Gets the squares of the surrounding 3x3 area, without the square itself.
+     *
+     * @param sq The square index, not checked.
+     * @return An unmodifiable BitBoard of the surrounding squares.
+     */
+    public static BitBoard surroundings(int sq) {
+        return SURROUNDINGS[sq];
+    }
+
+    /**
+     * Gets every square of the table.
+     *
+     * @return An unmodifiable BitBoard of the valid squares.
+     */
+    public static BitBoard validSquares() {
+        return VALID;
+    }
+
+    /**
+     * Gets every square that belongs to the given locale.
+     *
+     * @param locale The locale.
+     * @return An unmodifiable BitBoard of the squares of the locale.
+     */
+    public static BitBoard localeMask(Table.Locale locale) {
+        return LOCALE_MASKS.get(locale);
+    }
+
+    /**
+     * Renders the layout of the table, for debugging purposes.
+     *
+     * @return A multi-line drawing of the table, north at the top.
+     */
+    public static String render() {
+        var br = new StringBuilder();
+        var chars = "o ░_▒_#¤■";
+        for(int y = OFFSET; y >= -OFFSET; y--) {
+            for (int x = -OFFSET; x <= OFFSET; x++) {
+                char c = isValidPosition(x, y) ? chars.charAt(Math.min(LOCALES[square(x, y)], NORTHERN_TEMPLE.flag)) : ' ';
+                br.append(c).append(' ');
+            }
+            br.append(System.lineSeparator());
+        }
+        return br.toString();
+    }
+}
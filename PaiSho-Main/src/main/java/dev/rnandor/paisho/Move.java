@@ -0,0 +1,183 @@
+package dev.rnandor.paisho;
+
+/**
+ * A complete turn packed into an int: a move, an optional ability target and an optional swap.
+ * <p>
+ * Layout, from the lowest bit:
+ * <ul>
+ *     <li>9 bits: the square the tile moves from</li>
+ *     <li>9 bits: the square the tile moves to</li>
+ *     <li>9 bits: the square the ability is used on, all ones if there's none</li>
+ *     <li>4 bits: the kind of the captured tile swapped in, all ones if there's none</li>
+ *     <li>1 bit: whether the move captures a tile</li>
+ * </ul>
+ * Squares are the ones of {@link BoardGeometry}, kinds the ones of {@link Table#kindOf(Tile)}.
+ * Since square 0 is outside the table, 0 is never a valid move and is used as {@link #NONE}.
+ */
+public final class Move {
+
+    /**
+     * Not a move, for example the result of a search that found none.
+     */
+    public static final int NONE = 0;
+
+    /**
+     * The number of swap kinds a move can encode.
+     */
+    public static final int MAX_SWAP_KINDS = 15;
+
+    private static final int SQUARE_MASK = 0x1FF;
+    private static final int KIND_MASK = 0xF;
+
+    private static final int TO_SHIFT = 9;
+    private static final int ABILITY_SHIFT = 18;
+    private static final int SWAP_SHIFT = 27;
+    private static final int CAPTURE_BIT = 1 << 31;
+
+    private static final int NO_FOLLOW_UP = (SQUARE_MASK << ABILITY_SHIFT) | (KIND_MASK << SWAP_SHIFT);
+
+    private Move() {}
+
+    /**
+     * Encodes a plain move, without an ability or a swap.
+     *
+     * @param from The square the tile moves from.
+     * @param to The square the tile moves to.
+     * @param capture Whether the move captures a tile.
+     * @return The encoded move.
+     */
+    public static int of(int from, int to, boolean capture) {
+        return from | (to << TO_SHIFT) | NO_FOLLOW_UP | (capture ? CAPTURE_BIT : 0);
+    }
+
+    /**
+     * Encodes a complete turn.
+     *
+     * @param from The square the tile moves from.
+     * @param to The square the tile moves to.
+     * @param capture Whether the move captures a tile.
+     * @param abilityTarget The square the ability is used on, -1 for none.
+     * @param swapKind The kind of the captured tile swapped in, -1 for none.
+     * @return The encoded move.
+     * @throws IllegalArgumentException if the swap kind can't be encoded.
+     */
+    public static int of(int from, int to, boolean capture, int abilityTarget, int swapKind) {
+        return withSwap(withAbility(of(from, to, capture), abilityTarget), swapKind);
+    }
+
+    /**
+     * Replaces the ability target of a move.
+     *
+     * @param move The encoded move.
+     * @param abilityTarget The square the ability is used on, -1 for none.
+     * @return The encoded move with the new ability target.
+     */
+    public static int withAbility(int move, int abilityTarget) {
+        int sq = abilityTarget < 0 ? SQUARE_MASK : abilityTarget;
+        return (move & ~(SQUARE_MASK << ABILITY_SHIFT)) | (sq << ABILITY_SHIFT);
+    }
+
+    /**
+     * Replaces the swap of a move.
+     *
+     * @param move The encoded move.
+     * @param swapKind The kind of the captured tile swapped in, -1 for none.
+     * @return The encoded move with the new swap.
+     * @throws IllegalArgumentException if the swap kind can't be encoded.
+     */
+    public static int withSwap(int move, int swapKind) {
+        if(swapKind >= MAX_SWAP_KINDS)
+            throw new IllegalArgumentException("Swap kind " + swapKind + " cannot be encoded in a move.");
+
+        int kind = swapKind < 0 ? KIND_MASK : swapKind;
+        return (move & ~(KIND_MASK << SWAP_SHIFT)) | (kind << SWAP_SHIFT);
+    }
+
+    /**
+     * Gets the square the tile moves from.
+     *
+     * @param move The encoded move.
+     * @return The source square.
+     */
+    public static int from(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /**
+     * Gets the square the tile moves to.
+     *
+     * @param move The encoded move.
+     * @return The target square.
+     */
+    public static int to(int move) {
+        return (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Gets the square the ability is used on.
+     *
+     * @param move The encoded move.
+     * @return The ability target, or -1 if the ability is not used.
+     */
+    public static int abilityTarget(int move) {
+        int sq = (move >>> ABILITY_SHIFT) & SQUARE_MASK;
+        return sq == SQUARE_MASK ? -1 : sq;
+    }
+
+    /**
+     * Gets the kind of the captured tile swapped in.
+     *
+     * @param move The encoded move.
+     * @return The kind of the swapped in tile, or -1 if there's no swap.
+     */
+    public static int swapKind(int move) {
+        int kind = (move >>> SWAP_SHIFT) & KIND_MASK;
+        return kind == KIND_MASK ? -1 : kind;
+    }
+
+    /**
+     * Checks whether the move captures a tile.
+     *
+     * @param move The encoded move.
+     * @return true if the move captures, false otherwise.
+     */
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE_BIT) != 0;
+    }
+
+    /**
+     * Renders the move in game coordinates, for example {@code (0,8)->(1,7) *(2,6) ~3 x}.
+     *
+     * @param move The encoded move.
+     * @return The readable form of the move.
+     */
+    public static String toString(int move) {
+        if(move == NONE)
+            return "none";
+
+        var br = new StringBuilder();
+        appendSquare(br, from(move)).append("->");
+        appendSquare(br, to(move));
+
+        if(abilityTarget(move) >= 0)
+            appendSquare(br.append(" *"), abilityTarget(move));
+        if(swapKind(move) >= 0)
+            br.append(" ~").append(swapKind(move));
+        if(isCapture(move))
+            br.append(" x");
+
+        return br.toString();
+    }
+
+    /**
+     * Helper method.
+     * Appends a square in game coordinates.
+     *
+     * @param br The builder to append to.
+     * @param sq The square.
+     * @return The builder.
+     */
+    private static StringBuilder appendSquare(StringBuilder br, int sq) {
+        return br.append('(').append(BoardGeometry.squareX(sq)).append(',').append(BoardGeometry.squareY(sq)).append(')');
+    }
+}
@@ -0,0 +1,141 @@
+package dev.rnandor.paisho;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of encoded moves, see {@link Move}.
+ * Meant to be cleared and reused, so generating moves doesn't allocate once the buffer is large enough.
+ */
+public final class MoveBuffer {
+
+    private int[] moves;
+    private int size;
+
+    /**
+     * Constructs an empty MoveBuffer with a default capacity.
+     */
+    public MoveBuffer() {
+        this(256);
+    }
+
+    /**
+     * Constructs an empty MoveBuffer.
+     *
+     * @param capacity The initial capacity.
+     */
+    public MoveBuffer(int capacity) {
+        this.moves = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Appends a move.
+     *
+     * @param move The encoded move.
+     */
+    public void add(int move) {
+        if(size == moves.length)
+            moves = Arrays.copyOf(moves, size*2);
+
+        moves[size++] = move;
+    }
+
+    /**
+     * Gets a move.
+     *
+     * @param index The index of the move.
+     * @return The encoded move.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public int get(int index) {
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " moves");
+
+        return moves[index];
+    }
+
+    /**
+     * Replaces a move, for example when reordering the moves.
+     *
+     * @param index The index of the move.
+     * @param move The encoded move.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public void set(int index, int move) {
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " moves");
+
+        moves[index] = move;
+    }
+
+    /**
+     * Swaps two moves.
+     *
+     * @param i The index of the first move.
+     * @param j The index of the second move.
+     * @throws IndexOutOfBoundsException if an index is out of bounds.
+     */
+    public void swap(int i, int j) {
+        int tmp = get(i);
+        moves[i] = get(j);
+        moves[j] = tmp;
+    }
+
+    /**
+     * Checks whether the buffer holds the given move.
+     *
+     * @param move The encoded move.
+     * @return true if the move is in the buffer, false otherwise.
+     */
+    public boolean contains(int move) {
+        for(int i = 0; i < size; i++) {
+            if(moves[i] == move)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of moves.
+     *
+     * @return The number of moves.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the buffer is empty.
+     *
+     * @return true if there are no moves, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every move, keeping the capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the moves into a new array.
+     *
+     * @return The moves.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(moves, size);
+    }
+
+    @Override
+    public String toString() {
+        var br = new StringBuilder("[");
+        for(int i = 0; i < size; i++) {
+            if(i > 0)
+                br.append(", ");
+            br.append(Move.toString(moves[i]));
+        }
+        return br.append(']').toString();
+    }
+}
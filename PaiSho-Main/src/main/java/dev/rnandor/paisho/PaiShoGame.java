@@ -1,10 +1,11 @@
 package dev.rnandor.paisho;
 
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
@@ -20,23 +21,53 @@ public abstract class PaiShoGame<T extends Tile> implements Serializable {
 
     private int turn = 1;
 
-    @Setter
     private GameStatus status;
 
+    // operations of the undo log, subclasses start their own from FIRST_CUSTOM_OP
+    private static final int OP_MOVE = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_PUT = 2;
+    private static final int OP_SQUARE = 3;
+    private static final int OP_STATUS = 4;
+    private static final int OP_TURN = 5;
+    private static final int OP_COMPLETED = 6;
+
+    /**
+     * The first undo operation that subclasses may use, see {@link #record(int, Tile, int, int)}.
+     */
+    protected static final int FIRST_CUSTOM_OP = 16;
+
+    @Getter(AccessLevel.NONE)
+    private transient UndoLog undoLog;
+
+    @Getter(AccessLevel.NONE)
+    private transient boolean undoing;
+
+    @Getter(AccessLevel.NONE)
+    private transient PieceLists pieces;
+
+    @Getter(AccessLevel.NONE)
+    private transient long version;
+
+    @Getter(AccessLevel.NONE)
+    private transient int turnInProgress = Move.NONE;
+
+    @Getter(AccessLevel.NONE)
+    private transient TurnListener turnListener;
+
     /**
      * Constructs a PaiShoGame with the specified TileRegistry.
      *
      * @param registry The TileRegistry for the game.
-     * @throws NoSuchMethodException If a required method is not found.
-     * @throws InvocationTargetException If there is an error during tile instantiation.
-     * @throws InstantiationException If there is an error during tile instantiation.
-     * @throws IllegalAccessException If there is illegal access during tile instantiation.
      */
-    protected PaiShoGame(TileRegistry<T> registry) throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        table = new Table();
+    protected PaiShoGame(TileRegistry<T> registry) {
+        table = new Table(registry);
         tiles = new HashSet<>();
         this.registry = registry;
         this.status = GameStatus.RUNNING;
+
+        pieces = new PieceLists(table);
+        table.setChangeListener(new TableObserver());
     }
 
     /**
@@ -44,15 +75,69 @@ public abstract class PaiShoGame<T extends Tile> implements Serializable {
      *
      * @param tileClass The class of the tiles used in the game.
      * @throws TileRegistry.EntryClashException If there is a clash in tile entry IDs.
-     * @throws InvocationTargetException If there is an error during tile instantiation.
-     * @throws NoSuchMethodException If a required method is not found.
-     * @throws InstantiationException If there is an error during tile instantiation.
-     * @throws IllegalAccessException If there is illegal access during tile instantiation.
      */
-    protected PaiShoGame(Class<T> tileClass) throws TileRegistry.EntryClashException, InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+    protected PaiShoGame(Class<T> tileClass) throws TileRegistry.EntryClashException {
         this(new TileRegistry<>(tileClass));
     }
 
+    /**
+     * Creates the tiles of a starting layout with the factories of the registry and puts them on the table.
+     *
+     * @param layout The tiles of the layout.
+     * @param host true to create the tiles of the host, false for the guest.
+     * @throws IllegalArgumentException if a tile code is not registered.
+     */
+    protected final void setUp(Placement[] layout, boolean host) {
+        for(var placement : layout) {
+            int kind = registry.getIndex(placement.code());
+            if(kind < 0)
+                throw new IllegalArgumentException("Unknown tile code: " + placement.code());
+
+            table.put(createTile(kind, host, BoardGeometry.square(placement.x(), placement.y())));
+        }
+    }
+
+    /**
+     * Creates a tile with the factory of its kind and adds it to the tiles of the game, without putting it on the table.
+     *
+     * @param kind The kind of the tile, see {@link TileRegistry#getIndex(Class)}.
+     * @param host true to create a tile of the host, false for the guest.
+     * @param square The square of the tile.
+     * @return The new tile.
+     * @throws IndexOutOfBoundsException if the kind is not registered.
+     */
+    protected final T createTile(int kind, boolean host, int square) {
+        T tile = registry.getFactory(kind).create(host, table, BoardGeometry.squareX(square), BoardGeometry.squareY(square));
+        tileCreated(tile);
+        tiles.add(tile);
+        return tile;
+    }
+
+    /**
+     * Called by {@link #createTile(int, boolean, int)} for every new tile, before it's put on the table.
+     * Meant for subclasses that link the tiles to the game or keep track of particular tiles.
+     *
+     * @param tile The new tile.
+     */
+    protected void tileCreated(T tile) {
+    }
+
+    /**
+     * Restores the turn number and the status of the game, for games built from a saved state.
+     * Not recorded for {@link #unmakeTurn()}.
+     *
+     * @param turn The turn number, starting from 1.
+     * @param status The status of the game.
+     * @throws IllegalArgumentException if the turn number is less than 1.
+     */
+    protected final void restoreProgress(int turn, GameStatus status) {
+        if(turn < 1)
+            throw new IllegalArgumentException("Turn numbers start from 1, got " + turn);
+
+        this.turn = turn;
+        this.status = status;
+    }
+
     /**
      * Checks if it's the host player's turn.
      *
@@ -72,11 +157,296 @@ public abstract class PaiShoGame<T extends Tile> implements Serializable {
     }
 
     /**
-     * Advances the game to the next turn if the game is running.
+     * Advances the game to the next turn if the game is running, and reports the turn in progress to the
+     * {@link TurnListener}, even when it ended the game.
      */
     public final void nextTurn() {
-        if(isGameRunning())
+        int move = turnInProgress;
+        turnInProgress = Move.NONE;
+
+        if(isGameRunning()) {
+            record(OP_TURN, null, 0, turn);
             turn++;
+        }
+
+        if(move == Move.NONE || turnListener == null)
+            return;
+
+        // turns that can still be unmade are reported once they're committed
+        if(getUndoDepth() > 0)
+            record(OP_COMPLETED, null, 0, move);
+        else
+            turnListener.turnCompleted(move, true);
+    }
+
+    /**
+     * Gets the turn being played, the parts played so far since the last {@link #nextTurn()}.
+     *
+     * @return The turn encoded as described in {@link Move}, or {@link Move#NONE} if nothing was played yet.
+     */
+    public final int getTurnInProgress() {
+        return turnInProgress;
+    }
+
+    /**
+     * Sets the turn being played, reported to the {@link TurnListener} by the next {@link #nextTurn()}.
+     * Called by the tiles and the game as the parts of a turn are played: the move, the ability and the swap.
+     *
+     * @param move The turn encoded as described in {@link Move}, {@link Move#NONE} to report nothing.
+     */
+    public final void setTurnInProgress(int move) {
+        turnInProgress = move;
+    }
+
+    /**
+     * Sets the listener notified about every completed turn, replacing the previous one.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public final void setTurnListener(TurnListener listener) {
+        turnListener = listener;
+    }
+
+    /**
+     * Sets the status of the game.
+     *
+     * @param status The new status.
+     */
+    public final void setStatus(GameStatus status) {
+        if(this.status == status)
+            return;
+
+        record(OP_STATUS, null, this.status.ordinal(), 0);
+        this.status = status;
+    }
+
+    /**
+     * Starts a turn that can be taken back with {@link #unmakeTurn()}.
+     * Every change of the game is recorded until then, including the ones made by the tiles' abilities and callbacks.
+     * Turns can be nested, they're unmade in reverse order.
+     */
+    public final void beginTurn() {
+        if(undoLog == null)
+            undoLog = new UndoLog();
+
+        undoLog.begin();
+    }
+
+    /**
+     * Takes back everything that happened since the matching {@link #beginTurn()}.
+     * The cost depends only on the number of changes made during the turn, not on the size of the game.
+     *
+     * @throws IllegalStateException if there's no turn to unmake.
+     */
+    public final void unmakeTurn() {
+        if(undoLog == null)
+            throw new IllegalStateException("There's no turn to unmake.");
+
+        int start = undoLog.end();
+        version++;
+        undoing = true;
+        try {
+            for(int i = undoLog.size()-1; i >= start; i--)
+                revert(undoLog.op(i), undoLog.subject(i), undoLog.a(i), undoLog.b(i));
+        } finally {
+            undoing = false;
+            undoLog.truncate(start);
+        }
+    }
+
+    /**
+     * Appends every complete legal turn of the side to move to the buffer, encoded as described in {@link Move}.
+     *
+     * @param buffer The buffer to append to, it's not cleared.
+     * @return The number of appended turns, 0 if the game is over.
+     */
+    public abstract int generateLegalTurns(MoveBuffer buffer);
+
+    /**
+     * Takes a complete turn, which can be taken back with {@link #unmakeTurn()}.
+     * The turn is not validated, it should come from the game's move generators.
+     *
+     * @param move The turn, encoded as described in {@link Move}.
+     * @throws IllegalArgumentException if the move doesn't fit the current position.
+     */
+    public abstract void makeTurn(int move);
+
+    /**
+     * Forgets every turn that could be unmade, making the current position final.
+     * Turns taken with {@link #makeTurn(int)} that are not meant to be taken back should be committed,
+     * so the undo stack doesn't keep growing. The committed turns are reported to the {@link TurnListener}.
+     */
+    public final void commitTurns() {
+        if(undoLog == null)
+            return;
+
+        if(turnListener == null) {
+            undoLog.reset();
+            return;
+        }
+
+        var completed = new MoveBuffer();
+        for(int i = 0; i < undoLog.size(); i++)
+            if(undoLog.op(i) == OP_COMPLETED)
+                completed.add(undoLog.b(i));
+        undoLog.reset();
+
+        // the game stands after the last turn only, unless another one was started since
+        for(int i = 0; i < completed.size(); i++)
+            turnListener.turnCompleted(completed.get(i), i == completed.size()-1 && turnInProgress == Move.NONE);
+    }
+
+    /**
+     * Gets the number of turns that can currently be unmade.
+     *
+     * @return The number of open turns.
+     */
+    public final int getUndoDepth() {
+        return undoLog == null ? 0 : undoLog.depth();
+    }
+
+    /**
+     * Gets the version of the game, which grows with every change, including the ones made by {@link #unmakeTurn()}.
+     * Two equal versions of the same game mean nothing changed in between.
+     * Like the rest of the game it should only be read by the thread changing the game.
+     *
+     * @return The version of the game.
+     */
+    public final long getVersion() {
+        return version;
+    }
+
+    /**
+     * Records a change, so it can be taken back by {@link #unmakeTurn()}, and counts it in the version of the game.
+     * Nothing is recorded outside turns started with {@link #beginTurn()}, or while a turn is being unmade.
+     *
+     * @param op The operation, subclasses should use {@link #FIRST_CUSTOM_OP} and above.
+     * @param subject The tile the change is about, may be null.
+     * @param a The first argument, in the range [0, 2^24).
+     * @param b The second argument.
+     */
+    protected final void record(int op, Tile subject, int a, int b) {
+        version++;
+        if(undoing || undoLog == null || !undoLog.isRecording())
+            return;
+
+        undoLog.push(op, subject, a, b);
+    }
+
+    /**
+     * Sets the square of a tile that is not on the table, like a captured one, so it can be taken back.
+     *
+     * @param tile The tile.
+     * @param square The new square of the tile.
+     */
+    protected final void setOffTableSquare(Tile tile, int square) {
+        record(OP_SQUARE, tile, tile.getSquare(), 0);
+        tile.setSquare(square);
+    }
+
+    /**
+     * Takes back a recorded change.
+     * Should be overridden by subclasses that record their own operations, calling this for the others.
+     *
+     * @param op The operation.
+     * @param subject The tile the change is about, may be null.
+     * @param a The first argument.
+     * @param b The second argument.
+     * @throws IllegalStateException if the operation is unknown.
+     */
+    protected void revert(int op, Tile subject, int a, int b) {
+        switch(op) {
+            case OP_MOVE -> table.relocate(b, a);
+            case OP_REMOVE -> {
+                subject.setSquare(a);
+                table.put(subject);
+            }
+            case OP_PUT -> table.remove(a);
+            case OP_SQUARE -> subject.setSquare(a);
+            case OP_STATUS -> status = GameStatus.values()[a];
+            case OP_TURN -> turn = b;
+            case OP_COMPLETED -> {
+                // the turn is taken back, so it was never completed
+            }
+            default -> throw new IllegalStateException("Unknown undo operation: " + op);
+        }
+    }
+
+    /**
+     * Gets the number of tiles of a kind a player has on the table. Captured tiles are not counted.
+     *
+     * @param host true for the host, false for the guest.
+     * @param kind The kind of the tiles, see {@link Table#kindOf(Tile)} and {@link TileRegistry#getIndex(String)}.
+     * @return The number of tiles.
+     * @throws IndexOutOfBoundsException if the kind is out of bounds.
+     */
+    public final int getPieceCount(boolean host, int kind) {
+        return pieces.count(host, kind);
+    }
+
+    /**
+     * Gets a tile of a kind a player has on the table.
+     * Together with {@link #getPieceCount(boolean, int)} it allows iterating the tiles of a kind without allocating.
+     * The order of the tiles may change as tiles leave and return to the table.
+     *
+     * @param host true for the host, false for the guest.
+     * @param kind The kind of the tile, see {@link Table#kindOf(Tile)} and {@link TileRegistry#getIndex(String)}.
+     * @param index The index of the tile, in the range [0, getPieceCount(host, kind)).
+     * @return The tile.
+     * @throws IndexOutOfBoundsException if the kind or the index is out of bounds.
+     */
+    @SuppressWarnings("unchecked")
+    public final T getPiece(boolean host, int kind, int index) {
+        return (T) pieces.get(host, kind, index);
+    }
+
+    /**
+     * Called after a square of the table changed, including while a turn is being unmade.
+     * Meant for subclasses that keep summaries of the position up to date.
+     *
+     * @param tile The tile that was moved away, removed or put down.
+     * @param square The square that changed.
+     */
+    protected void squareChanged(Tile tile, int square) {}
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        pieces = new PieceLists(table);
+        for(var host : new boolean[] { true, false }) {
+            var occupancy = table.getOccupancy(host);
+            for(int sq = occupancy.nextSetBit(0); sq >= 0; sq = occupancy.nextSetBit(sq+1))
+                pieces.add(table.tileAt(sq));
+        }
+        table.setChangeListener(new TableObserver());
+    }
+
+    /**
+     * Keeps the undo log and the piece lists in step with the table, and reports its changes to
+     * {@link #squareChanged(Tile, int)}.
+     */
+    private final class TableObserver implements Table.ChangeListener {
+
+        @Override
+        public void tileMoved(Tile t, int from, int to) {
+            record(OP_MOVE, null, from, to);
+            squareChanged(t, from);
+            squareChanged(t, to);
+        }
+
+        @Override
+        public void tileRemoved(Tile t, int sq) {
+            record(OP_REMOVE, t, sq, 0);
+            pieces.remove(t);
+            squareChanged(t, sq);
+        }
+
+        @Override
+        public void tilePut(Tile t, int sq) {
+            record(OP_PUT, t, sq, 0);
+            pieces.add(t);
+            squareChanged(t, sq);
+        }
     }
 
     /**
@@ -97,6 +467,36 @@ public abstract class PaiShoGame<T extends Tile> implements Serializable {
         return !isGameRunning();
     }
 
+    /**
+     * Gets the Zobrist key of the position, covering the tiles on the table, the side to move and the rule variants.
+     *
+     * @return The 64-bit key of the position.
+     */
+    public final long getKey() {
+        return table.getKey() ^ (turn%2 == 1 ? Zobrist.guestToMove() : 0) ^ getVariantKey();
+    }
+
+    /**
+     * Gets the canonical key of the position, which is the same for every game in the same position, however it
+     * got there. Used to find positions across games, see {@link dev.rnandor.paisho.io.PositionIndex}.
+     * Should be overridden by games whose positions hold more than {@link #getKey()} covers.
+     *
+     * @return The 64-bit key of the position.
+     */
+    public long getPositionKey() {
+        return getKey();
+    }
+
+    /**
+     * Gets the part of the Zobrist key that depends on the enabled rule variants.
+     * Should be overridden by games with rule variants, see {@link Zobrist#variant(int)}.
+     *
+     * @return The key of the enabled rule variants.
+     */
+    protected long getVariantKey() {
+        return 0;
+    }
+
     /**
      * Checks for a draw condition in the game.
      * Should be implemented by subclasses.
@@ -106,6 +506,42 @@ public abstract class PaiShoGame<T extends Tile> implements Serializable {
      */
     public abstract boolean checkForDraw();
 
+    /**
+     * A tile of a starting layout.
+     *
+     * @param code The registry code of the tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     */
+    public record Placement(String code, int x, int y) {
+
+        /**
+         * Mirrors the placement through the centre of the table, where the other player's tile of the layout stands.
+         *
+         * @return The mirrored placement.
+         */
+        public Placement mirrored() {
+            return new Placement(code, -x, -y);
+        }
+    }
+
+    /**
+     * Receives every turn once it's completed by {@link #nextTurn()} and can't be unmade anymore.
+     * Turns played between {@link #beginTurn()} and {@link #unmakeTurn()} are never reported, the ones kept with
+     * {@link #commitTurns()} are reported when committed.
+     * The listener isn't serialized, it should be registered again after loading.
+     */
+    @FunctionalInterface
+    public interface TurnListener {
+
+        /**
+         * Called after a turn was completed.
+         * @param move The turn, encoded as described in {@link Move}.
+         * @param settled Whether the game stands right after the turn, false for committed turns followed by others.
+         */
+        void turnCompleted(int move, boolean settled);
+    }
+
     // Enum representing the status of the game.
     public enum GameStatus {
         RUNNING,
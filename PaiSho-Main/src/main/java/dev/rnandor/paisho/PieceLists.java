@@ -0,0 +1,106 @@
+package dev.rnandor.paisho;
+
+import java.util.Arrays;
+
+/**
+ * The tiles on the table, listed by player and kind, see {@link Table#kindOf(Tile)}.
+ * The lists are tiny, a player rarely has more than two tiles of a kind, so they're plain arrays searched linearly.
+ * A tile joins its list before the tiles on higher squares, so the order only depends on the history of the game.
+ */
+final class PieceLists {
+
+    private final Table table;
+    private final int kinds;
+    private final Tile[][] lists;
+    private final int[] counts;
+
+    /**
+     * Constructs empty PieceLists.
+     *
+     * @param table The table, resolves the kinds of the tiles.
+     */
+    PieceLists(Table table) {
+        this.table = table;
+        this.kinds = table.getKindCount();
+        this.lists = new Tile[kinds*2][2];
+        this.counts = new int[kinds*2];
+    }
+
+    /**
+     * Adds a tile that was put on the table.
+     *
+     * @param t The tile.
+     */
+    void add(Tile t) {
+        int list = index(t.isHost(), table.kindOf(t));
+        if(counts[list] == lists[list].length)
+            lists[list] = Arrays.copyOf(lists[list], counts[list]*2);
+
+        var tiles = lists[list];
+        int i = counts[list]++;
+        for(; i > 0 && tiles[i-1].getSquare() > t.getSquare(); i--)
+            tiles[i] = tiles[i-1];
+        tiles[i] = t;
+    }
+
+    /**
+     * Removes a tile that was taken off the table.
+     *
+     * @param t The tile.
+     */
+    void remove(Tile t) {
+        int list = index(t.isHost(), table.kindOf(t));
+        var tiles = lists[list];
+        for(int i = 0; i < counts[list]; i++) {
+            if(tiles[i] == t) {
+                System.arraycopy(tiles, i+1, tiles, i, counts[list]-i-1);
+                tiles[--counts[list]] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of tiles of a kind.
+     *
+     * @param host true for the host, false for the guest.
+     * @param kind The kind.
+     * @return The number of tiles.
+     */
+    int count(boolean host, int kind) {
+        return counts[index(host, kind)];
+    }
+
+    /**
+     * Gets a tile of a kind.
+     *
+     * @param host true for the host, false for the guest.
+     * @param kind The kind.
+     * @param i The index of the tile, in the range [0, count(host, kind)).
+     * @return The tile.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    Tile get(boolean host, int kind, int i) {
+        int list = index(host, kind);
+        if(i < 0 || i >= counts[list])
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for " + counts[list] + " tiles");
+
+        return lists[list][i];
+    }
+
+    /**
+     * Helper method.
+     * Gets the index of a list.
+     *
+     * @param host true for the host, false for the guest.
+     * @param kind The kind.
+     * @return The index of the list.
+     * @throws IndexOutOfBoundsException if the kind is out of bounds.
+     */
+    private int index(boolean host, int kind) {
+        if(kind < 0 || kind >= kinds)
+            throw new IndexOutOfBoundsException("Kind " + kind + " out of bounds for " + kinds + " kinds");
+
+        return host ? kind : kinds + kind;
+    }
+}
@@ -2,6 +2,7 @@ package dev.rnandor.paisho;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
@@ -12,79 +13,59 @@ import static dev.rnandor.paisho.Table.Locale.*;
 
 @Slf4j
 public class Table implements Serializable {
-    private Tile[][] tiles = new Tile[17][17];
-    private int[][] types = new int[17][17];
+    private final Tile[] tiles = new Tile[BoardGeometry.SQUARES];
 
-    /**
-     * Constructs a new Pai Sho table with predefined locales.
-     */
-    public Table() {
-        // Western Temple
-        types[0][7] = WESTERN_TEMPLE.flag;
-        types[0][8] = WESTERN_TEMPLE.flag;
-        types[0][9] = WESTERN_TEMPLE.flag;
-        types[1][8] = WESTERN_TEMPLE.flag;
-
-        // Eastern Temple
-        types[16][7] = EASTERN_TEMPLE.flag;
-        types[16][8] = EASTERN_TEMPLE.flag;
-        types[16][9] = EASTERN_TEMPLE.flag;
-        types[15][8] = EASTERN_TEMPLE.flag;
-
-        // Southern Temple
-        types[7][0] = SOUTHERN_TEMPLE.flag;
-        types[8][0] = SOUTHERN_TEMPLE.flag;
-        types[9][0] = SOUTHERN_TEMPLE.flag;
-        types[8][1] = SOUTHERN_TEMPLE.flag;
-
-        // Northern Temple
-        types[7][16] = NORTHERN_TEMPLE.flag;
-        types[8][16] = NORTHERN_TEMPLE.flag;
-        types[9][16] = NORTHERN_TEMPLE.flag;
-        types[8][15] = NORTHERN_TEMPLE.flag;
-
-        // Gardens
-        for(int x = -7; x <= 7; x++) {
-            for (int y = -7; y <= 7; y++) {
-                int flag = x*y > 0 ? WHITE_GARDEN.flag : RED_GARDEN.flag; // if the sign matches, it's a white garden
-                if(x*y == 0) flag |= WHITE_GARDEN.flag;              // if either axis is on the 0, it's both
-
-                if(Math.abs(x) + Math.abs(y) > 7)
-                    continue;
-
-                types[x+8][y+8] |= flag;                         // setting the selected garden type(s)
-            }
-        }
+    // occupancy, indexed by square: see BoardGeometry.square(int, int)
+    private final BitBoard hostOccupancy = new BitBoard();
+    private final BitBoard guestOccupancy = new BitBoard();
+    private final BitBoard[] hostKinds;
+    private final BitBoard[] guestKinds;
 
+    private final TileRegistry<?> registry;
 
-        // debug print
-        log.debug("Usable area");
-        for(int i = 8; i >= -8; i--) {
-            for (int j = -8; j <= 8; j++) {
-                int dist = (int) Math.sqrt(i * i + j * j);
-                if(dist <= 8)
-                    System.out.print("o ");
-                else
-                    System.out.print("- ");
-            }
-            System.out.println();
-        }
-        System.out.println();
+    // Zobrist key of the placed tiles, see Zobrist
+    private long key;
 
-        log.debug("Table layout");
-        var chars1 = "o ░_▒_#¤■";
-        for(int x = 8; x >= -8; x--) {
-            for (int y = -8; y <= 8; y++) {
-                boolean isValid = isValidPosition(x, y);
+    // notified about every change of the tiles, see ChangeListener
+    @Setter
+    private transient ChangeListener changeListener;
 
-                char c = isValid ? chars1.charAt(Math.min(types[y+8][x+8], (NORTHERN_TEMPLE.flag))) : ' ';
+    /**
+     * Constructs a new, empty Pai Sho table. The locales are shared by every table, see {@link BoardGeometry}.
+     * Every tile is tracked as the same kind, use {@link #Table(TileRegistry)} for per-kind occupancy.
+     */
+    public Table() {
+        this(null);
+    }
 
-                System.out.print(c+" ");
-            }
-            System.out.println();
+    /**
+     * Constructs a new, empty Pai Sho table. The locales are shared by every table, see {@link BoardGeometry}.
+     *
+     * @param registry The registry used to resolve the kind of the placed tiles, may be null.
+     */
+    public Table(TileRegistry<?> registry) {
+        this.registry = registry;
+
+        int kinds = registry == null ? 1 : Math.max(1, registry.size());
+        if(kinds > Zobrist.MAX_KINDS)
+            throw new IllegalArgumentException("A table supports at most " + Zobrist.MAX_KINDS + " kinds of tiles.");
+
+        hostKinds = new BitBoard[kinds];
+        guestKinds = new BitBoard[kinds];
+        for(int i = 0; i < kinds; i++) {
+            hostKinds[i] = new BitBoard();
+            guestKinds[i] = new BitBoard();
         }
     }
 
+    /**
+     * Renders the layout of the table, for debugging purposes.
+     *
+     * @return A multi-line drawing of the table, see {@link BoardGeometry#render()}.
+     */
+    public static String renderLayout() {
+        return BoardGeometry.render();
+    }
 
     /**
      * This method checks if the given coordinates are within the table bounds.
@@ -95,11 +76,7 @@ public class Table implements Serializable {
      * @return True if the coordinates are within the table bounds, false otherwise.
      */
     public boolean isValidPosition(int x, int y) {
-        var a = Math.abs(x);
-        var b = Math.abs(y);
-
-        //return x*x + y*y <= 81; // circle check
-        return (a <= 8 && b <= 8) && (a + b <= 12); // diamond check
+        return BoardGeometry.isValidPosition(x, y);
     }
 
     /**
@@ -113,6 +90,16 @@ public class Table implements Serializable {
         return isValidPosition(pos.getX(), pos.getY());
     }
 
+    /**
+     * Checks if the given square index is within the table bounds.
+     *
+     * @param sq The square index to check, see {@link BoardGeometry#square(int, int)}.
+     * @return True if the square is within the table bounds, false otherwise.
+     */
+    public boolean isValidSquare(int sq) {
+        return BoardGeometry.isValidSquare(sq);
+    }
+
     /**
      * Moves a tile from one position to another.
      * @param x1 The x coordinate of the tile to move.
@@ -124,23 +111,54 @@ public class Table implements Serializable {
      *                                  or if there's already a tile at the target coordinates.
      */
     public boolean move(int x1, int y1, int x2, int y2) {
-        if(!isValidPosition(x1, y1) || !isValidPosition(x2, y2))
+        return move(BoardGeometry.toSquare(x1, y1), BoardGeometry.toSquare(x2, y2));
+    }
+
+    /**
+     * Moves a tile from one square to another.
+     * @param from The square of the tile to move.
+     * @param to The target square.
+     * @return true if the tile was moved successfully, false otherwise.
+     * @throws IllegalArgumentException if the source or target squares are invalid,
+     *                                  or if there's already a tile at the target square.
+     */
+    public boolean move(int from, int to) {
+        if(!relocate(from, to))
+            return false;
+
+        tiles[to].afterMoved();
+        return true;
+    }
+
+    /**
+     * Moves a tile from one square to another, without calling {@link Tile#afterMoved()}.
+     * Used to restore earlier states, where the callbacks already had their effect.
+     * @param from The square of the tile to move.
+     * @param to The target square.
+     * @return true if the tile was moved successfully, false otherwise.
+     * @throws IllegalArgumentException if the source or target squares are invalid,
+     *                                  or if there's already a tile at the target square.
+     */
+    public boolean relocate(int from, int to) {
+        if(!isValidSquare(from) || !isValidSquare(to))
             throw new IllegalArgumentException("Invalid coordinates");
 
-        if(getTile(x2, y2).isPresent())
+        if(tiles[to] != null)
             throw new IllegalArgumentException("There's another Tile at the target coordinates.");
 
-        var coords1 = fromGameCoords(x1, y1);
-        var coords2 = fromGameCoords(x2, y2);
+        var moved = tiles[from];
+        if(moved == null)
+            return false;
 
-        tiles[coords2[0]][coords2[1]] = tiles[coords1[0]][coords1[1]];
-        tiles[coords1[0]][coords1[1]] = null;
+        tiles[to] = moved;
+        tiles[from] = null;
+        unmark(moved, from);
+        mark(moved, to);
+        moved.setSquare(to);
 
-        getTile(x2, y2).ifPresent(t -> {
-          t.setPosition(x2, y2);
-          t.afterMoved();
-        });
-        return getTile(x2, y2).isPresent();
+        if(changeListener != null)
+            changeListener.tileMoved(moved, from, to);
+        return true;
     }
 
     /**
@@ -152,10 +170,21 @@ public class Table implements Serializable {
      * @throws IllegalArgumentException if the tile is not on this board.
      */
     public boolean move(Tile t, int x, int y) {
-        if(this.getTile(t.getPosition()).orElse(null) != t)
+        return this.move(t, BoardGeometry.toSquare(x, y));
+    }
+
+    /**
+     * Moves a tile to the specified square.
+     * @param t The tile to move.
+     * @param to The target square.
+     * @return true if the tile was moved successfully, false otherwise.
+     * @throws IllegalArgumentException if the tile is not on this board.
+     */
+    public boolean move(Tile t, int to) {
+        if(tiles[t.getSquare()] != t)
             throw new IllegalArgumentException("Given Tile is not on this board.");
 
-        return this.move(t.getPosition().getX(), t.getPosition().getY(), x, y);
+        return this.move(t.getSquare(), to);
     }
 
     /**
@@ -174,8 +203,23 @@ public class Table implements Serializable {
      * @param y The y coordinate of the tile to remove.
      */
     public void remove(int x, int y) {
-        var coords = fromGameCoords(x, y);
-        tiles[coords[0]][coords[1]] = null;
+        remove(BoardGeometry.toSquare(x, y));
+    }
+
+    /**
+     * Removes a tile from the table at the specified square.
+     * @param sq The square of the tile to remove.
+     */
+    public void remove(int sq) {
+        var t = tiles[sq];
+        if(t == null)
+            return;
+
+        tiles[sq] = null;
+        unmark(t, sq);
+
+        if(changeListener != null)
+            changeListener.tileRemoved(t, sq);
     }
 
     /**
@@ -184,10 +228,10 @@ public class Table implements Serializable {
      * @throws IllegalArgumentException if the tile is not on this board.
      */
     public void remove(Tile t) {
-        if(this.getTile(t.getPosition()).orElse(null) != t)
+        if(tiles[t.getSquare()] != t)
             throw new IllegalArgumentException("Given Tile is not on this board.");
 
-        this.remove(t.getPosition().getX(), t.getPosition().getY());
+        this.remove(t.getSquare());
     }
 
     /**
@@ -196,17 +240,142 @@ public class Table implements Serializable {
      * @throws IllegalArgumentException if there's already a tile at the target position.
      */
     public void put(Tile t) {
-        var pos = t.getPosition();
-        var coords = fromGameCoords(pos.getX(), pos.getY());
-        if(tiles[coords[0]][coords[1]] != null) {
+        int sq = t.getSquare();
+        if(tiles[sq] != null) {
             throw new IllegalArgumentException("Given Tile cannot be placed as there's another Tile already at the target position.");
         }
 
-        tiles[coords[0]][coords[1]] = t;
+        tiles[sq] = t;
+        mark(t, sq);
+
+        if(changeListener != null)
+            changeListener.tilePut(t, sq);
+    }
+
+    /**
+     * Adds the tile to the occupancy bitboards at the given square.
+     * @param t The tile.
+     * @param sq The square index.
+     */
+    private void mark(Tile t, int sq) {
+        int kind = kindOf(t);
+        (t.isHost() ? hostOccupancy : guestOccupancy).set(sq);
+        (t.isHost() ? hostKinds : guestKinds)[kind].set(sq);
+        key ^= Zobrist.tile(kind, t.isHost(), sq);
+    }
+
+    /**
+     * Removes the tile from the occupancy bitboards at the given square.
+     * @param t The tile.
+     * @param sq The square index.
+     */
+    private void unmark(Tile t, int sq) {
+        int kind = kindOf(t);
+        (t.isHost() ? hostOccupancy : guestOccupancy).clear(sq);
+        (t.isHost() ? hostKinds : guestKinds)[kind].clear(sq);
+        key ^= Zobrist.tile(kind, t.isHost(), sq);
+    }
+
+    /**
+     * Gets the Zobrist key of the tiles on the table, which covers their kind, owner and square.
+     * It's kept up to date by every move, put and remove, tables holding the same tiles on the same squares share the key.
+     * @return The 64-bit key of the table.
+     */
+    public final long getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the number of kinds the table tells apart.
+     * @return The number of kinds, at least 1.
+     */
+    public final int getKindCount() {
+        return hostKinds.length;
+    }
+
+    /**
+     * Resolves the kind of the tile, which is its index in the registry.
+     * @param t The tile.
+     * @return The kind of the tile.
+     * @throws IllegalArgumentException if the tile is not registered.
+     */
+    public int kindOf(Tile t) {
+        if(registry == null)
+            return 0;
+
+        int kind = registry.getIndex(t.getClass());
+        if(kind < 0)
+            throw new IllegalArgumentException("Tile type " + t.getClass().getName() + " is not registered.");
+        return kind;
+    }
+
+    /**
+     * Checks whether there's a tile at the specified position.
+     * @param x The x coordinate to check.
+     * @param y The y coordinate to check.
+     * @return true if the position is occupied, false otherwise.
+     * @throws IndexOutOfBoundsException if the coordinates are out of bounds.
+     */
+    public final boolean isOccupied(int x, int y) {
+        if(!isValidPosition(x, y))
+            throw new IndexOutOfBoundsException("Coordinates out of bounds");
+
+        int sq = BoardGeometry.square(x, y);
+        return hostOccupancy.get(sq) || guestOccupancy.get(sq);
+    }
+
+    /**
+     * Checks whether there's a host tile at the specified position.
+     * @param x The x coordinate to check.
+     * @param y The y coordinate to check.
+     * @return true if a host tile is at the position, false otherwise.
+     * @throws IndexOutOfBoundsException if the coordinates are out of bounds.
+     */
+    public final boolean isHostAt(int x, int y) {
+        if(!isValidPosition(x, y))
+            throw new IndexOutOfBoundsException("Coordinates out of bounds");
+
+        return hostOccupancy.get(BoardGeometry.square(x, y));
+    }
+
+    /**
+     * Checks whether there's a guest tile at the specified position.
+     * @param x The x coordinate to check.
+     * @param y The y coordinate to check.
+     * @return true if a guest tile is at the position, false otherwise.
+     * @throws IndexOutOfBoundsException if the coordinates are out of bounds.
+     */
+    public final boolean isGuestAt(int x, int y) {
+        if(!isValidPosition(x, y))
+            throw new IndexOutOfBoundsException("Coordinates out of bounds");
+
+        return guestOccupancy.get(BoardGeometry.square(x, y));
+    }
+
+    /**
+     * Gets the squares occupied by one side.
+     * The returned BitBoard is owned by the table and must not be modified.
+     * @param host true for the host tiles, false for the guest tiles.
+     * @return The occupancy of the side.
+     */
+    public final BitBoard getOccupancy(boolean host) {
+        return host ? hostOccupancy : guestOccupancy;
+    }
+
+    /**
+     * Gets the squares occupied by one kind of tile of one side.
+     * The returned BitBoard is owned by the table and must not be modified.
+     * @param host true for the host tiles, false for the guest tiles.
+     * @param kind The kind of the tiles, see {@link #kindOf(Tile)}.
+     * @return The occupancy of the kind.
+     */
+    public final BitBoard getOccupancy(boolean host, int kind) {
+        return (host ? hostKinds : guestKinds)[kind];
     }
 
     /**
      * Converts game coordinates to array indices.
+     * Allocates, so it's meant for presentation code, use {@link BoardGeometry#square(int, int)} elsewhere.
      * @param x The x coordinate in game space.
      * @param y The y coordinate in game space.
      * @return An array containing the corresponding array indices.
@@ -225,9 +394,51 @@ public class Table implements Serializable {
         if(!isValidPosition(x, y))
             throw new IndexOutOfBoundsException("Coordinates out of bounds");
 
-        var coords = fromGameCoords(x, y);
+        return getTile(BoardGeometry.square(x, y));
+    }
+
+    /**
+     * Gets the tile at the specified square.
+     * @param sq The square to check.
+     * @return An Optional containing the tile if the square is occupied, otherwise an empty Optional.
+     * @throws IndexOutOfBoundsException if the square is out of bounds.
+     */
+    public final Optional<Tile> getTile(int sq) {
+        if(!isValidSquare(sq))
+            throw new IndexOutOfBoundsException("Coordinates out of bounds");
+
+        if(!hostOccupancy.get(sq) && !guestOccupancy.get(sq))
+            return Optional.empty();
+
+        return Optional.of(tiles[sq]);
+    }
+
+    /**
+     * Gets the tile at the specified square, without bounds checks or wrapping.
+     * Meant for rule code that already works with valid squares, external callers should use {@link #getTile(int)}.
+     * @param sq The square to check, not checked.
+     * @return The tile at the square, or null if the square is empty.
+     */
+    public final Tile tileAt(int sq) {
+        return tiles[sq];
+    }
+
+    /**
+     * Checks whether there's a tile at the specified square, without bounds checks.
+     * @param sq The square to check, not checked.
+     * @return true if the square is occupied, false otherwise.
+     */
+    public final boolean isOccupied(int sq) {
+        return tiles[sq] != null;
+    }
 
-        return Optional.ofNullable(tiles[coords[0]][coords[1]]);
+    /**
+     * Gets the locale flags of the specified square, without bounds checks or boxing.
+     * @param sq The square to check, not checked.
+     * @return The locale flags of the square, see {@link Locale}.
+     */
+    public final int localeFlags(int sq) {
+        return BoardGeometry.locale(sq);
     }
 
     /**
@@ -249,9 +460,20 @@ public class Table implements Serializable {
         if(!isValidPosition(x, y))
             throw new IndexOutOfBoundsException("Coordinates out of bounds");
 
-        var coords = fromGameCoords(x, y);
+        return getType(BoardGeometry.square(x, y));
+    }
+
+    /**
+     * Gets the type of the locale at the specified square.
+     * @param sq The square to check.
+     * @return An Optional containing the type of the locale.
+     * @throws IndexOutOfBoundsException if the square is out of bounds.
+     */
+    public final Optional<Integer> getType(int sq) {
+        if(!isValidSquare(sq))
+            throw new IndexOutOfBoundsException("Coordinates out of bounds");
 
-        return Optional.of(types[coords[0]][coords[1]]);
+        return Optional.of(BoardGeometry.locale(sq));
     }
 
     /**
@@ -313,6 +535,35 @@ public class Table implements Serializable {
         return type == NEUTRAL_GARDEN.flag;
     }
 
+    /**
+     * Receives every change of the tiles on a table, after it happened.
+     * The listener isn't serialized, the owner of the table should register it again after loading.
+     */
+    public interface ChangeListener {
+
+        /**
+         * Called after a tile moved from one square to another.
+         * @param t The moved tile.
+         * @param from The square the tile left.
+         * @param to The square the tile arrived at.
+         */
+        void tileMoved(Tile t, int from, int to);
+
+        /**
+         * Called after a tile was removed from the table.
+         * @param t The removed tile.
+         * @param sq The square the tile was removed from.
+         */
+        void tileRemoved(Tile t, int sq);
+
+        /**
+         * Called after a tile was placed on the table.
+         * @param t The placed tile.
+         * @param sq The square the tile was placed on.
+         */
+        void tilePut(Tile t, int sq);
+    }
+
     /**
      * Locales on the Pai Sho table.
      */
@@ -15,8 +15,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
 
     protected final Table table;
 
-    private int locX;
-    private int locY;
+    private int square;
 
     /**
      * Constructs a new Tile with default position (0,0).
@@ -42,8 +41,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
         this.name = name;
         this.host = host;
         this.table = table;
-        this.locX = locX;
-        this.locY = locY;
+        this.square = BoardGeometry.square(locX, locY);
     }
 
     /**
@@ -62,13 +60,58 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
      */
     public abstract List<Position> getValidMoves();
 
+    /**
+     * Collects the target squares of the valid moves of the tile, without allocating.
+     *
+     * @param squares The array to write the target squares into, it should hold at least {@link BoardGeometry#SQUARES} entries.
+     * @return The number of target squares written.
+     */
+    public abstract int getValidMoves(int[] squares);
+
     /**
      * Gets the position of the tile.
+     * Allocates a new Position on every call, prefer {@link #getSquare()} in rule code.
      *
      * @return The current position of the tile.
      */
     public final Position getPosition() {
-        return new Position(locX, locY);
+        return new Position(getX(), getY());
+    }
+
+    /**
+     * Gets the square of the tile, see {@link BoardGeometry#square(int, int)}.
+     *
+     * @return The current square index of the tile.
+     */
+    public final int getSquare() {
+        return square;
+    }
+
+    /**
+     * Gets the x-coordinate of the tile.
+     *
+     * @return The current x-coordinate of the tile in game coordinates.
+     */
+    public final int getX() {
+        return BoardGeometry.squareX(square);
+    }
+
+    /**
+     * Gets the y-coordinate of the tile.
+     *
+     * @return The current y-coordinate of the tile in game coordinates.
+     */
+    public final int getY() {
+        return BoardGeometry.squareY(square);
+    }
+
+    /**
+     * Sets the square of the tile.
+     *
+     * @param square The target square index.
+     */
+    public final void setSquare(int square) {
+        this.square = square;
     }
 
     /**
@@ -78,8 +121,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
      * @param y The target y-coordinate to set in game coordinates.
      */
     public final void setPosition(int x, int y) {
-        this.locX = x;
-        this.locY = y;
+        this.square = BoardGeometry.square(x, y);
     }
 
     /**
@@ -115,7 +157,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
      * @return true if the tile is in a red garden, false otherwise.
      */
     public final boolean isInRedGarden() {
-        return Table.isRedGarden(table.getType(locX, locY).orElse(0));
+        return Table.isRedGarden(table.localeFlags(square));
     }
 
     /**
@@ -123,7 +165,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
      * @return true if the tile is in a white garden, false otherwise.
      */
     public final boolean isInWhiteGarden() {
-        return Table.isWhiteGarden(table.getType(locX, locY).orElse(0));
+        return Table.isWhiteGarden(table.localeFlags(square));
     }
 
     /**
@@ -131,7 +173,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
      * @return true if the tile is in a neutral garden, false otherwise.
      */
     public final boolean isInNeutralGarden() {
-        return Table.isNeutralGarden(table.getType(locX, locY).orElse(0));
+        return Table.isNeutralGarden(table.localeFlags(square));
     }
 
     /**
@@ -139,7 +181,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
      * @return true if the tile is in a temple, false otherwise.
      */
     public final boolean isInTemple() {
-        return Table.isTemple(table.getType(locX, locY).orElse(0));
+        return Table.isTemple(table.localeFlags(square));
     }
 
     /**
@@ -149,7 +191,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
      * @return true if the tile is from any of the specified locales or the locales is empty, false otherwise.
      */
     public final boolean isFromArea(Table.Locale... locales) {
-        return locales.length == 0 || Table.isFrom(table.getType(locX, locY).orElse(0), locales);
+        return locales.length == 0 || Table.isFrom(table.localeFlags(square), locales);
     }
 
     /**
@@ -163,7 +205,7 @@ public abstract class Tile implements Comparable<Tile>, Serializable {
         if(!isValidMove(x, y))
             throw new IllegalArgumentException("The target position cannot be accessed with this tile.");
 
-        table.move(locX, locY, x, y);
+        table.move(square, BoardGeometry.toSquare(x, y));
     }
 
     /**
@@ -1,21 +1,42 @@
 package dev.rnandor.paisho;
 
-import org.reflections.Reflections;
-
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 
 public final class TileRegistry<T extends Tile> implements Serializable {
 
+    /**
+     * The resource listing the {@link TileEntry} classes of a module, written at compile time by the PaiSho-Processor
+     * annotation processor. Holds the binary names of the classes, one per line, lines starting with # are comments.
+     */
+    public static final String INDEX = "META-INF/paisho/tile-entries";
+
+    // the signature of the tile constructors, see Factory.create
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class, boolean.class, Table.class, int.class, int.class);
+
     private HashMap<String, Class<? extends T>> tiles = new HashMap<>();
     private HashMap<Class<? extends T>, String> codes = new HashMap<>();
+    private HashMap<Class<?>, Integer> indices = new HashMap<>();
+    private List<String> sortedCodes;
+    private transient HashMap<String, Factory<? extends T>> factories;
+    private transient List<Factory<? extends T>> indexedFactories;
 
     /**
-     * Constructs a TileRegistry by scanning the default package for tile classes.
+     * Constructs a TileRegistry of the indexed tile classes in the default package.
      *
      * @param tClass The base class of the tiles.
      * @throws EntryClashException If there is a clash in tile entry IDs.
@@ -25,15 +46,18 @@ public final class TileRegistry<T extends Tile> implements Serializable {
     }
 
     /**
-     * Constructs a TileRegistry by scanning the specified package for tile classes.
+     * Constructs a TileRegistry of the indexed tile classes in the specified package and its subpackages.
+     * The classes are read from every {@link #INDEX} visible to the class loader of the base class.
      *
-     * @param packageName The package to scan for tile classes.
+     * @param packageName The package of the tile classes.
      * @param tClass      The base class of the tiles.
      * @throws EntryClashException If there is a clash in tile entry IDs.
+     * @throws UncheckedIOException If an index can't be read.
+     * @throws IllegalStateException If an index lists a class that can't be found, or a tile class has no public
+     *                               (boolean, Table, int, int) constructor.
      */
     public TileRegistry(String packageName, Class<T> tClass) throws EntryClashException {
-        var ref = new Reflections(packageName);
-        for(var clazz : ref.getSubTypesOf(tClass)) {
+        for(var clazz : readIndex(packageName, tClass)) {
             if(clazz.isAnonymousClass() || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()))
                 continue;
 
@@ -52,6 +76,108 @@ public final class TileRegistry<T extends Tile> implements Serializable {
             tiles.put(id, clazz);
             codes.put(clazz, id);
         }
+
+        // indices follow the order of the codes, so they're stable between runs
+        sortedCodes = new ArrayList<>(tiles.keySet());
+        Collections.sort(sortedCodes);
+        for(int i = 0; i < sortedCodes.size(); i++)
+            indices.put(tiles.get(sortedCodes.get(i)), i);
+
+        createFactories();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        createFactories();
+    }
+
+    /**
+     * Helper method.
+     * Creates the factories of the registered tile classes. Only the factories themselves are created reflectively,
+     * the tiles are created by plain calls of their constructors.
+     */
+    private void createFactories() {
+        factories = new HashMap<>();
+        for(var entry : tiles.entrySet())
+            factories.put(entry.getKey(), factoryOf(entry.getValue()));
+
+        indexedFactories = new ArrayList<>();
+        for(var code : sortedCodes)
+            indexedFactories.add(factories.get(code));
+    }
+
+    /**
+     * Helper method.
+     * Creates a factory calling the (boolean, Table, int, int) constructor of a tile class.
+     *
+     * @param clazz The tile class.
+     * @return The factory.
+     * @throws IllegalStateException If the class has no public (boolean, Table, int, int) constructor.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Tile> Factory<T> factoryOf(Class<T> clazz) {
+        try {
+            var lookup = MethodHandles.lookup();
+            var constructor = lookup.findConstructor(clazz, CONSTRUCTOR);
+            var site = LambdaMetafactory.metafactory(
+                    lookup, "create", MethodType.methodType(Factory.class),
+                    CONSTRUCTOR.changeReturnType(Tile.class), constructor, CONSTRUCTOR.changeReturnType(clazz)
+            );
+            return (Factory<T>) site.getTarget().invoke();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(clazz.getName() + " has no public (boolean, Table, int, int) constructor", e);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create the factory of " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Helper method.
+     * Loads the indexed subclasses of the base class in a package, without initialising them.
+     *
+     * @param packageName The package of the tile classes.
+     * @param tClass The base class of the tiles.
+     * @return The tile classes.
+     */
+    private static <T> List<Class<? extends T>> readIndex(String packageName, Class<T> tClass) {
+        var loader = tClass.getClassLoader();
+        var classes = new ArrayList<Class<? extends T>>();
+        try {
+            var indexes = loader.getResources(INDEX);
+            while(indexes.hasMoreElements()) {
+                var url = indexes.nextElement();
+                try(var in = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while((line = in.readLine()) != null) {
+                        line = line.strip();
+                        if(line.isEmpty() || line.startsWith("#"))
+                            continue;
+
+                        var clazz = Class.forName(line, false, loader);
+                        if(tClass.isAssignableFrom(clazz) && isInPackage(clazz, packageName))
+                            classes.add(clazz.asSubclass(tClass));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the tile index", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The tile index lists a missing class: " + e.getMessage(), e);
+        }
+        return classes;
+    }
+
+    /**
+     * Helper method.
+     * Checks whether a class is in a package or one of its subpackages.
+     *
+     * @param clazz The class.
+     * @param packageName The package.
+     * @return true if the class is in the package, false otherwise.
+     */
+    private static boolean isInPackage(Class<?> clazz, String packageName) {
+        String name = clazz.getPackageName();
+        return packageName.isEmpty() || name.equals(packageName) || name.startsWith(packageName + ".");
     }
 
     /**
@@ -74,6 +200,27 @@ public final class TileRegistry<T extends Tile> implements Serializable {
         return Optional.ofNullable(tiles.get(name));
     }
 
+    /**
+     * Gets the factory of the tile class associated with the given code.
+     *
+     * @param code The code of the tile.
+     * @return An Optional containing the factory if found, otherwise an empty Optional.
+     */
+    public Optional<Factory<? extends T>> getFactory(String code) {
+        return Optional.ofNullable(factories.get(code));
+    }
+
+    /**
+     * Gets the factory of the tile class associated with the given index.
+     *
+     * @param index The index of the tile class.
+     * @return The factory.
+     * @throws IndexOutOfBoundsException if the index is not in the range [0, size()).
+     */
+    public Factory<? extends T> getFactory(int index) {
+        return indexedFactories.get(index);
+    }
+
     /**
      * Gets a list of all registered tile classes.
      *
@@ -83,6 +230,67 @@ public final class TileRegistry<T extends Tile> implements Serializable {
         return new ArrayList<>(tiles.values());
     }
 
+    /**
+     * Gets the index associated with the given tile class.
+     * Indices are dense, in the range [0, size()), and ordered by the tile codes.
+     *
+     * @param clazz The tile class.
+     * @return The index of the tile class, or -1 if the class is not registered.
+     */
+    public int getIndex(Class<?> clazz) {
+        return indices.getOrDefault(clazz, -1);
+    }
+
+    /**
+     * Gets the index associated with the given code.
+     *
+     * @param code The code of the tile.
+     * @return The index of the tile class, or -1 if the code is not registered.
+     */
+    public int getIndex(String code) {
+        var clazz = tiles.get(code);
+        return clazz == null ? -1 : getIndex(clazz);
+    }
+
+    /**
+     * Gets the code associated with the given index.
+     *
+     * @param index The index of the tile class.
+     * @return The code of the tile class.
+     * @throws IndexOutOfBoundsException if the index is not in the range [0, size()).
+     */
+    public String getCode(int index) {
+        return sortedCodes.get(index);
+    }
+
+    /**
+     * Gets the number of registered tile classes.
+     *
+     * @return The number of registered tile classes.
+     */
+    public int size() {
+        return sortedCodes.size();
+    }
+
+    /**
+     * Creates the tiles of a registered class without reflection.
+     *
+     * @param <T> The type of the tiles.
+     */
+    @FunctionalInterface
+    public interface Factory<T extends Tile> {
+        /**
+         * Creates a tile, the same way as its (boolean, Table, int, int) constructor.
+         *
+         * @param host true for a tile of the host, false for the guest.
+         * @param table The table of the tile.
+         * @param x The x coordinate of the tile.
+         * @param y The y coordinate of the tile.
+         * @return The new tile.
+         */
+        T create(boolean host, Table table, int x, int y);
+    }
+
     /**
      * Exception thrown when there is a clash in tile entry IDs.
      */
@@ -0,0 +1,145 @@
+package dev.rnandor.paisho;
+
+import java.util.Arrays;
+
+/**
+ * The undo stack of a {@link PaiShoGame}.
+ * Every entry is an operation with two integer arguments and an optional tile, packed into parallel arrays,
+ * and entries are grouped into frames, one for every turn that can be unmade.
+ */
+final class UndoLog {
+
+    private long[] entries = new long[256];
+    private Tile[] subjects = new Tile[256];
+    private int size;
+
+    private int[] frames = new int[64];
+    private int depth;
+
+    /**
+     * Opens a new frame, everything recorded until it's closed belongs to it.
+     */
+    void begin() {
+        if(depth == frames.length)
+            frames = Arrays.copyOf(frames, depth*2);
+
+        frames[depth++] = size;
+    }
+
+    /**
+     * Closes the last frame, without discarding its entries.
+     *
+     * @return The index of the first entry of the frame.
+     * @throws IllegalStateException if there's no open frame.
+     */
+    int end() {
+        if(depth == 0)
+            throw new IllegalStateException("There's no turn to unmake.");
+
+        return frames[--depth];
+    }
+
+    /**
+     * Checks whether there's an open frame, entries are only recorded while there is one.
+     *
+     * @return true if changes should be recorded, false otherwise.
+     */
+    boolean isRecording() {
+        return depth > 0;
+    }
+
+    /**
+     * Gets the number of open frames.
+     *
+     * @return The number of open frames.
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param op The operation, in the range [0, 256).
+     * @param subject The tile the entry is about, may be null.
+     * @param a The first argument, in the range [0, 2^24).
+     * @param b The second argument.
+     */
+    void push(int op, Tile subject, int a, int b) {
+        if(size == entries.length) {
+            entries = Arrays.copyOf(entries, size*2);
+            subjects = Arrays.copyOf(subjects, size*2);
+        }
+
+        entries[size] = (op & 0xFFL) | ((a & 0xFFFFFFL) << 8) | ((long) b << 32);
+        subjects[size] = subject;
+        size++;
+    }
+
+    /**
+     * Discards every frame and entry.
+     */
+    void reset() {
+        truncate(0);
+        depth = 0;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Discards every entry from the given index.
+     *
+     * @param from The index of the first discarded entry.
+     */
+    void truncate(int from) {
+        Arrays.fill(subjects, from, size, null);
+        size = from;
+    }
+
+    /**
+     * Gets the operation of an entry.
+     *
+     * @param i The index of the entry.
+     * @return The operation.
+     */
+    int op(int i) {
+        return (int) (entries[i] & 0xFF);
+    }
+
+    /**
+     * Gets the first argument of an entry.
+     *
+     * @param i The index of the entry.
+     * @return The first argument.
+     */
+    int a(int i) {
+        return (int) ((entries[i] >>> 8) & 0xFFFFFF);
+    }
+
+    /**
+     * Gets the second argument of an entry.
+     *
+     * @param i The index of the entry.
+     * @return The second argument.
+     */
+    int b(int i) {
+        return (int) (entries[i] >>> 32);
+    }
+
+    /**
+     * Gets the tile of an entry.
+     *
+     * @param i The index of the entry.
+     * @return The tile, or null.
+     */
+    Tile subject(int i) {
+        return subjects[i];
+    }
+}
@@ -0,0 +1,93 @@
+package dev.rnandor.paisho;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing of positions.
+ * A position's key is the XOR of the keys of its features, so it can be updated incrementally as tiles come and go.
+ * <p>
+ * The keys are generated from a fixed seed, so they are the same on every run and persisted keys stay valid.
+ */
+public final class Zobrist {
+
+    /**
+     * The maximum number of tile kinds a registry may have to be hashed.
+     */
+    public static final int MAX_KINDS = 32;
+
+    /**
+     * The maximum number of rule variant flags.
+     */
+    public static final int MAX_VARIANTS = 16;
+
+    /**
+     * The maximum number of captured tiles of one kind and player that are hashed apart.
+     */
+    public static final int MAX_CAPTURED = 16;
+
+    private static final long SEED = 0x9A15_0C0D_E5EE_D001L;
+
+    private static final long[] TILES = new long[MAX_KINDS * 2 * BoardGeometry.SQUARES];
+    private static final long[] VARIANTS = new long[MAX_VARIANTS];
+    private static final long GUEST_TO_MOVE;
+    private static final long[] CAPTURED = new long[MAX_KINDS * 2 * MAX_CAPTURED];
+
+    // the keys are drawn in a fixed order from a fixed seed, so stored keys stay valid only if new tables are drawn last
+    static {
+        var random = new SplittableRandom(SEED);
+        for(int i = 0; i < TILES.length; i++)
+            TILES[i] = random.nextLong();
+        for(int i = 0; i < VARIANTS.length; i++)
+            VARIANTS[i] = random.nextLong();
+        GUEST_TO_MOVE = random.nextLong();
+        for(int i = 0; i < CAPTURED.length; i++)
+            CAPTURED[i] = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Gets the key of a tile standing on a square.
+     *
+     * @param kind The kind of the tile, see {@link Table#kindOf(Tile)}.
+     * @param host Whether the tile belongs to the host player.
+     * @param sq The square of the tile.
+     * @return The key of the tile.
+     */
+    public static long tile(int kind, boolean host, int sq) {
+        return TILES[(kind*2 + (host ? 1 : 0)) * BoardGeometry.SQUARES + sq];
+    }
+
+    /**
+     * Gets the key that is present when the guest player is to move.
+     *
+     * @return The side to move key.
+     */
+    public static long guestToMove() {
+        return GUEST_TO_MOVE;
+    }
+
+    /**
+     * Gets the key of an enabled rule variant.
+     *
+     * @param index The index of the variant flag, in the range [0, MAX_VARIANTS).
+     * @return The key of the variant.
+     */
+    public static long variant(int index) {
+        return VARIANTS[index];
+    }
+
+    /**
+     * Gets the key of a captured tile, by how many captured tiles of the same kind its player holds.
+     * Captured tiles of the same kind are interchangeable, so the pool of a player is hashed as the keys of
+     * the counts 0 to n-1 of each kind, whichever tiles they are.
+     *
+     * @param kind The kind of the tile, see {@link Table#kindOf(Tile)}.
+     * @param host Whether the tile belongs to the host player.
+     * @param index The number of captured tiles of the kind before this one, in the range [0, MAX_CAPTURED).
+     * @return The key of the captured tile.
+     */
+    public static long captured(int kind, boolean host, int index) {
+        return CAPTURED[(kind*2 + (host ? 1 : 0)) * MAX_CAPTURED + index];
+    }
+}
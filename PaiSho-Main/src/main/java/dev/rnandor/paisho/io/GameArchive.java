@@ -0,0 +1,360 @@
+package dev.rnandor.paisho.io;
+
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.Tile;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Many games packed into one file, read through a memory mapping so any game can be loaded in constant time.
+ * <p>
+ * The file holds, in big-endian byte order:
+ * <ul>
+ *     <li>the magic number "PSHA" and the version of the archive format</li>
+ *     <li>the games, each a complete save of {@link GameManager}, header included</li>
+ *     <li>the index: the offset of every game from the start of the file, 8 bytes each</li>
+ *     <li>the trailer: the offset of the index, the number of games and the magic number again</li>
+ * </ul>
+ * The index is written last, so archives are written in one pass by a {@link Writer}.
+ * The whole file is mapped at once, archives are limited to 2 GB.
+ */
+@Slf4j
+public final class GameArchive<T extends Tile, G extends PaiShoGame<T>> implements Closeable, Iterable<G> {
+
+    private static final int MAGIC = 0x50534841; // "PSHA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final GameManager<T, G> manager;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final LongBuffer index;
+    private final long indexOffset;
+
+    private GameArchive(GameManager<T, G> manager, FileChannel channel, MappedByteBuffer data, LongBuffer index, long indexOffset) {
+        this.manager = manager;
+        this.channel = channel;
+        this.data = data;
+        this.index = index;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Opens an archive for reading.
+     *
+     * @param path The path of the archive.
+     * @param manager The manager reading the games of the archive.
+     * @return The archive.
+     * @throws IOException If an I/O error occurs, or the file is larger than 2 GB.
+     * @throws GameManager.InvalidSaveException If the file isn't an archive.
+     */
+    public static <T extends Tile, G extends PaiShoGame<T>> GameArchive<T, G> open(Path path, GameManager<T, G> manager) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new IOException("Archive of " + size + " bytes is too large to map");
+            if(size < HEADER_SIZE + TRAILER_SIZE)
+                throw new GameManager.InvalidSaveException("Not an archive");
+
+            var data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.BIG_ENDIAN);
+            if(data.getInt(0) != MAGIC || data.getInt((int) size - Integer.BYTES) != MAGIC)
+                throw new GameManager.InvalidSaveException("Not an archive");
+            if(data.getShort(Integer.BYTES) != VERSION)
+                throw new GameManager.InvalidSaveException("Archive of version " + data.getShort(Integer.BYTES) + ", expected " + VERSION);
+
+            long indexOffset = data.getLong((int) size - TRAILER_SIZE);
+            int count = data.getInt((int) size - TRAILER_SIZE + Long.BYTES);
+            if(count < 0 || indexOffset < HEADER_SIZE || indexOffset + (long) count*Long.BYTES != size - TRAILER_SIZE)
+                throw new GameManager.InvalidSaveException("Corrupt archive index");
+
+            var index = data.slice((int) indexOffset, count*Long.BYTES).asLongBuffer();
+            return new GameArchive<>(manager, channel, data, index, indexOffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an archive, replacing any file at the path.
+     *
+     * @param path The path of the archive.
+     * @param manager The manager writing the games of the archive.
+     * @return The writer of the archive, the archive is complete once it's closed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static <T extends Tile, G extends PaiShoGame<T>> Writer<T, G> create(Path path, GameManager<T, G> manager) throws IOException {
+        return new Writer<>(path, manager);
+    }
+
+    /**
+     * Gets the number of games in the archive.
+     *
+     * @return The number of games.
+     */
+    public int size() {
+        return index.limit();
+    }
+
+    /**
+     * Reads a game of the archive.
+     *
+     * @param i The index of the game, in the range [0, size()).
+     * @return The game.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws UncheckedIOException If the game is corrupt.
+     */
+    public G get(int i) {
+        try {
+            return manager.read(new BufferInputStream(getRecord(i)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read game " + i + " of the archive", e);
+        }
+    }
+
+    /**
+     * Gets the save of a game of the archive, as a view of the mapping, without copying it.
+     *
+     * @param i The index of the game, in the range [0, size()).
+     * @return A read-only buffer of the save, see {@link GameManager#read(InputStream)}.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws UncheckedIOException If the index of the archive is corrupt.
+     */
+    public ByteBuffer getRecord(int i) {
+        long start = index.get(i);
+        long end = i + 1 < index.limit() ? index.get(i + 1) : indexOffset;
+        if(start < HEADER_SIZE || end < start || end > indexOffset)
+            throw new UncheckedIOException(new GameManager.InvalidSaveException("Corrupt archive index at game " + i));
+
+        return data.slice((int) start, (int) (end - start)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Iterates over the saves of the games in order, each a view of the mapping as by {@link #getRecord(int)}.
+     *
+     * @return The iterator of the saves.
+     */
+    public Iterator<ByteBuffer> records() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                return getRecord(next++);
+            }
+        };
+    }
+
+    /**
+     * Iterates over the games in order, reading each one when it's reached.
+     *
+     * @return The iterator of the games.
+     */
+    @Override
+    public Iterator<G> iterator() {
+        var records = records();
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public G next() {
+                var record = records.next();
+                try {
+                    return manager.read(new BufferInputStream(record));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot read game " + next + " of the archive", e);
+                } finally {
+                    next++;
+                }
+            }
+        };
+    }
+
+    /**
+     * Closes the file of the archive. The mapping is released by the garbage collector, once no record of the
+     * archive is reachable.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes an archive in one pass: the games as they're added, the index when it's closed.
+     */
+    public static final class Writer<T extends Tile, G extends PaiShoGame<T>> implements Closeable {
+
+        private final GameManager<T, G> manager;
+        private final CountingOutputStream out;
+        private long[] offsets = new long[64];
+        private int count;
+
+        private Writer(Path path, GameManager<T, G> manager) throws IOException {
+            this.manager = manager;
+            this.out = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+
+            var header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeShort(VERSION);
+        }
+
+        /**
+         * Appends a game to the archive.
+         *
+         * @param game The game.
+         * @return The index of the game in the archive, to find it by in a {@link PositionIndex}.
+         * @throws IOException If an I/O error occurs.
+         * @throws IllegalStateException If the writer is closed.
+         */
+        public int add(G game) throws IOException {
+            if(offsets == null)
+                throw new IllegalStateException("The archive is closed");
+            if(count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count*2);
+
+            offsets[count] = out.written;
+            manager.write(game, out);
+            return count++;
+        }
+
+        /**
+         * Gets the number of games added so far.
+         *
+         * @return The number of games.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Writes the index and closes the archive.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            if(offsets == null)
+                return;
+
+            try(var trailer = new DataOutputStream(out)) {
+                long indexOffset = out.written;
+                for(int i = 0; i < count; i++)
+                    trailer.writeLong(offsets[i]);
+
+                trailer.writeLong(indexOffset);
+                trailer.writeInt(count);
+                trailer.writeInt(MAGIC);
+            } finally {
+                offsets = null;
+            }
+            log.debug("Archived {} games", count);
+        }
+    }
+
+    /**
+     * Counts the bytes written, for the offsets of the index.
+     * Doesn't flush until closed, so the games aren't written one system call each.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long written;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written += len;
+        }
+
+        @Override
+        public void flush() {
+            // GameManager flushes after every game, the buffer is written when the archive is closed
+        }
+    }
+
+    /**
+     * Reads a buffer without copying it first, marks are supported so {@link GameManager#read(InputStream)} doesn't
+     * buffer it again.
+     */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len == 0)
+                return 0;
+            if(!buffer.hasRemaining())
+                return -1;
+
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int limit) {
+            buffer.mark();
+        }
+
+        @Override
+        public void reset() {
+            buffer.reset();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dev.rnandor.paisho.io;
+
+import dev.rnandor.paisho.PaiShoGame;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Reads and writes the state of one kind of game in the binary save format of {@link GameManager}.
+ * The manager writes and checks the header of the save, the codec only the state after it.
+ *
+ * @param <G> The type of the game.
+ */
+public interface GameCodec<G extends PaiShoGame<?>> {
+
+    /**
+     * Gets the name of the game, written to the header so saves of other games are rejected.
+     *
+     * @return The name of the game.
+     */
+    String getName();
+
+    /**
+     * Gets the version of the state written by {@link #write(PaiShoGame, DataOutput)}.
+     * Increase it whenever the layout of the state changes, and keep reading the older versions.
+     *
+     * @return The version, in the range [1, 65535].
+     */
+    int getVersion();
+
+    /**
+     * Writes the state of a game.
+     *
+     * @param game The game.
+     * @param out The output to write to.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(G game, DataOutput out) throws IOException;
+
+    /**
+     * Reads a game written by this or an earlier version of the codec.
+     *
+     * @param in The input to read from, positioned after the header.
+     * @param version The version of the codec that wrote the state, at most {@link #getVersion()}.
+     * @return The game.
+     * @throws IOException If an I/O error occurs, or the state is invalid.
+     */
+    G read(DataInput in, int version) throws IOException;
+
+    /**
+     * Builds a game from a save written with Java serialization by earlier versions of the game.
+     *
+     * @param game The serialized game, read by {@link LegacyStream}.
+     * @return The game.
+     * @throws IOException If the save isn't a game of this codec, or its state is invalid.
+     */
+    G migrate(LegacyStream.Instance game) throws IOException;
+}
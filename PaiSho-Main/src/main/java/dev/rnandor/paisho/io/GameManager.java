@@ -5,28 +5,45 @@ import dev.rnandor.paisho.Tile;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
-import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
+/**
+ * Saves and loads games in a compact binary format.
+ * <p>
+ * Every save starts with a header: the magic number "PSHO", the name of the {@link GameCodec} and the version of
+ * the codec that wrote it. The state of the game follows, in the layout of the codec.
+ * Saves written with Java serialization by earlier versions are still loaded, through {@link GameCodec#migrate}.
+ */
 @Slf4j
 public final class GameManager<T extends Tile, G extends PaiShoGame<T>> {
 
+    private static final int MAGIC = 0x5053484F; // "PSHO"
+
+    private final GameCodec<G> codec;
+
+    /**
+     * Constructs a GameManager.
+     *
+     * @param codec The codec of the games.
+     */
+    public GameManager(GameCodec<G> codec) {
+        this.codec = codec;
+    }
+
     /**
      * Loads a game state from the specified file path.
      *
      * @param path The file path from which to load the game state.
      * @return The loaded game state.
      * @throws IOException If an I/O error occurs during loading.
-     * @throws ClassNotFoundException If the class of a serialized object cannot be found.
+     * @throws InvalidSaveException If the file isn't a save of this game.
      */
-    public G loadGame(String path) throws IOException, ClassNotFoundException {
-        var file = new FileInputStream(path);
-        var in = new ObjectInputStream(file);
-
-        G game = (G) in.readObject();
-        in.close();
-
-        return game;
+    public G loadGame(String path) throws IOException {
+        try(var in = new BufferedInputStream(new FileInputStream(path))) {
+            return read(in);
+        }
     }
 
     /**
@@ -37,9 +54,110 @@ public final class GameManager<T extends Tile, G extends PaiShoGame<T>> {
      * @throws IOException If an I/O error occurs during saving.
      */
     public void saveGame(G game, String path) throws IOException {
-        var file = new FileOutputStream(path);
-        var in = new ObjectOutputStream(file);
-        in.writeObject(game);
-        in.close();
+        try(var out = new BufferedOutputStream(new FileOutputStream(path))) {
+            write(game, out);
+        }
+    }
+
+    /**
+     * Rewrites a save of an earlier version in the current format. The file is replaced only after the new save
+     * was written completely.
+     *
+     * @param path The file path of the save.
+     * @return true if the save was rewritten, false if it was already in the current format.
+     * @throws IOException If an I/O error occurs.
+     * @throws InvalidSaveException If the file isn't a save of this game.
+     */
+    public boolean migrateGame(String path) throws IOException {
+        var file = Path.of(path);
+        try(var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() == MAGIC && in.readUTF().equals(codec.getName()) && in.readUnsignedShort() == codec.getVersion())
+                return false;
+        }
+
+        var game = loadGame(path);
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        saveGame(game, temp.toString());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Writes a game to a stream, header included. The stream is flushed, but not closed.
+     *
+     * @param game The game.
+     * @param out The stream to write to.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(G game, OutputStream out) throws IOException {
+        var data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeUTF(codec.getName());
+        data.writeShort(codec.getVersion());
+        codec.write(game, data);
+        data.flush();
+    }
+
+    /**
+     * Reads a game from a stream, either a save of this format or one written with Java serialization.
+     * The stream is not closed.
+     *
+     * @param in The stream to read from.
+     * @return The game.
+     * @throws IOException If an I/O error occurs.
+     * @throws InvalidSaveException If the stream isn't a save of this game.
+     */
+    public G read(InputStream in) throws IOException {
+        var data = new DataInputStream(in.markSupported() ? in : new BufferedInputStream(in));
+
+        data.mark(Integer.BYTES);
+        int magic = data.readInt();
+        if(magic >>> 16 == LegacyStream.MAGIC) {
+            data.reset();
+            return migrate(data);
+        }
+        if(magic != MAGIC)
+            throw new InvalidSaveException("Not a save file");
+
+        String name = data.readUTF();
+        if(!name.equals(codec.getName()))
+            throw new InvalidSaveException("Save of " + name + ", expected " + codec.getName());
+
+        int version = data.readUnsignedShort();
+        if(version < 1 || version > codec.getVersion())
+            throw new InvalidSaveException("Save of version " + version + ", expected at most " + codec.getVersion());
+
+        try {
+            return codec.read(data, version);
+        } catch (EOFException e) {
+            throw new InvalidSaveException("Save ends unexpectedly");
+        }
+    }
+
+    /**
+     * Helper method.
+     * Reads a save written with Java serialization.
+     */
+    private G migrate(InputStream in) throws IOException {
+        Object root;
+        try {
+            root = LegacyStream.read(in);
+        } catch (StreamCorruptedException | EOFException e) {
+            throw new InvalidSaveException("Corrupt legacy save: " + e.getMessage());
+        }
+        if(!(root instanceof LegacyStream.Instance game))
+            throw new InvalidSaveException("Legacy save doesn't hold a game");
+
+        log.info("Migrating a legacy save of {}", game.getClassName());
+        return codec.migrate(game);
+    }
+
+    /**
+     * Thrown when a file or stream isn't a valid save of the game.
+     */
+    public static class InvalidSaveException extends IOException {
+        public InvalidSaveException(String message) {
+            super(message);
+        }
     }
 }
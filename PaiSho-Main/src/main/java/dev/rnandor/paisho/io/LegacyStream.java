@@ -0,0 +1,457 @@
+package dev.rnandor.paisho.io;
+
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a stream written by an ObjectOutputStream without loading any of its classes, so saves of earlier versions
+ * can be migrated after their classes changed. Follows the grammar of the Java Object Serialization Specification.
+ * <p>
+ * Objects are read as {@link Instance}s, enum constants as {@link EnumConstant}s, arrays as arrays of their primitive
+ * type or Object[], strings as Strings, classes as their names, and primitive fields as their boxed values.
+ */
+public final class LegacyStream {
+
+    /**
+     * The first two bytes of every stream written by an ObjectOutputStream.
+     */
+    public static final int MAGIC = 0xACED;
+    private static final int VERSION = 5;
+    private static final int BASE_HANDLE = 0x7E0000;
+
+    private static final int TC_NULL = 0x70;
+    private static final int TC_REFERENCE = 0x71;
+    private static final int TC_CLASSDESC = 0x72;
+    private static final int TC_OBJECT = 0x73;
+    private static final int TC_STRING = 0x74;
+    private static final int TC_ARRAY = 0x75;
+    private static final int TC_CLASS = 0x76;
+    private static final int TC_BLOCKDATA = 0x77;
+    private static final int TC_ENDBLOCKDATA = 0x78;
+    private static final int TC_RESET = 0x79;
+    private static final int TC_BLOCKDATALONG = 0x7A;
+    private static final int TC_LONGSTRING = 0x7C;
+    private static final int TC_PROXYCLASSDESC = 0x7D;
+    private static final int TC_ENUM = 0x7E;
+
+    private static final int SC_WRITE_METHOD = 0x01;
+    private static final int SC_EXTERNALIZABLE = 0x04;
+    private static final int SC_BLOCK_DATA = 0x08;
+
+    // the capacity arrays start with before they grow to the size written in the stream
+    private static final int CHUNK = 1 << 10;
+
+    private final DataInputStream in;
+    private final List<Object> handles = new ArrayList<>();
+
+    private LegacyStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Reads the first object of a stream.
+     *
+     * @param in The stream, positioned at its magic number.
+     * @return The object, see {@link LegacyStream} for its representation.
+     * @throws IOException If an I/O error occurs, or the stream is not a valid serialization stream.
+     */
+    public static Object read(InputStream in) throws IOException {
+        var stream = new LegacyStream(in);
+        if(stream.in.readUnsignedShort() != MAGIC || stream.in.readUnsignedShort() != VERSION)
+            throw new StreamCorruptedException("Not a serialization stream");
+
+        return stream.readObject();
+    }
+
+    /**
+     * Helper method.
+     * Reads an object, starting with its type code.
+     */
+    private Object readObject() throws IOException {
+        return readObject(in.readUnsignedByte());
+    }
+
+    /**
+     * Helper method.
+     * Reads an object whose type code was already read.
+     */
+    private Object readObject(int tc) throws IOException {
+        return switch(tc) {
+            case TC_NULL -> null;
+            case TC_REFERENCE -> handle(in.readInt());
+            case TC_OBJECT -> readInstance();
+            case TC_STRING -> register(in.readUTF());
+            case TC_LONGSTRING -> register(readLongString());
+            case TC_ARRAY -> readArray();
+            case TC_ENUM -> readEnum();
+            case TC_CLASS -> {
+                var desc = readClassDesc();
+                yield register(desc == null ? null : desc.name);
+            }
+            case TC_CLASSDESC, TC_PROXYCLASSDESC -> readClassDesc(tc);
+            case TC_RESET -> {
+                handles.clear();
+                yield readObject();
+            }
+            default -> throw new StreamCorruptedException("Unexpected type code " + Integer.toHexString(tc));
+        };
+    }
+
+    /**
+     * Helper method.
+     * Reads a class descriptor, starting with its type code.
+     */
+    private ClassDesc readClassDesc() throws IOException {
+        return readClassDesc(in.readUnsignedByte());
+    }
+
+    /**
+     * Helper method.
+     * Reads a class descriptor whose type code was already read.
+     */
+    private ClassDesc readClassDesc(int tc) throws IOException {
+        switch(tc) {
+            case TC_NULL:
+                return null;
+            case TC_REFERENCE:
+                if(handle(in.readInt()) instanceof ClassDesc desc)
+                    return desc;
+                throw new StreamCorruptedException("Reference to a class descriptor expected");
+            case TC_CLASSDESC: {
+                var desc = new ClassDesc(in.readUTF());
+                in.readLong(); // serialVersionUID
+                register(desc);
+
+                desc.flags = in.readUnsignedByte();
+                int count = in.readUnsignedShort();
+                desc.types = new char[count];
+                desc.fields = new String[count];
+                for(int i = 0; i < count; i++) {
+                    desc.types[i] = (char) in.readUnsignedByte();
+                    desc.fields[i] = in.readUTF();
+                    if(desc.types[i] == 'L' || desc.types[i] == '[')
+                        readObject(); // the type of the field
+                }
+                readAnnotation(null);
+                desc.superDesc = readClassDesc();
+                return desc;
+            }
+            case TC_PROXYCLASSDESC: {
+                var desc = new ClassDesc("$Proxy");
+                register(desc);
+
+                int count = in.readInt();
+                for(int i = 0; i < count; i++)
+                    in.readUTF();
+                readAnnotation(null);
+                desc.superDesc = readClassDesc();
+                return desc;
+            }
+            default:
+                throw new StreamCorruptedException("Class descriptor expected, found type code " + Integer.toHexString(tc));
+        }
+    }
+
+    /**
+     * Helper method.
+     * Reads an object of a serializable class, the data of its superclasses first.
+     */
+    private Instance readInstance() throws IOException {
+        var desc = readClassDesc();
+        if(desc == null)
+            throw new StreamCorruptedException("Object without a class");
+
+        var instance = new Instance(desc.name);
+        register(instance);
+
+        var hierarchy = new ArrayList<ClassDesc>();
+        for(var d = desc; d != null; d = d.superDesc)
+            hierarchy.add(d);
+        Collections.reverse(hierarchy);
+
+        for(var d : hierarchy) {
+            if((d.flags & SC_EXTERNALIZABLE) != 0) {
+                if((d.flags & SC_BLOCK_DATA) == 0)
+                    throw new StreamCorruptedException("Cannot read externalizable " + d.name + " without its class");
+                readAnnotation(instance.annotations);
+                continue;
+            }
+
+            for(int i = 0; i < d.fields.length; i++)
+                instance.fields.put(d.fields[i], readValue(d.types[i]));
+            if((d.flags & SC_WRITE_METHOD) != 0)
+                readAnnotation(instance.annotations);
+        }
+        return instance;
+    }
+
+    /**
+     * Helper method.
+     * Reads an array, primitive arrays keep their type, every other array is read as Object[].
+     * The size written in the stream isn't trusted: the array grows as its elements are read, so a corrupt size ends
+     * the stream instead of allocating more than the stream holds.
+     */
+    private Object readArray() throws IOException {
+        var desc = readClassDesc();
+        if(desc == null || desc.name.length() < 2)
+            throw new StreamCorruptedException("Array without a class");
+
+        char type = desc.name.charAt(1);
+        int size = in.readInt();
+        if(size < 0)
+            throw new StreamCorruptedException("Negative array size");
+
+        int capacity = Math.min(size, CHUNK);
+        int handle = handles.size();
+        switch(type) {
+            case 'B': {
+                var array = in.readNBytes(size);
+                if(array.length < size)
+                    throw new EOFException("Array of " + size + " bytes ends after " + array.length);
+                return register(array);
+            }
+            case 'Z': {
+                var array = new boolean[capacity];
+                register(array);
+                for(int i = 0; i < size; i++) {
+                    if(i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, size));
+                        handles.set(handle, array);
+                    }
+                    array[i] = in.readBoolean();
+                }
+                return array;
+            }
+            case 'I': {
+                var array = new int[capacity];
+                register(array);
+                for(int i = 0; i < size; i++) {
+                    if(i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, size));
+                        handles.set(handle, array);
+                    }
+                    array[i] = in.readInt();
+                }
+                return array;
+            }
+            default: {
+                // other primitives are boxed, they don't appear in the saves of the games
+                boolean primitive = "CDFJS".indexOf(type) >= 0;
+                var array = new Object[capacity];
+                register(array);
+                for(int i = 0; i < size; i++) {
+                    if(i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, size));
+                        handles.set(handle, array);
+                    }
+                    array[i] = primitive ? readValue(type) : readObject();
+                }
+                return array;
+            }
+        }
+    }
+
+    /**
+     * Helper method.
+     * Gets the next capacity of an array being read, doubling it up to its size.
+     */
+    private static int grow(int capacity, int size) {
+        return (int) Math.min(size, 2L * capacity);
+    }
+
+    /**
+     * Helper method.
+     * Reads an enum constant.
+     */
+    private EnumConstant readEnum() throws IOException {
+        var desc = readClassDesc();
+        int handle = handles.size();
+        register(null);
+
+        if(!(readObject() instanceof String name) || desc == null)
+            throw new StreamCorruptedException("Enum constant without a name");
+
+        var constant = new EnumConstant(desc.name, name);
+        handles.set(handle, constant);
+        return constant;
+    }
+
+    /**
+     * Helper method.
+     * Reads the value of a field.
+     */
+    private Object readValue(char type) throws IOException {
+        return switch(type) {
+            case 'B' -> in.readByte();
+            case 'C' -> in.readChar();
+            case 'D' -> in.readDouble();
+            case 'F' -> in.readFloat();
+            case 'I' -> in.readInt();
+            case 'J' -> in.readLong();
+            case 'S' -> in.readShort();
+            case 'Z' -> in.readBoolean();
+            case 'L', '[' -> readObject();
+            default -> throw new StreamCorruptedException("Unknown field type " + type);
+        };
+    }
+
+    /**
+     * Helper method.
+     * Reads the contents written by a writeObject method or a class annotation, up to their end marker.
+     *
+     * @param objects The list to collect the objects in, null to skip them. Block data is always skipped.
+     */
+    private void readAnnotation(List<Object> objects) throws IOException {
+        while(true) {
+            int tc = in.readUnsignedByte();
+            switch(tc) {
+                case TC_ENDBLOCKDATA:
+                    return;
+                case TC_BLOCKDATA:
+                    in.skipNBytes(in.readUnsignedByte());
+                    break;
+                case TC_BLOCKDATALONG:
+                    in.skipNBytes(Integer.toUnsignedLong(in.readInt()));
+                    break;
+                default:
+                    var object = readObject(tc);
+                    if(objects != null)
+                        objects.add(object);
+            }
+        }
+    }
+
+    /**
+     * Helper method.
+     * Reads a string longer than 65535 bytes of modified UTF-8, which readUTF can't read.
+     */
+    private String readLongString() throws IOException {
+        long length = in.readLong();
+        if(length < 0 || length > Integer.MAX_VALUE - 8)
+            throw new StreamCorruptedException("String of " + length + " bytes is too long");
+
+        var bytes = in.readNBytes((int) length);
+        if(bytes.length < length)
+            throw new EOFException("String of " + length + " bytes ends after " + bytes.length);
+
+        var chars = new char[bytes.length];
+        int count = 0;
+        for(int i = 0; i < bytes.length; count++) {
+            int a = bytes[i++] & 0xFF;
+            if(a < 0x80) {
+                chars[count] = (char) a;
+            } else if((a & 0xE0) == 0xC0 && i < bytes.length) {
+                chars[count] = (char) ((a & 0x1F) << 6 | continuation(bytes[i++]));
+            } else if((a & 0xF0) == 0xE0 && i + 1 < bytes.length) {
+                chars[count] = (char) ((a & 0x0F) << 12 | continuation(bytes[i++]) << 6 | continuation(bytes[i++]));
+            } else {
+                throw new StreamCorruptedException("Malformed string at byte " + (i - 1));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Helper method.
+     * Gets the six bits of a continuation byte of modified UTF-8.
+     */
+    private static int continuation(byte b) throws StreamCorruptedException {
+        if((b & 0xC0) != 0x80)
+            throw new StreamCorruptedException("Malformed string");
+        return b & 0x3F;
+    }
+
+    private Object register(Object object) {
+        handles.add(object);
+        return object;
+    }
+
+    private Object handle(int handle) throws StreamCorruptedException {
+        int index = handle - BASE_HANDLE;
+        if(index < 0 || index >= handles.size())
+            throw new StreamCorruptedException("Invalid handle " + Integer.toHexString(handle));
+
+        return handles.get(index);
+    }
+
+    /**
+     * A class descriptor of the stream, only the parts needed to read the objects.
+     */
+    private static final class ClassDesc {
+        private final String name;
+        private int flags;
+        private char[] types = new char[0];
+        private String[] fields = new String[0];
+        private ClassDesc superDesc;
+
+        private ClassDesc(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * An object of the stream: the name of its class, the values of its fields, and the objects written by the
+     * writeObject methods of its classes, like the elements of collections.
+     */
+    public static final class Instance {
+
+        @Getter
+        private final String className;
+        private final Map<String, Object> fields = new HashMap<>();
+        private final List<Object> annotations = new ArrayList<>();
+
+        private Instance(String className) {
+            this.className = className;
+        }
+
+        /**
+         * Checks whether the object has a field, in any of its classes.
+         *
+         * @param field The name of the field.
+         * @return true if the field was written, false otherwise.
+         */
+        public boolean has(String field) {
+            return fields.containsKey(field);
+        }
+
+        /**
+         * Gets the value of a field. When classes of the hierarchy share a field name, the subclass wins.
+         *
+         * @param field The name of the field.
+         * @return The value of the field, or null if it's null or wasn't written.
+         */
+        public Object get(String field) {
+            return fields.get(field);
+        }
+
+        /**
+         * Gets the objects written by the writeObject methods of the object's classes, in order.
+         * For the collections of java.util these are the elements, or the keys and values of maps.
+         *
+         * @return The objects.
+         */
+        public List<Object> getAnnotations() {
+            return Collections.unmodifiableList(annotations);
+        }
+    }
+
+    /**
+     * An enum constant of the stream.
+     *
+     * @param className The name of the enum class.
+     * @param name The name of the constant.
+     */
+    public record EnumConstant(String className, String name) {
+    }
+}
@@ -0,0 +1,429 @@
+package dev.rnandor.paisho.io;
+
+import dev.rnandor.paisho.MoveBuffer;
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.Tile;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only log of the turns of a game, written as they're played, from which every position of the game can
+ * be replayed.
+ * <p>
+ * The file starts with the magic number "PSHJ" and the version of the journal format, followed by records, each
+ * starting with a tag byte:
+ * <ul>
+ *     <li>a turn: the turn encoded as described in {@link dev.rnandor.paisho.Move}, 4 bytes</li>
+ *     <li>a snapshot: the number of turns before it, the length of the save and the save of the game, as written by
+ *     {@link GameManager}</li>
+ * </ul>
+ * The first record is a snapshot of the position the journal started from. Further snapshots are taken every few
+ * turns, so a position can be replayed from the last snapshot before it instead of from the start.
+ * A record cut short by a crash is ignored when reading, the journal ends before it.
+ */
+@Slf4j
+public final class MoveJournal {
+
+    private static final int MAGIC = 0x5053484A; // "PSHJ"
+    private static final int VERSION = 1;
+    private static final int TAG_TURN = 1;
+    private static final int TAG_SNAPSHOT = 2;
+
+    private MoveJournal() {}
+
+    /**
+     * Starts a journal of a game, replacing any file at the path. Every turn the game completes from now on is
+     * appended, see {@link PaiShoGame.TurnListener}.
+     *
+     * @param path The path of the journal.
+     * @param manager The manager writing the snapshots.
+     * @param game The game, in the position the journal starts from.
+     * @param snapshotInterval The number of turns between snapshots, at least 1.
+     * @return The writer of the journal, close it to stop journaling the game.
+     * @throws IOException If an I/O error occurs.
+     * @throws IllegalArgumentException if the snapshot interval is less than 1.
+     */
+    public static <T extends Tile, G extends PaiShoGame<T>> Writer<T, G> create(Path path, GameManager<T, G> manager, G game, int snapshotInterval) throws IOException {
+        if(snapshotInterval < 1)
+            throw new IllegalArgumentException("Snapshot interval must be at least 1, got " + snapshotInterval);
+
+        var writer = new Writer<>(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
+                manager, game, snapshotInterval);
+        try {
+            writer.writeHeader();
+            writer.writeSnapshot();
+        } catch (IOException e) {
+            writer.channel.close();
+            throw e;
+        }
+
+        game.setTurnListener(writer);
+        return writer;
+    }
+
+    /**
+     * Opens a journal for replaying, positioned at its start.
+     *
+     * @param path The path of the journal.
+     * @param manager The manager reading the snapshots.
+     * @return The reader of the journal.
+     * @throws IOException If an I/O error occurs.
+     * @throws GameManager.InvalidSaveException If the file isn't a journal.
+     */
+    public static <T extends Tile, G extends PaiShoGame<T>> Reader<T, G> open(Path path, GameManager<T, G> manager) throws IOException {
+        var reader = new Reader<>(path, manager);
+        try {
+            reader.rewind();
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Replays a journal up to a position.
+     *
+     * @param path The path of the journal.
+     * @param manager The manager reading the snapshots.
+     * @param turns The number of turns to replay.
+     * @return The game after the turns, or after the last turn if the journal is shorter.
+     * @throws IOException If an I/O error occurs, or the journal is invalid.
+     */
+    public static <T extends Tile, G extends PaiShoGame<T>> G replay(Path path, GameManager<T, G> manager, int turns) throws IOException {
+        try(var reader = open(path, manager)) {
+            return reader.seek(turns);
+        }
+    }
+
+    /**
+     * Reads every record of a journal in order, without replaying the turns, for tools that check them one by one.
+     * The visitor first receives the snapshot of the starting position.
+     *
+     * @param path The path of the journal.
+     * @param manager The manager reading the snapshots.
+     * @param visitor The visitor of the records.
+     * @return true if the whole journal was read, false if the visitor stopped early.
+     * @throws IOException If an I/O error occurs, or the journal is invalid.
+     */
+    public static <T extends Tile, G extends PaiShoGame<T>> boolean scan(Path path, GameManager<T, G> manager, Visitor<G> visitor) throws IOException {
+        try(var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if(!visitor.snapshot(0, manager.read(new ByteArrayInputStream(readStart(in)))))
+                return false;
+
+            int turns = 0;
+            while(true) {
+                int tag = in.read();
+                try {
+                    switch(tag) {
+                        case -1 -> {
+                            return true;
+                        }
+                        case TAG_TURN -> {
+                            if(!visitor.turn(turns++, in.readInt()))
+                                return false;
+                        }
+                        case TAG_SNAPSHOT -> {
+                            int at = in.readInt();
+                            var save = readSave(in);
+                            if(at != turns)
+                                throw new GameManager.InvalidSaveException("Snapshot of turn " + at + " found after turn " + turns);
+                            if(!visitor.snapshot(at, manager.read(new ByteArrayInputStream(save))))
+                                return false;
+                        }
+                        default -> throw new GameManager.InvalidSaveException("Unknown journal record " + tag);
+                    }
+                } catch (EOFException e) {
+                    log.warn("The journal {} ends with a partial record after turn {}", path, turns);
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method.
+     * Reads the header of a journal and its starting snapshot.
+     *
+     * @param in The journal, at its start.
+     * @return The save of the starting position.
+     */
+    private static byte[] readStart(DataInputStream in) throws IOException {
+        try {
+            if(in.readInt() != MAGIC)
+                throw new GameManager.InvalidSaveException("Not a journal");
+            if(in.readUnsignedShort() != VERSION)
+                throw new GameManager.InvalidSaveException("Unknown journal version");
+            if(in.read() != TAG_SNAPSHOT || in.readInt() != 0)
+                throw new GameManager.InvalidSaveException("Journal without a starting position");
+            return readSave(in);
+        } catch (EOFException e) {
+            throw new GameManager.InvalidSaveException("Not a journal");
+        }
+    }
+
+    /**
+     * Helper method.
+     * Reads the save of a snapshot record.
+     */
+    private static byte[] readSave(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0)
+            throw new GameManager.InvalidSaveException("Negative snapshot length");
+
+        var save = new byte[length];
+        in.readFully(save);
+        return save;
+    }
+
+    /**
+     * Receives the records of a journal, see {@link #scan(Path, GameManager, Visitor)}.
+     *
+     * @param <G> The type of the game.
+     */
+    public interface Visitor<G> {
+
+        /**
+         * Called for every turn.
+         * @param index The index of the turn, from 0.
+         * @param move The turn, encoded as described in {@link dev.rnandor.paisho.Move}.
+         * @return true to go on, false to stop reading.
+         */
+        boolean turn(int index, int move);
+
+        /**
+         * Called for every snapshot, the first one is the starting position.
+         * @param turns The number of turns before the snapshot.
+         * @param game The game in the position of the snapshot.
+         * @return true to go on, false to stop reading.
+         */
+        boolean snapshot(int turns, G game);
+    }
+
+    /**
+     * Appends the completed turns of a game to a journal, one write per turn.
+     */
+    public static final class Writer<T extends Tile, G extends PaiShoGame<T>> implements PaiShoGame.TurnListener, Closeable {
+
+        private final FileChannel channel;
+        private final GameManager<T, G> manager;
+        private final G game;
+        private final int snapshotInterval;
+        private final ByteBuffer turn = ByteBuffer.allocate(1 + Integer.BYTES);
+
+        /**
+         * The number of turns written so far.
+         */
+        @Getter
+        private int turns;
+        private boolean snapshotDue;
+
+        private Writer(FileChannel channel, GameManager<T, G> manager, G game, int snapshotInterval) {
+            this.channel = channel;
+            this.manager = manager;
+            this.game = game;
+            this.snapshotInterval = snapshotInterval;
+        }
+
+        /**
+         * Appends a turn, and a snapshot after every few turns.
+         *
+         * @throws UncheckedIOException If an I/O error occurs.
+         * @throws IllegalStateException If the writer is closed.
+         */
+        @Override
+        public void turnCompleted(int move, boolean settled) {
+            if(!channel.isOpen())
+                throw new IllegalStateException("The journal is closed");
+
+            try {
+                turn.clear();
+                turn.put((byte) TAG_TURN).putInt(move).flip();
+                writeFully(turn);
+                turns++;
+
+                // a snapshot is only valid in the position right after its turn
+                if(turns%snapshotInterval == 0)
+                    snapshotDue = true;
+                if(snapshotDue && settled) {
+                    writeSnapshot();
+                    snapshotDue = false;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot append to the journal", e);
+            }
+        }
+
+        /**
+         * Stops journaling the game and closes the journal.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            if(!channel.isOpen())
+                return;
+
+            game.setTurnListener(null);
+            channel.close();
+            log.debug("Journaled {} turns", turns);
+        }
+
+        private void writeHeader() throws IOException {
+            var header = ByteBuffer.allocate(Integer.BYTES + Short.BYTES);
+            header.putInt(MAGIC).putShort((short) VERSION).flip();
+            writeFully(header);
+        }
+
+        /**
+         * Helper method.
+         * Appends a snapshot of the current position as one record.
+         */
+        private void writeSnapshot() throws IOException {
+            var save = new ByteArrayOutputStream();
+            manager.write(game, save);
+
+            var record = ByteBuffer.allocate(1 + 2*Integer.BYTES + save.size());
+            record.put((byte) TAG_SNAPSHOT).putInt(turns).putInt(save.size()).put(save.toByteArray()).flip();
+            writeFully(record);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    /**
+     * Replays a journal as a stream: forwards turn by turn, or to any position through the snapshots before it.
+     * The reader owns the game it replays, the game changes as the reader moves.
+     */
+    public static final class Reader<T extends Tile, G extends PaiShoGame<T>> implements Closeable {
+
+        private final Path path;
+        private final GameManager<T, G> manager;
+        private DataInputStream in;
+
+        /**
+         * The game in the current position.
+         */
+        @Getter
+        private G game;
+
+        /**
+         * The number of turns replayed, the current position.
+         */
+        @Getter
+        private int position;
+        private boolean ended;
+
+        private Reader(Path path, GameManager<T, G> manager) {
+            this.path = path;
+            this.manager = manager;
+        }
+
+        /**
+         * Replays the next turn.
+         *
+         * @return true if there was a next turn, false at the end of the journal.
+         * @throws IOException If an I/O error occurs, or the journal is invalid.
+         */
+        public boolean next() throws IOException {
+            int before = position;
+            seek(position + 1);
+            return position > before;
+        }
+
+        /**
+         * Moves to a position. Forwards, the turns are replayed from the last snapshot on the way, if there's one;
+         * backwards, the journal is read again from its start.
+         *
+         * @param turns The number of turns from the start of the journal.
+         * @return The game after the turns, or after the last turn if the journal is shorter.
+         * @throws IOException If an I/O error occurs, or the journal is invalid.
+         * @throws IllegalArgumentException if the number of turns is negative.
+         */
+        public G seek(int turns) throws IOException {
+            if(turns < 0)
+                throw new IllegalArgumentException("Cannot seek to turn " + turns);
+            if(turns < position)
+                rewind();
+
+            // nothing is replayed until the last snapshot before the target is known
+            byte[] snapshot = null;
+            var moves = new MoveBuffer();
+            int read = position;
+            while(read < turns && !ended) {
+                int tag = in.read();
+                try {
+                    switch(tag) {
+                        case -1 -> ended = true;
+                        case TAG_TURN -> {
+                            moves.add(in.readInt());
+                            read++;
+                        }
+                        case TAG_SNAPSHOT -> {
+                            int at = in.readInt();
+                            var save = readSave(in);
+                            if(at != read)
+                                throw new GameManager.InvalidSaveException("Snapshot of turn " + at + " found after turn " + read);
+                            snapshot = save;
+                            moves.clear();
+                        }
+                        default -> throw new GameManager.InvalidSaveException("Unknown journal record " + tag);
+                    }
+                } catch (EOFException e) {
+                    log.warn("The journal {} ends with a partial record after turn {}", path, read);
+                    ended = true;
+                }
+            }
+
+            if(snapshot != null)
+                game = manager.read(new ByteArrayInputStream(snapshot));
+            for(int i = 0; i < moves.size(); i++)
+                apply(moves.get(i), read - moves.size() + i);
+
+            position = read;
+            return game;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(in != null)
+                in.close();
+        }
+
+        /**
+         * Helper method.
+         * Reads the journal again from its start, positioned after the first snapshot.
+         */
+        private void rewind() throws IOException {
+            close();
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            ended = false;
+            position = 0;
+
+            game = manager.read(new ByteArrayInputStream(readStart(in)));
+        }
+
+        /**
+         * Helper method.
+         * Replays a turn, for good.
+         */
+        private void apply(int move, int index) throws GameManager.InvalidSaveException {
+            try {
+                game.makeTurn(move);
+                game.commitTurns();
+            } catch (RuntimeException e) {
+                throw new GameManager.InvalidSaveException("Cannot replay turn " + index + ": " + e.getMessage());
+            }
+        }
+    }
+}
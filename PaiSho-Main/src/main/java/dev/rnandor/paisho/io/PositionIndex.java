@@ -0,0 +1,482 @@
+package dev.rnandor.paisho.io;
+
+import dev.rnandor.paisho.PaiShoGame;
+import dev.rnandor.paisho.Tile;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the games that passed through a position, by the canonical key of the position, see
+ * {@link PaiShoGame#getPositionKey()}. Games are identified by a number the caller chooses, usually their index in a
+ * {@link GameArchive}, and positions by the number of turns played before them.
+ * <p>
+ * The file holds, in big-endian byte order:
+ * <ul>
+ *     <li>the magic number "PSHX" and the version of the index format</li>
+ *     <li>the segments, each a run of entries sorted by key: the key, 8 bytes, the game and the turn, 4 bytes each,
+ *     followed by the number of entries of the segment and the magic number again</li>
+ * </ul>
+ * Every {@link Writer} appends a segment, so the index grows as games are archived without rewriting it.
+ * A lookup binary searches every segment of the mapped file, {@link #compact(Path)} merges them into one when there
+ * are many. The whole file is mapped at once, indexes are limited to 2 GB.
+ */
+@Slf4j
+public final class PositionIndex implements Closeable {
+
+    private static final int MAGIC = 0x50534858; // "PSHX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    private static final int FOOTER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int ENTRY_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    // key at 2i, game and turn at 2i+1, oldest segment first
+    private final LongBuffer[] segments;
+
+    private PositionIndex(FileChannel channel, LongBuffer[] segments) {
+        this.channel = channel;
+        this.segments = segments;
+    }
+
+    /**
+     * Opens an index for lookups.
+     *
+     * @param path The path of the index.
+     * @return The index.
+     * @throws IOException If an I/O error occurs, or the file is larger than 2 GB.
+     * @throws GameManager.InvalidSaveException If the file isn't an index.
+     */
+    public static PositionIndex open(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new IOException("Index of " + size + " bytes is too large to map");
+            if(size < HEADER_SIZE)
+                throw new GameManager.InvalidSaveException("Not a position index");
+
+            var data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.BIG_ENDIAN);
+            checkHeader(data.getInt(0), data.getShort(Integer.BYTES));
+
+            // the footers chain the segments from the end of the file back to the header
+            var segments = new ArrayList<LongBuffer>();
+            int end = (int) size;
+            while(end > HEADER_SIZE) {
+                if(end - HEADER_SIZE < FOOTER_SIZE || data.getInt(end - Integer.BYTES) != MAGIC)
+                    throw new GameManager.InvalidSaveException("Corrupt position index at byte " + end);
+
+                int count = data.getInt(end - FOOTER_SIZE);
+                if(count < 0 || count > (end - FOOTER_SIZE - HEADER_SIZE) / ENTRY_SIZE)
+                    throw new GameManager.InvalidSaveException("Corrupt position index at byte " + end);
+
+                int start = end - FOOTER_SIZE - count*ENTRY_SIZE;
+                segments.add(data.slice(start, count*ENTRY_SIZE).order(ByteOrder.BIG_ENDIAN).asLongBuffer());
+                end = start;
+            }
+
+            var ordered = segments.reversed().toArray(LongBuffer[]::new);
+            return new PositionIndex(channel, ordered);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an index for adding games, creating it if there's no file at the path.
+     *
+     * @param path The path of the index.
+     * @return The writer of the index, the games are added once it's closed.
+     * @throws IOException If an I/O error occurs.
+     * @throws GameManager.InvalidSaveException If the file isn't an index.
+     */
+    public static Writer append(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            long size = channel.size();
+            if(size == 0) {
+                var header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort((short) VERSION).flip();
+                while(header.hasRemaining())
+                    channel.write(header);
+            } else {
+                var header = ByteBuffer.allocate(HEADER_SIZE);
+                var footer = ByteBuffer.allocate(Integer.BYTES);
+                channel.read(header, 0);
+                channel.read(footer, size - Integer.BYTES);
+                if(header.hasRemaining() || footer.hasRemaining())
+                    throw new GameManager.InvalidSaveException("Not a position index");
+
+                checkHeader(header.getInt(0), header.getShort(Integer.BYTES));
+                if(size > HEADER_SIZE && footer.getInt(0) != MAGIC)
+                    throw new GameManager.InvalidSaveException("The position index ends with a partial segment");
+            }
+            channel.position(channel.size());
+            return new Writer(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Merges the segments of an index into one, so lookups search it only once.
+     * The index is rewritten next to the file and moved over it, it must not be open for writing meanwhile.
+     *
+     * @param path The path of the index.
+     * @throws IOException If an I/O error occurs.
+     * @throws GameManager.InvalidSaveException If the file isn't an index.
+     */
+    public static void compact(Path path) throws IOException {
+        var temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try(var index = open(path)) {
+            if(index.segments.length <= 1)
+                return;
+
+            try(var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+
+                // k-way merge by key, then by game and turn, the order Writer.sort gives every segment
+                var next = new int[index.segments.length];
+                int size = index.size();
+                for(int written = 0; written < size; written++) {
+                    int from = -1;
+                    for(int s = 0; s < next.length; s++) {
+                        if(next[s] < index.segments[s].limit() && (from < 0 || before(index.segments[s], next[s], index.segments[from], next[from])))
+                            from = s;
+                    }
+                    out.writeLong(index.segments[from].get(next[from]));
+                    out.writeLong(index.segments[from].get(next[from] + 1));
+                    next[from] += 2;
+                }
+                out.writeInt(size);
+                out.writeInt(MAGIC);
+            }
+            log.debug("Merged {} segments of {} positions", index.segments.length, index.size());
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Helper method.
+     * Checks whether an entry of a segment comes before an entry of another, by key, then by game and turn.
+     */
+    private static boolean before(LongBuffer a, int i, LongBuffer b, int j) {
+        long key = a.get(i);
+        long other = b.get(j);
+        return key < other || (key == other && a.get(i + 1) < b.get(j + 1));
+    }
+
+    /**
+     * Helper method.
+     * Checks the magic number and the version of an index.
+     */
+    private static void checkHeader(int magic, short version) throws GameManager.InvalidSaveException {
+        if(magic != MAGIC)
+            throw new GameManager.InvalidSaveException("Not a position index");
+        if(version != VERSION)
+            throw new GameManager.InvalidSaveException("Position index of version " + version + ", expected " + VERSION);
+    }
+
+    /**
+     * Gets the number of positions in the index.
+     *
+     * @return The number of positions.
+     */
+    public int size() {
+        int size = 0;
+        for(var segment : segments)
+            size += segment.limit() / 2;
+        return size;
+    }
+
+    /**
+     * Gets the number of segments of the index, see {@link #compact(Path)}.
+     *
+     * @return The number of segments.
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Finds every time a game passed through a position.
+     *
+     * @param key The key of the position, see {@link PaiShoGame#getPositionKey()}.
+     * @return The occurrences of the position, ordered by game and turn.
+     */
+    public List<Hit> find(long key) {
+        var hits = new ArrayList<Hit>();
+        for(var segment : segments) {
+            for(int i = search(segment, key, false); i < segment.limit() && segment.get(i) == key; i += 2) {
+                long value = segment.get(i + 1);
+                hits.add(new Hit((int) (value >>> 32), (int) value));
+            }
+        }
+        hits.sort(Comparator.comparingInt(Hit::game).thenComparingInt(Hit::turn));
+        return hits;
+    }
+
+    /**
+     * Finds the games that passed through a position, once each however often they did.
+     *
+     * @param key The key of the position, see {@link PaiShoGame#getPositionKey()}.
+     * @return The games, in ascending order.
+     */
+    public int[] findGames(long key) {
+        return find(key).stream().mapToInt(Hit::game).distinct().toArray();
+    }
+
+    /**
+     * Counts the times games passed through a position, without collecting them.
+     *
+     * @param key The key of the position, see {@link PaiShoGame#getPositionKey()}.
+     * @return The number of occurrences of the position.
+     */
+    public int count(long key) {
+        int count = 0;
+        for(var segment : segments)
+            count += (search(segment, key, true) - search(segment, key, false)) / 2;
+        return count;
+    }
+
+    /**
+     * Helper method.
+     * Binary searches a segment for the first entry whose key is greater than the key, or not less than it.
+     *
+     * @return The index of the key of the entry in the segment, or its limit if there's none.
+     */
+    private static int search(LongBuffer segment, long key, boolean after) {
+        int low = 0;
+        int high = segment.limit() / 2;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            long found = segment.get(mid*2);
+            if(found < key || (after && found == key))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low*2;
+    }
+
+    /**
+     * Closes the file of the index. The mapping is released by the garbage collector.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * An occurrence of a position.
+     *
+     * @param game The game that passed through the position.
+     * @param turn The number of turns the game played before it reached the position.
+     */
+    public record Hit(int game, int turn) {}
+
+    /**
+     * Collects the positions of games and appends them to an index as a new segment.
+     * Large batches are written as several segments, so the memory needed stays bounded.
+     */
+    public static final class Writer implements Closeable {
+
+        private static final int SEGMENT_ENTRIES = 1 << 20;
+        private static final int INSERTION_THRESHOLD = 16;
+
+        private final FileChannel channel;
+        private long[] keys = new long[1024];
+        private long[] values = new long[1024];
+        private int count;
+        private boolean closed;
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Adds an occurrence of a position.
+         *
+         * @param key The key of the position, see {@link PaiShoGame#getPositionKey()}.
+         * @param game The game that passed through the position.
+         * @param turn The number of turns the game played before it reached the position.
+         * @throws IOException If an I/O error occurs.
+         * @throws IllegalStateException If the writer is closed.
+         */
+        public void add(long key, int game, int turn) throws IOException {
+            if(closed)
+                throw new IllegalStateException("The position index is closed");
+            if(count == keys.length) {
+                keys = Arrays.copyOf(keys, count*2);
+                values = Arrays.copyOf(values, count*2);
+            }
+
+            keys[count] = key;
+            values[count++] = (long) game << 32 | (turn & 0xFFFFFFFFL);
+            if(count == SEGMENT_ENTRIES)
+                flush();
+        }
+
+        /**
+         * Adds every position of a journaled game, replaying its turns from the start.
+         *
+         * @param game The number of the game.
+         * @param journal The path of the journal of the game, see {@link MoveJournal}.
+         * @param manager The manager reading the snapshots of the journal.
+         * @return The number of positions added.
+         * @throws IOException If an I/O error occurs, or the journal is invalid.
+         */
+        public <T extends Tile, G extends PaiShoGame<T>> int addJournal(int game, Path journal, GameManager<T, G> manager) throws IOException {
+            var replay = new MoveJournal.Visitor<G>() {
+                private G position;
+                private int added;
+                private IOException failure;
+
+                @Override
+                public boolean turn(int index, int move) {
+                    position.makeTurn(move);
+                    position.commitTurns();
+                    return add(index + 1);
+                }
+
+                @Override
+                public boolean snapshot(int turns, G snapshot) {
+                    if(position != null)
+                        return true;
+
+                    position = snapshot;
+                    return add(0);
+                }
+
+                private boolean add(int turn) {
+                    try {
+                        Writer.this.add(position.getPositionKey(), game, turn);
+                        added++;
+                        return true;
+                    } catch (IOException e) {
+                        failure = e;
+                        return false;
+                    }
+                }
+            };
+
+            MoveJournal.scan(journal, manager, replay);
+            if(replay.failure != null)
+                throw replay.failure;
+            return replay.added;
+        }
+
+        /**
+         * Writes the positions added so far as a segment.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        public void flush() throws IOException {
+            if(count == 0)
+                return;
+
+            sort(keys, values, 0, count);
+            var segment = ByteBuffer.allocate(count*ENTRY_SIZE + FOOTER_SIZE);
+            for(int i = 0; i < count; i++)
+                segment.putLong(keys[i]).putLong(values[i]);
+            segment.putInt(count).putInt(MAGIC).flip();
+
+            while(segment.hasRemaining())
+                channel.write(segment);
+            log.debug("Indexed a segment of {} positions", count);
+            count = 0;
+        }
+
+        /**
+         * Writes the positions added so far and closes the index.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            if(closed)
+                return;
+
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                closed = true;
+                channel.close();
+            }
+        }
+
+        /**
+         * Helper method.
+         * Sorts the entries by key, and equal keys by game and turn, in place so a segment doesn't allocate.
+         * A quicksort over both arrays, recursing into the smaller part so the stack stays shallow.
+         */
+        private static void sort(long[] keys, long[] values, int from, int to) {
+            while(to - from > INSERTION_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                // the median of three as the pivot, moved to the start of the range
+                if(less(keys, values, mid, from))
+                    swap(keys, values, mid, from);
+                if(less(keys, values, to - 1, mid))
+                    swap(keys, values, to - 1, mid);
+                if(less(keys, values, mid, from))
+                    swap(keys, values, mid, from);
+                swap(keys, values, from, mid);
+
+                int i = from;
+                int j = to;
+                while(true) {
+                    do i++; while(i < to && less(keys, values, i, from));
+                    do j--; while(less(keys, values, from, j));
+                    if(i >= j)
+                        break;
+                    swap(keys, values, i, j);
+                }
+                swap(keys, values, from, j);
+
+                if(j - from < to - j - 1) {
+                    sort(keys, values, from, j);
+                    from = j + 1;
+                } else {
+                    sort(keys, values, j + 1, to);
+                    to = j;
+                }
+            }
+
+            for(int i = from + 1; i < to; i++)
+                for(int j = i; j > from && less(keys, values, j, j - 1); j--)
+                    swap(keys, values, j, j - 1);
+        }
+
+        private static boolean less(long[] keys, long[] values, int i, int j) {
+            return keys[i] < keys[j] || (keys[i] == keys[j] && values[i] < values[j]);
+        }
+
+        private static void swap(long[] keys, long[] values, int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package dev.rnandor.paisho.processor;
+
+import dev.rnandor.paisho.TileEntry;
+import dev.rnandor.paisho.TileRegistry;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the index of the {@link TileEntry} classes of a module to {@link TileRegistry#INDEX}, so the registry can
+ * load them without scanning the classpath.
+ * <p>
+ * The index lists the binary names of the concrete tile classes, one per line, ordered by their codes.
+ * Two classes of the module sharing a code fail the build, the registry still checks clashes between modules.
+ * So does a tile class without the public (boolean, Table, int, int) constructor the registry's factories call.
+ */
+@SupportedAnnotationTypes("dev.rnandor.paisho.TileEntry")
+public final class TileEntryProcessor extends AbstractProcessor {
+
+    private static final List<String> CONSTRUCTOR = List.of("boolean", "dev.rnandor.paisho.Table", "int", "int");
+
+    // code -> binary name of the class, collected over every round
+    private final Map<String, String> entries = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for(var element : round.getElementsAnnotatedWith(TileEntry.class)) {
+            if(element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT))
+                continue;
+
+            var type = (TypeElement) element;
+            if(!hasFactoryConstructor(type))
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Tile " + type.getQualifiedName() + " needs a public (boolean, Table, int, int) constructor",
+                        element);
+
+            String id = type.getAnnotation(TileEntry.class).value();
+            String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+
+            var registered = entries.putIfAbsent(id, name);
+            if(registered != null && !registered.equals(name))
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Tile ID clash: " + id +
+                        " is already registered for " + registered +
+                        ", cannot register " + name,
+                        element);
+        }
+
+        if(round.processingOver() && !entries.isEmpty())
+            writeIndex();
+
+        return false;
+    }
+
+    /**
+     * Helper method.
+     * Checks whether a tile class can be created by the registry's factories.
+     *
+     * @param type The tile class.
+     * @return true if the class and its (boolean, Table, int, int) constructor are public, false otherwise.
+     */
+    private static boolean hasFactoryConstructor(TypeElement type) {
+        if(!type.getModifiers().contains(Modifier.PUBLIC))
+            return false;
+
+        for(ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if(!constructor.getModifiers().contains(Modifier.PUBLIC))
+                continue;
+
+            var parameters = constructor.getParameters().stream().map(p -> p.asType().toString()).toList();
+            if(parameters.equals(CONSTRUCTOR))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper method.
+     * Writes the collected entries to the index.
+     */
+    private void writeIndex() {
+        try {
+            var file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", TileRegistry.INDEX);
+            try(var out = new PrintWriter(file.openWriter())) {
+                out.println("# generated by " + getClass().getName());
+                for(var name : entries.values())
+                    out.println(name);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + TileRegistry.INDEX + ": " + e.getMessage());
+        }
+    }
+}